@@ -0,0 +1,118 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.server.ExecutionStrategy;
+import org.global.dax.server.ServerConfig;
+import org.global.dax.server.ServerMain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.global.dax.shared.BinaryProtocol.*;
+
+/*
+ * Loopback throughput of the two execution strategies against an in-process ServerMain with two reactors.
+ * Every benchmark thread owns a plain socket, so no client sits in between, pipelines a window of small binary
+ * GET/ADD requests over keys of its own and waits for the whole window to come back.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ExecutionStrategyBenchmark {
+    private static final int WINDOW = 64;
+    private static final int KEYS = 1000;
+    private static final long STARTUP_TIMEOUT_MS = 5000L;
+    private static final byte[] VALUE = "v".repeat(64).getBytes();
+
+    @Param({"INLINE", "WORKER_POOL"})
+    public ExecutionStrategy execution;
+
+    private ServerMain server;
+    private Thread acceptor;
+
+    @State(Scope.Thread)
+    public static class Connection {
+        private Socket socket;
+        private OutputStream out;
+        private DataInputStream in;
+        //one request per key, encoded once and sent round robin, every fourth an ADD
+        private final byte[][] frames = new byte[KEYS][];
+        private int next;
+
+        @Setup
+        public void connect(ExecutionStrategyBenchmark benchmark, ThreadParams thread) throws IOException {
+            socket = new Socket("127.0.0.1", benchmark.server.getLocalPort());
+            socket.setTcpNoDelay(true);
+            out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+
+            out.write((NEGOTIATE_COMMAND + "\n").getBytes());
+            out.flush();
+            while (in.read() != '\n') {
+                //skip the OK
+            }
+
+            for (int i = 0; i < KEYS; i++) {
+                String key = String.format("%c%03d", 'a' + thread.getThreadIndex() % 26, i);
+                ByteBuffer frame = i % 4 == 0 ? encodeRequest(OP_ADD, key, VALUE) : encodeRequest(OP_GET, key, null);
+                frames[i] = Arrays.copyOf(frame.array(), frame.remaining());
+            }
+        }
+
+        @TearDown
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Setup
+    public void startServer() throws InterruptedException {
+        server = new ServerMain(new ServerConfig().port(0).reactorThreads(2).execution(execution));
+        acceptor = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-benchmark-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (server.getLocalPort() == 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Server did not start within " + STARTUP_TIMEOUT_MS + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void stopServer() throws InterruptedException {
+        server.stop();
+        acceptor.join(STARTUP_TIMEOUT_MS);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(WINDOW)
+    public void pipelined(Connection connection) throws IOException {
+        for (int i = 0; i < WINDOW; i++) {
+            connection.out.write(connection.frames[connection.next]);
+            connection.next = (connection.next + 1) % KEYS;
+        }
+        connection.out.flush();
+
+        for (int i = 0; i < WINDOW; i++) {
+            connection.in.readByte();
+            connection.in.skipNBytes(connection.in.readInt());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.client.DaxClient;
+import org.global.dax.server.IoModel;
+import org.global.dax.server.ServerConfig;
+import org.global.dax.server.ServerMain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Connection scalability and tail latency of the two I/O models, against an in-process ServerMain on a loopback port.
+ * get keeps the given number of connections open and has every benchmark thread walk its share of them round robin
+ * with one text GET at a time, so every request lands on a different connection among thousands of mostly idle ones;
+ * connect measures how long the server takes to accept that many. Both ends run in one JVM and need two file
+ * descriptors per connection, raise ulimit -n accordingly or lower the connections param. VIRTUAL_THREADS uses
+ * virtual threads only when run on JDK 21+.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IoModelBenchmark {
+    private static final int THREADS = 16;
+    private static final long STARTUP_TIMEOUT_MS = 5000L;
+    private static final long CONNECT_TIMEOUT_MS = 30_000L;
+    private static final byte[] REQUEST = "GET abcd\n".getBytes();
+
+    @Param({"SELECTOR", "VIRTUAL_THREADS"})
+    public IoModel ioModel;
+
+    @Param({"10000"})
+    public int connections;
+
+    private ServerMain server;
+    private Thread acceptor;
+    private InetSocketAddress address;
+    //asks the server for its connection count
+    private DaxClient stats;
+
+    //the connections get walks over, opened once per trial
+    @State(Scope.Benchmark)
+    public static class Idle {
+        private final List<SocketChannel> channels = new ArrayList<>();
+
+        @Setup
+        public void open(IoModelBenchmark benchmark) throws IOException, InterruptedException {
+            benchmark.open(channels);
+        }
+
+        @TearDown
+        public void close(IoModelBenchmark benchmark) throws IOException, InterruptedException {
+            benchmark.close(channels);
+        }
+    }
+
+    //every thread owns every THREADS-th idle connection
+    @State(Scope.Thread)
+    public static class Share {
+        private final List<SocketChannel> channels = new ArrayList<>();
+        private final ByteBuffer response = ByteBuffer.allocate(64);
+        private int next;
+
+        @Setup
+        public void deal(Idle idle, ThreadParams threads) {
+            for (int c = threads.getThreadIndex(); c < idle.channels.size(); c += threads.getThreadCount()) {
+                channels.add(idle.channels.get(c));
+            }
+        }
+    }
+
+    //the connections of one connect invocation, closed after it
+    @State(Scope.Thread)
+    public static class Opened {
+        private final List<SocketChannel> channels = new ArrayList<>();
+
+        @TearDown(Level.Invocation)
+        public void close(IoModelBenchmark benchmark) throws IOException, InterruptedException {
+            benchmark.close(channels);
+        }
+    }
+
+    @Setup
+    public void startServer() throws IOException, InterruptedException {
+        server = new ServerMain(new ServerConfig()
+                .port(0)
+                .ioModel(ioModel)
+                .reactorThreads(Runtime.getRuntime().availableProcessors()));
+        acceptor = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-benchmark-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (server.getLocalPort() == 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Server did not start within " + STARTUP_TIMEOUT_MS + " ms");
+            }
+            Thread.sleep(10);
+        }
+        address = new InetSocketAddress("127.0.0.1", server.getLocalPort());
+        stats = DaxClient.connect("127.0.0.1", server.getLocalPort());
+        stats.add("abcd", "value").join();
+    }
+
+    @TearDown
+    public void stopServer() throws InterruptedException {
+        stats.close();
+        server.stop();
+        acceptor.join(STARTUP_TIMEOUT_MS);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ByteBuffer get(Share share) throws IOException {
+        SocketChannel channel = share.channels.get(share.next++ % share.channels.size());
+        channel.write(ByteBuffer.wrap(REQUEST));
+        readLine(channel, share.response);
+        return share.response;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void connect(Opened opened) throws IOException, InterruptedException {
+        open(opened.channels);
+    }
+
+    //returns once the server has accepted every one of them
+    private void open(List<SocketChannel> channels) throws IOException, InterruptedException {
+        int active = active();
+        for (int c = 0; c < connections; c++) {
+            channels.add(SocketChannel.open(address));
+        }
+        awaitActive(active + connections);
+    }
+
+    private void close(List<SocketChannel> channels) throws IOException, InterruptedException {
+        int active = active();
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        awaitActive(active - channels.size());
+        channels.clear();
+    }
+
+    private int active() {
+        return Integer.parseInt(stats.stats().join().get("connections.active"));
+    }
+
+    private void awaitActive(int active) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (active() != active) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The server did not get to " + active + " connections within "
+                        + CONNECT_TIMEOUT_MS + " ms");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void readLine(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        do {
+            if (channel.read(buffer) == -1) {
+                throw new IOException("Server closed the connection");
+            }
+        } while (buffer.get(buffer.position() - 1) != '\n');
+    }
+}
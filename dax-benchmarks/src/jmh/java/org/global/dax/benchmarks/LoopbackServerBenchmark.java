@@ -0,0 +1,113 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.client.DaxClient;
+import org.global.dax.server.ExecutionStrategy;
+import org.global.dax.server.ServerConfig;
+import org.global.dax.server.ServerMain;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * An in-process ServerMain on a loopback port, driven through DaxClient with one connection per benchmark thread.
+ * roundTrip waits for every response, so its sample distribution is the request latency; pipelined keeps a
+ * window of requests outstanding and measures throughput. At serverLogLevel DEBUG the server logs every request
+ * and response, which shows what request logging costs on top of the INFO default. SynchronousLogging runs the same
+ * benchmarks with the synchronous console logging the server had before, for a before and after comparison.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoopbackServerBenchmark {
+    private static final int WINDOW = 64;
+    private static final long STARTUP_TIMEOUT_MS = 5000L;
+
+    @Param({"INLINE", "WORKER_POOL"})
+    public ExecutionStrategy execution;
+
+    @Param({"INFO", "DEBUG"})
+    public String serverLogLevel;
+
+    private ServerMain server;
+    private Thread acceptor;
+
+    @State(Scope.Thread)
+    public static class Connection {
+        private DaxClient client;
+
+        @Setup
+        public void connect(LoopbackServerBenchmark benchmark) throws IOException {
+            client = DaxClient.connect("127.0.0.1", benchmark.server.getLocalPort());
+            client.add("abcd", "value").join();
+        }
+
+        @TearDown
+        public void close() {
+            client.close();
+        }
+    }
+
+    @Setup
+    public void startServer() throws InterruptedException {
+        Configurator.setLevel("org.global.dax.server", Level.valueOf(serverLogLevel));
+        server = new ServerMain(new ServerConfig().port(0).execution(execution));
+        acceptor = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-benchmark-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (server.getLocalPort() == 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Server did not start within " + STARTUP_TIMEOUT_MS + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void stopServer() throws InterruptedException {
+        server.stop();
+        acceptor.join(STARTUP_TIMEOUT_MS);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String roundTrip(Connection connection) {
+        return connection.client.get("abcd").join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(WINDOW)
+    public void pipelined(Connection connection) {
+        CompletableFuture<?>[] window = new CompletableFuture<?>[WINDOW];
+        for (int i = 0; i < WINDOW; i++) {
+            window[i] = (i & 1) == 0
+                    ? connection.client.get("abcd")
+                    : connection.client.add("abcd", "value");
+        }
+        CompletableFuture.allOf(window).join();
+    }
+
+    //every event formatted and written by the thread that logs it; at serverLogLevel DEBUG this is how the server
+    //logged before, when every request and response was logged at INFO
+    @Fork(value = 1, jvmArgsAppend = {
+            "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector",
+            "-Dlog4j2.configurationFile=log4j2-sync.xml"})
+    public static class SynchronousLogging extends LoopbackServerBenchmark {
+    }
+}
@@ -0,0 +1,74 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.shared.BinaryProtocol;
+import org.global.dax.shared.ProtocolUtils;
+import org.global.dax.shared.ShardedCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Parsing and answering single requests without any I/O, text commands through handleClientRequest and
+ * binary frames through respondToBinaryRequest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProtocolBenchmark {
+    private final ShardedCache cache = new ShardedCache();
+    private ByteBuffer binaryGet;
+    private ByteBuffer binaryAdd;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 1024; i++) {
+            cache.put(Integer.toString(i, 36), "value" + i);
+        }
+        binaryGet = BinaryProtocol.encodeCommand("GET a");
+        binaryAdd = BinaryProtocol.encodeCommand("ADD a value");
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Benchmark
+    public String textGet() {
+        return ProtocolUtils.handleClientRequest("GET a", cache);
+    }
+
+    @Benchmark
+    public String textGetMissing() {
+        return ProtocolUtils.handleClientRequest("GET none", cache);
+    }
+
+    @Benchmark
+    public String textAdd() {
+        return ProtocolUtils.handleClientRequest("ADD a value", cache);
+    }
+
+    @Benchmark
+    public String textMget() {
+        return ProtocolUtils.handleClientRequest("MGET 0 1 2 3 4 5 6 7 8 9 a b c d e f", cache);
+    }
+
+    @Benchmark
+    public String textInvalid() {
+        return ProtocolUtils.handleClientRequest("PUT a value", cache);
+    }
+
+    @Benchmark
+    public ByteBuffer[] binaryGet() {
+        return ProtocolUtils.respondToBinaryRequest(binaryGet.duplicate(), cache);
+    }
+
+    @Benchmark
+    public ByteBuffer[] binaryAdd() {
+        return ProtocolUtils.respondToBinaryRequest(binaryAdd.duplicate(), cache);
+    }
+}
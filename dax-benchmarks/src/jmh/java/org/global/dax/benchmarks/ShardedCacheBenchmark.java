@@ -0,0 +1,91 @@
+package org.global.dax.benchmarks;
+
+import org.global.dax.shared.CacheConfig;
+import org.global.dax.shared.ShardedCache;
+import org.global.dax.shared.StorageEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * ShardedCache operations over a preloaded keyspace, for every storage engine and a range of shard counts.
+ * The nested subclasses run the same benchmarks with one thread, four threads and one thread per core.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class ShardedCacheBenchmark {
+    private static final int KEYS = 16 * 1024;
+    private static final byte[] VALUE = new byte[64];
+
+    @Param({"HEAP", "OFF_HEAP"})
+    public StorageEngine engine;
+
+    @Param({"1", "8", "64"})
+    public int shards;
+
+    private ShardedCache cache;
+    private String[] keys;
+
+    //each thread walks the keyspace from its own random starting point
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = ThreadLocalRandom.current().nextInt(KEYS);
+
+        int next() {
+            next = (next + 1) & (KEYS - 1);
+            return next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        cache = new ShardedCache(new CacheConfig().storageEngine(engine).shardCount(shards));
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = Integer.toString(i, 36);
+            cache.put(keys[i], VALUE.clone());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Benchmark
+    public ByteBuffer get(Cursor cursor) {
+        return cache.getValue(keys[cursor.next()]);
+    }
+
+    @Benchmark
+    public void put(Cursor cursor) {
+        cache.put(keys[cursor.next()], VALUE.clone());
+    }
+
+    //a remove alone would empty the keyspace, the key is stored again straight away
+    @Benchmark
+    public boolean removeAndPut(Cursor cursor) {
+        String key = keys[cursor.next()];
+        boolean removed = cache.remove(key);
+        cache.put(key, VALUE.clone());
+        return removed;
+    }
+
+    @Threads(1)
+    public static class OneThread extends ShardedCacheBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends ShardedCacheBenchmark {
+    }
+
+    @Threads(Threads.MAX)
+    public static class AllCores extends ShardedCacheBenchmark {
+    }
+}
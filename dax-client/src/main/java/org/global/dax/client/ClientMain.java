@@ -1,15 +1,15 @@
 package org.global.dax.client;
 
+import org.global.dax.shared.BinaryProtocol;
 import org.global.dax.shared.SharedClassExample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.*;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import static org.global.dax.shared.Constants.*;
@@ -21,7 +21,17 @@ public final class ClientMain {
     private PrintWriter out;
     private BufferedReader in;
 
+    //binary framing is opt-in (--binary), otherwise commands are sent as typed in text mode
+    private final boolean binaryRequested;
+    private DataOutputStream binaryOut;
+    private DataInputStream binaryIn;
+
     public ClientMain() {
+        this(false);
+    }
+
+    public ClientMain(boolean binaryRequested) {
+        this.binaryRequested = binaryRequested;
     }
 
     //for Testing purposes
@@ -31,12 +41,28 @@ public final class ClientMain {
         this.clientSocket = clientSocket;
         this.out = writer;
         this.in = reader;
+        this.binaryRequested = false;
     }
 
     public static void main(String[] args) {
         LOG.info("{} {}!", message(), SharedClassExample.sharedString());
 
-        new ClientMain().startClient();
+        if (Arrays.asList(args).contains("--load")) {
+            runLoad(LoadConfig.fromSystemProperties());
+            return;
+        }
+        new ClientMain(Arrays.asList(args).contains("--binary")).startClient();
+    }
+
+    //load generation mode (--load), see LoadGenerator
+    private static void runLoad(LoadConfig config) {
+        try {
+            new LoadGenerator(config).run();
+        } catch (IOException e) {
+            LOG.error("Load generator failed to connect to the server [{}:{}] due to {}", config.getHost(), config.getPort(), e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public static String message() {
@@ -65,6 +91,11 @@ public final class ClientMain {
                 break;
             }
 
+            if (binaryOut != null) {
+                LOG.info("Response received [{}] from server [{}:{}]", sendBinaryCommand(command), HOST, PORT);
+                continue;
+            }
+
             sendCommand(command);
             LOG.info("Response received [{}] from server [{}:{}]", getServerResponse(), HOST, PORT);
         }
@@ -78,6 +109,10 @@ public final class ClientMain {
             out = new PrintWriter(clientSocket.getOutputStream(), true);
             in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
             LOG.info("Client is connected to the server [{}:{}]", HOST, PORT);
+
+            if (binaryRequested) {
+                negotiateBinaryProtocol();
+            }
             return true;
         } catch (IOException e) {
             LOG.info("Client failed to connected to the server [{}:{}] for attempt {} due to {}", HOST, PORT, attempt, e.getMessage());
@@ -99,6 +134,9 @@ public final class ClientMain {
             out.close();
         }
 
+        binaryIn = null;
+        binaryOut = null;
+
         if (clientSocket != null) {
             try {
                 clientSocket.close();
@@ -139,4 +177,44 @@ public final class ClientMain {
         }
         return "";
     }
+
+    private void negotiateBinaryProtocol() throws IOException {
+        sendCommand(BinaryProtocol.NEGOTIATE_COMMAND);
+        String response = getServerResponse();
+        if (!"OK".equals(response)) {
+            //older servers answer with an unknown command error, keep talking text to them
+            LOG.warn("Server [{}:{}] declined the binary protocol [{}], falling back to text", HOST, PORT, response);
+            return;
+        }
+
+        binaryOut = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+        binaryIn = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+        LOG.info("Client negotiated the binary protocol with the server [{}:{}]", HOST, PORT);
+    }
+
+    private String sendBinaryCommand(String command) {
+        ByteBuffer request;
+        try {
+            request = BinaryProtocol.encodeCommand(command);
+        } catch (IllegalArgumentException e) {
+            return "ERROR " + e.getMessage();
+        }
+
+        try {
+            byte opcode = request.get(0);
+            LOG.info("Sending binary command [{}] to the server [{}:{}]", command, HOST, PORT);
+            binaryOut.write(request.array(), request.arrayOffset(), request.remaining());
+            binaryOut.flush();
+
+            byte status = binaryIn.readByte();
+            byte[] payload = new byte[binaryIn.readInt()];
+            binaryIn.readFully(payload);
+            return BinaryProtocol.formatResponse(opcode, status, payload);
+        } catch (SocketTimeoutException e) {
+            LOG.error("Client timed out while waiting for the response from server due to {}", e.getMessage());
+        } catch (IOException e) {
+            LOG.error("Exception occurred when receiving the message from server due to {}", e.getMessage());
+        }
+        return "";
+    }
 }
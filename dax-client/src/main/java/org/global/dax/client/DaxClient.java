@@ -0,0 +1,354 @@
+package org.global.dax.client;
+
+import org.global.dax.shared.BinaryProtocol;
+import org.global.dax.shared.KeyPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+import static org.global.dax.shared.BinaryProtocol.*;
+import static org.global.dax.shared.Constants.BUFFER_SIZE;
+import static org.global.dax.shared.Constants.MAX_FRAME_SIZE;
+import static org.global.dax.shared.Constants.MAX_IN_FLIGHT_REQUESTS;
+import static org.global.dax.shared.Constants.MAX_RESPONSE_SIZE;
+
+/*
+ * Programmatic, pipelined client over one persistent binary protocol connection.
+ *
+ * Requests are queued to a writer thread that flushes whenever it runs out of queued work, so requests issued
+ * together leave in as few segments as possible. The server answers a connection's requests in order, which
+ * lets a reader thread match every response to the oldest in-flight request. At most maxInFlight requests may be
+ * outstanding, callers block once the window is full until responses free it up.
+ */
+public final class DaxClient implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(DaxClient.class);
+
+    @FunctionalInterface
+    private interface ResponseDecoder<T> {
+        T decode(byte status, byte[] payload);
+    }
+
+    private static final class PendingRequest<T> {
+        private final ByteBuffer frame;
+        private final ResponseDecoder<T> decoder;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private PendingRequest(ByteBuffer frame, ResponseDecoder<T> decoder) {
+            this.frame = frame;
+            this.decoder = decoder;
+        }
+
+        private void complete(byte status, byte[] payload) {
+            if (status == STATUS_BUSY) {
+                future.completeExceptionally(new ServerBusyException());
+                return;
+            }
+            try {
+                future.complete(decoder.decode(status, payload));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private final Socket socket;
+    private final String server;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final Semaphore window;
+    private final BlockingQueue<PendingRequest<?>> outbound = new LinkedBlockingQueue<>();
+    private final Queue<PendingRequest<?>> inFlight = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private DaxClient(Socket socket, int maxInFlight) throws IOException {
+        this.socket = socket;
+        this.server = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), MAX_FRAME_SIZE));
+        this.out = new BufferedOutputStream(socket.getOutputStream(), MAX_FRAME_SIZE);
+        this.window = new Semaphore(maxInFlight);
+
+        this.writer = new Thread(this::writeLoop, "dax-client-writer-" + server);
+        this.reader = new Thread(this::readLoop, "dax-client-reader-" + server);
+        writer.setDaemon(true);
+        reader.setDaemon(true);
+    }
+
+    public static DaxClient connect(String host, int port) throws IOException {
+        return connect(host, port, MAX_IN_FLIGHT_REQUESTS);
+    }
+
+    public static DaxClient connect(String host, int port, int maxInFlight) throws IOException {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+
+        Socket socket = new Socket(host, port);
+        try {
+            socket.setTcpNoDelay(true);
+            negotiate(socket);
+
+            DaxClient client = new DaxClient(socket, maxInFlight);
+            client.writer.start();
+            client.reader.start();
+            LOG.info("Async client is connected to the server [{}:{}]", host, port);
+            return client;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    //reads the handshake reply byte by byte so nothing after it is swallowed before the binary streams exist
+    private static void negotiate(Socket socket) throws IOException {
+        OutputStream rawOut = socket.getOutputStream();
+        rawOut.write((NEGOTIATE_COMMAND + "\n").getBytes(StandardCharsets.UTF_8));
+        rawOut.flush();
+
+        InputStream rawIn = socket.getInputStream();
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        int next;
+        while ((next = rawIn.read()) != '\n') {
+            if (next == -1 || reply.size() > BUFFER_SIZE) {
+                throw new IOException("Connection closed during the protocol handshake");
+            }
+            reply.write(next);
+        }
+
+        String response = reply.toString(StandardCharsets.UTF_8).trim();
+        if (!"OK".equals(response)) {
+            throw new IOException("Server declined the binary protocol [" + response + "]");
+        }
+    }
+
+    //completes with null when the key is not present
+    public CompletableFuture<String> get(String key) {
+        return submit(encodeRequest(OP_GET, key, null), (status, payload) -> switch (status) {
+            case STATUS_OK -> new String(payload, StandardCharsets.UTF_8);
+            case STATUS_NOT_FOUND -> null;
+            default -> throw error(payload);
+        });
+    }
+
+    public CompletableFuture<Void> add(String key, String value) {
+        return submit(encodeRequest(OP_ADD, key, value.getBytes(StandardCharsets.UTF_8)), DaxClient::acknowledge);
+    }
+
+    //the entry is no longer returned once the TTL has passed, rounded down to whole milliseconds
+    public CompletableFuture<Void> add(String key, String value, Duration ttl) {
+        return submit(encodeAddRequest(key, value.getBytes(StandardCharsets.UTF_8), ttl.toMillis()), DaxClient::acknowledge);
+    }
+
+    //completes with false when the key was not present
+    public CompletableFuture<Boolean> delete(String key) {
+        return submit(encodeRequest(OP_DELETE, key, null), (status, payload) -> switch (status) {
+            case STATUS_OK -> true;
+            case STATUS_NOT_FOUND -> false;
+            default -> throw error(payload);
+        });
+    }
+
+    //one round trip for many keys, the values in the order of the keys and null for missing ones
+    public CompletableFuture<List<String>> multiGet(List<String> keys) {
+        return submit(encodeBatchRequest(OP_MGET, keys), (status, payload) -> {
+            if (status != STATUS_OK) {
+                throw error(payload);
+            }
+            List<String> values = new ArrayList<>(keys.size());
+            for (byte[] value : BinaryProtocol.decodeValues(payload)) {
+                values.add(value == null ? null : new String(value, StandardCharsets.UTF_8));
+            }
+            return values;
+        });
+    }
+
+    public CompletableFuture<Void> multiAdd(Map<String, String> entries) {
+        Map<String, byte[]> encoded = new LinkedHashMap<>();
+        entries.forEach((key, value) -> encoded.put(key, value.getBytes(StandardCharsets.UTF_8)));
+        return submit(encodeBatchAddRequest(encoded), DaxClient::acknowledge);
+    }
+
+    //completes with the number of keys that were present
+    public CompletableFuture<Integer> multiDelete(List<String> keys) {
+        return submit(encodeBatchRequest(OP_MDELETE, keys), (status, payload) -> {
+            if (status != STATUS_OK) {
+                throw error(payload);
+            }
+            return ByteBuffer.wrap(payload).getInt();
+        });
+    }
+
+    public CompletableFuture<List<String>> getAll() {
+        return submit(encodeRequest(OP_GET_ALL, null, null), (status, payload) -> {
+            if (status != STATUS_OK) {
+                throw error(payload);
+            }
+            return BinaryProtocol.decodeKeys(payload);
+        });
+    }
+
+    //one page of keys, start at cursor 0 and pass each page's cursor to the next call until it is 0 again
+    public CompletableFuture<KeyPage> scan(long cursor, int pageSize) {
+        return submit(encodeScanRequest(cursor, pageSize), (status, payload) -> {
+            if (status != STATUS_OK) {
+                throw error(payload);
+            }
+            return BinaryProtocol.decodeKeyPage(payload);
+        });
+    }
+
+    //the server's metrics by name, in the order the server lists them
+    public CompletableFuture<Map<String, String>> stats() {
+        return submit(encodeRequest(OP_STATS, null, null), (status, payload) -> {
+            if (status != STATUS_OK) {
+                throw error(payload);
+            }
+            Map<String, String> stats = new LinkedHashMap<>();
+            for (String stat : new String(payload, StandardCharsets.UTF_8).split(" ")) {
+                int separator = stat.indexOf('=');
+                if (separator > 0) {
+                    stats.put(stat.substring(0, separator), stat.substring(separator + 1));
+                }
+            }
+            return stats;
+        });
+    }
+
+    public CompletableFuture<Void> heartbeat() {
+        return submit(encodeRequest(OP_HEARTBEAT, null, null), DaxClient::acknowledge);
+    }
+
+    public int inFlight() {
+        return inFlight.size() + outbound.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private static Void acknowledge(byte status, byte[] payload) {
+        if (status != STATUS_OK) {
+            throw error(payload);
+        }
+        return null;
+    }
+
+    private static DaxClientException error(byte[] payload) {
+        return new DaxClientException(new String(payload, StandardCharsets.UTF_8));
+    }
+
+    private <T> CompletableFuture<T> submit(ByteBuffer frame, ResponseDecoder<T> decoder) {
+        PendingRequest<T> request = new PendingRequest<>(frame, decoder);
+        if (closed) {
+            request.future.completeExceptionally(new IOException("Client is closed"));
+            return request.future;
+        }
+
+        try {
+            //backpressure, a full window blocks the caller until a response frees a slot
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.future.completeExceptionally(e);
+            return request.future;
+        }
+
+        request.future.whenComplete((result, error) -> window.release());
+        outbound.add(request);
+        if (closed) {
+            //raced with close(), make sure the request does not wait forever
+            failAll(new IOException("Client is closed"));
+        }
+        return request.future;
+    }
+
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                PendingRequest<?> request = outbound.take();
+                //drain whatever else is queued and flush once for the whole batch
+                do {
+                    inFlight.add(request);
+                    out.write(request.frame.array(), request.frame.arrayOffset(), request.frame.remaining());
+                    request = outbound.poll();
+                } while (request != null);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            shutdown(e);
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                byte status = in.readByte();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_RESPONSE_SIZE) {
+                    throw new IOException("Invalid response length [" + length + "]");
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                PendingRequest<?> request = inFlight.poll();
+                if (request == null) {
+                    throw new IOException("Received a response without an outstanding request");
+                }
+                request.complete(status, payload);
+            }
+        } catch (EOFException e) {
+            shutdown(new IOException("Server closed the connection"));
+        } catch (IOException e) {
+            shutdown(e);
+        } catch (RuntimeException e) {
+            //the reader must not die quietly, every caller would wait forever
+            shutdown(new IOException("Failed to handle a response", e));
+        }
+    }
+
+    private void shutdown(IOException cause) {
+        if (!closed) {
+            LOG.warn("Async client connection to the server [{}] failed due to {}", server, cause.getMessage());
+        }
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        writer.interrupt();
+        failAll(cause);
+    }
+
+    private void failAll(IOException cause) {
+        PendingRequest<?> request;
+        while ((request = inFlight.poll()) != null) {
+            request.future.completeExceptionally(cause);
+        }
+        while ((request = outbound.poll()) != null) {
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        LOG.info("Disconnecting the async client from the server [{}]", server);
+        shutdown(new IOException("Client is closed"));
+    }
+}
@@ -0,0 +1,10 @@
+package org.global.dax.client;
+
+//an ERROR status returned by the server for a single request, the connection itself is still usable
+public class DaxClientException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public DaxClientException(String message) {
+        super(message);
+    }
+}
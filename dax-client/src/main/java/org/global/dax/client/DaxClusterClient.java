@@ -0,0 +1,241 @@
+package org.global.dax.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.global.dax.shared.Constants.MAX_BATCH_KEYS;
+import static org.global.dax.shared.Constants.MAX_IN_FLIGHT_REQUESTS;
+
+/*
+ * Programmatic client over several servers, each key lives on the one server a consistent hash ring maps it to.
+ * Every server gets one persistent, pipelined DaxClient. Single key requests go to the key's server, batches are
+ * split by server and GET ALL goes to all of them, the parts are sent at once and merged when the last one is in.
+ *
+ * Nodes may be added and removed while the client is in use. Entries are not moved between servers: after a node
+ * is added the keys it took over read as missing until they are written again, and their old copies stay on the
+ * previous server until they expire or are evicted.
+ */
+public final class DaxClusterClient implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(DaxClusterClient.class);
+
+    //replaced as a whole when a node is added or removed, so a request sees one consistent view
+    private record Topology(HashRing ring, Map<String, DaxClient> clients) {
+        DaxClient clientFor(String key) {
+            return clients.get(ring.nodeFor(key));
+        }
+
+        //the positions of the keys grouped by the node each one belongs to
+        Map<String, List<Integer>> partition(List<String> keys) {
+            Map<String, List<Integer>> positions = new HashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                positions.computeIfAbsent(ring.nodeFor(keys.get(i)), node -> new ArrayList<>()).add(i);
+            }
+            return positions;
+        }
+    }
+
+    private final int maxInFlight;
+    private volatile Topology topology;
+    private volatile boolean closed;
+
+    private DaxClusterClient(Topology topology, int maxInFlight) {
+        this.topology = topology;
+        this.maxInFlight = maxInFlight;
+    }
+
+    //endpoints are host:port
+    public static DaxClusterClient connect(List<String> endpoints) throws IOException {
+        return connect(endpoints, HashRing.DEFAULT_VIRTUAL_NODES, MAX_IN_FLIGHT_REQUESTS);
+    }
+
+    public static DaxClusterClient connect(List<String> endpoints, int virtualNodes, int maxInFlight) throws IOException {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        HashRing ring = new HashRing(endpoints, virtualNodes);
+
+        Map<String, DaxClient> clients = new LinkedHashMap<>();
+        try {
+            for (String endpoint : endpoints) {
+                clients.put(endpoint, open(endpoint, maxInFlight));
+            }
+        } catch (IOException | RuntimeException e) {
+            clients.values().forEach(DaxClient::close);
+            throw e;
+        }
+        LOG.info("Cluster client is connected to the servers {}", endpoints);
+        return new DaxClusterClient(new Topology(ring, Map.copyOf(clients)), maxInFlight);
+    }
+
+    private static DaxClient open(String endpoint, int maxInFlight) throws IOException {
+        int separator = endpoint.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Endpoint must be host:port, was " + endpoint);
+        }
+        try {
+            return DaxClient.connect(endpoint.substring(0, separator),
+                    Integer.parseInt(endpoint.substring(separator + 1)), maxInFlight);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Endpoint must be host:port, was " + endpoint);
+        }
+    }
+
+    public List<String> nodes() {
+        return topology.ring().nodes();
+    }
+
+    //the node takes over about 1/N of the keys from the others
+    public synchronized void addNode(String endpoint) throws IOException {
+        if (closed) {
+            throw new IOException("Client is closed");
+        }
+        Topology current = topology;
+        if (current.clients().containsKey(endpoint)) {
+            throw new IllegalArgumentException("Node " + endpoint + " is already part of the ring");
+        }
+        DaxClient client = open(endpoint, maxInFlight);
+        Map<String, DaxClient> clients = new HashMap<>(current.clients());
+        clients.put(endpoint, client);
+        topology = new Topology(current.ring().withNode(endpoint), Map.copyOf(clients));
+        LOG.info("Added the server [{}] to the cluster", endpoint);
+    }
+
+    //its keys go to the nodes after it on the ring, requests already sent to it still complete
+    public synchronized void removeNode(String endpoint) {
+        Topology current = topology;
+        Map<String, DaxClient> clients = new HashMap<>(current.clients());
+        DaxClient removed = clients.remove(endpoint);
+        if (removed == null) {
+            throw new IllegalArgumentException("Unknown node " + endpoint);
+        }
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("Cannot remove the last node");
+        }
+        topology = new Topology(current.ring().withoutNode(endpoint), Map.copyOf(clients));
+        //a closed client fails what is still in flight, so wait for that before closing
+        removed.heartbeat().whenComplete((ignored, error) -> removed.close());
+        LOG.info("Removed the server [{}] from the cluster", endpoint);
+    }
+
+    //the node a key is routed to
+    public String nodeFor(String key) {
+        return topology.ring().nodeFor(key);
+    }
+
+    //completes with null when the key is not present
+    public CompletableFuture<String> get(String key) {
+        return topology.clientFor(key).get(key);
+    }
+
+    public CompletableFuture<Void> add(String key, String value) {
+        return topology.clientFor(key).add(key, value);
+    }
+
+    public CompletableFuture<Void> add(String key, String value, Duration ttl) {
+        return topology.clientFor(key).add(key, value, ttl);
+    }
+
+    //completes with false when the key was not present
+    public CompletableFuture<Boolean> delete(String key) {
+        return topology.clientFor(key).delete(key);
+    }
+
+    //the values in the order of the keys and null for missing ones, one MGET per node involved
+    public CompletableFuture<List<String>> multiGet(List<String> keys) {
+        checkBatchSize(keys.size());
+        Topology current = topology;
+        String[] values = new String[keys.size()];
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        current.partition(keys).forEach((node, positions) -> parts.add(current.clients().get(node)
+                .multiGet(select(keys, positions))
+                .thenAccept(nodeValues -> {
+                    for (int i = 0; i < positions.size(); i++) {
+                        values[positions.get(i)] = nodeValues.get(i);
+                    }
+                })));
+        return allOf(parts).thenApply(done -> Arrays.asList(values));
+    }
+
+    public CompletableFuture<Void> multiAdd(Map<String, String> entries) {
+        checkBatchSize(entries.size());
+        Topology current = topology;
+        Map<String, Map<String, String>> byNode = new HashMap<>();
+        entries.forEach((key, value) -> byNode
+                .computeIfAbsent(current.ring().nodeFor(key), node -> new LinkedHashMap<>())
+                .put(key, value));
+
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        byNode.forEach((node, nodeEntries) -> parts.add(current.clients().get(node).multiAdd(nodeEntries)));
+        return allOf(parts);
+    }
+
+    //completes with the number of keys that were present across all nodes
+    public CompletableFuture<Integer> multiDelete(List<String> keys) {
+        checkBatchSize(keys.size());
+        Topology current = topology;
+        List<CompletableFuture<Integer>> parts = new ArrayList<>();
+        current.partition(keys).forEach((node, positions) ->
+                parts.add(current.clients().get(node).multiDelete(select(keys, positions))));
+        return allOf(parts).thenApply(done -> parts.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
+    //the keys of every node, a key left behind on a node it no longer belongs to is listed once
+    public CompletableFuture<List<String>> getAll() {
+        List<CompletableFuture<List<String>>> parts = new ArrayList<>();
+        topology.clients().values().forEach(client -> parts.add(client.getAll()));
+        return allOf(parts).thenApply(done -> {
+            Set<String> keys = new LinkedHashSet<>();
+            parts.forEach(part -> keys.addAll(part.join()));
+            return List.copyOf(keys);
+        });
+    }
+
+    public CompletableFuture<Void> heartbeat() {
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        topology.clients().values().forEach(client -> parts.add(client.heartbeat()));
+        return allOf(parts);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    //the same limit as a single MGET, MADD or MDELETE, checked before anything is sent
+    private static void checkBatchSize(int count) {
+        if (count == 0 || count > MAX_BATCH_KEYS) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+    }
+
+    private static List<String> select(List<String> keys, List<Integer> positions) {
+        List<String> selected = new ArrayList<>(positions.size());
+        positions.forEach(position -> selected.add(keys.get(position)));
+        return selected;
+    }
+
+    private static CompletableFuture<Void> allOf(List<? extends CompletableFuture<?>> parts) {
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture<?>[]::new));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        topology.clients().values().forEach(DaxClient::close);
+    }
+}
@@ -0,0 +1,103 @@
+package org.global.dax.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Consistent hashing of keys onto nodes. Every node is placed on a ring of 64-bit hashes at virtualNodes points, a
+ * key belongs to the first node point at or after its own hash. Adding a node takes over only the arcs in front of
+ * its points, about 1/N of the keys, and removing one hands its arcs to the nodes behind them.
+ *
+ * Immutable, adding or removing a node returns a new ring, so lookups need no lock.
+ */
+final class HashRing {
+    static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final List<String> nodes;
+    private final int virtualNodes;
+    //sorted points, owners[i] owns the arc that ends at points[i]
+    private final long[] points;
+    private final String[] owners;
+
+    HashRing(List<String> nodes, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        if (nodes.stream().distinct().count() != nodes.size()) {
+            throw new IllegalArgumentException("Duplicate node");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.virtualNodes = virtualNodes;
+
+        int count = nodes.size() * virtualNodes;
+        long[][] placed = new long[count][];
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                placed[n * virtualNodes + v] = new long[]{hash(nodes.get(n) + "#" + v), n};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : nodes.get((int) a[1]).compareTo(nodes.get((int) b[1])));
+
+        //equal points are kept once, for the node whose name sorts first, whatever the order nodes were added in,
+        //so the binary search in nodeFor has a single match to find
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || placed[i][0] != placed[distinct - 1][0]) {
+                placed[distinct++] = placed[i];
+            }
+        }
+        this.points = new long[distinct];
+        this.owners = new String[distinct];
+        for (int i = 0; i < distinct; i++) {
+            points[i] = placed[i][0];
+            owners[i] = nodes.get((int) placed[i][1]);
+        }
+    }
+
+    List<String> nodes() {
+        return nodes;
+    }
+
+    HashRing withNode(String node) {
+        List<String> grown = new ArrayList<>(nodes);
+        grown.add(node);
+        return new HashRing(grown, virtualNodes);
+    }
+
+    HashRing withoutNode(String node) {
+        List<String> shrunk = new ArrayList<>(nodes);
+        if (!shrunk.remove(node)) {
+            throw new IllegalArgumentException("Unknown node " + node);
+        }
+        return new HashRing(shrunk, virtualNodes);
+    }
+
+    String nodeFor(String key) {
+        if (points.length == 0) {
+            throw new IllegalStateException("The ring has no nodes");
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        //past the last point the ring wraps around to the first
+        return owners[index == points.length ? 0 : index];
+    }
+
+    //FNV-1a over the UTF-8 bytes, spread with the MurmurHash3 finalizer so short keys still land all over the ring
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,66 @@
+package org.global.dax.client;
+
+import java.util.random.RandomGenerator;
+
+//how the load generator picks the key of each request out of a keyspace of n keys
+public enum KeyDistribution {
+    UNIFORM {
+        @Override
+        KeyGenerator generator(int keys) {
+            return random -> random.nextInt(keys);
+        }
+    },
+    //a few hot keys take most of the requests, YCSB's default skew
+    ZIPFIAN {
+        @Override
+        KeyGenerator generator(int keys) {
+            return new Zipfian(keys, ZIPFIAN_CONSTANT);
+        }
+    };
+
+    static final double ZIPFIAN_CONSTANT = 0.99;
+
+    abstract KeyGenerator generator(int keys);
+
+    interface KeyGenerator {
+        int next(RandomGenerator random);
+    }
+
+    //the rejection free generator of Gray et al. "Quickly generating billion-record synthetic databases", as in YCSB
+    static final class Zipfian implements KeyGenerator {
+        private final int items;
+        private final double theta;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+
+        Zipfian(int items, double theta) {
+            this.items = items;
+            this.theta = theta;
+            this.zetan = zeta(items, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        @Override
+        public int next(RandomGenerator random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            else if (uz < 1.0 + Math.pow(0.5, theta)) {
+                return Math.min(1, items - 1);
+            }
+            return (int) Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
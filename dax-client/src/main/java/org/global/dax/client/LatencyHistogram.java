@@ -0,0 +1,104 @@
+package org.global.dax.client;
+
+import java.util.Arrays;
+
+/*
+ * A log-linear histogram in the spirit of HdrHistogram. Values below 2 * STEPS are counted exactly, larger ones by
+ * their power of two split into STEPS linear buckets, so any value is reported within 1 / STEPS (under 1%) of what
+ * was recorded across the whole range of a long, at a fixed cost of a few thousand counters.
+ *
+ * Not thread safe, the load generator records and drains it under its monitor.
+ */
+public final class LatencyHistogram {
+    private static final int PRECISION_BITS = 7;
+    private static final int STEPS = 1 << PRECISION_BITS;
+    private static final int EXACT = 2 * STEPS;
+    private static final int BUCKETS = EXACT + (Long.SIZE - 2 - PRECISION_BITS) * STEPS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+    private double sum;
+
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts[index(v)]++;
+        count++;
+        sum += v;
+        max = Math.max(max, v);
+    }
+
+    //corrects for coordinated omission: a value that kept the caller from sending for longer than the expected
+    //interval also stands for the requests that would have been sent meanwhile, as HdrHistogram does
+    public void recordCorrected(long value, long expectedInterval) {
+        record(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missed = value - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+            record(missed);
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    //the highest value of the bucket holding the given percentile, or 0 when nothing was recorded
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+        return EXACT + (shift - 1) * STEPS + (int) ((value >>> shift) - STEPS);
+    }
+
+    static long highestValueAt(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / STEPS + 1;
+        long step = (index - EXACT) % STEPS + STEPS;
+        return (step << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,160 @@
+package org.global.dax.client;
+
+import java.time.Duration;
+
+import static org.global.dax.shared.Constants.*;
+
+/*
+ * Load generator settings, read from -Ddax.load.* system properties when the client is started with --load.
+ */
+public final class LoadConfig {
+    //every key of the keyspace is at most MAX_KEY_SIZE base 36 digits
+    static final int MAX_KEYS = (int) Math.pow(36, MAX_KEY_SIZE);
+
+    private String host = HOST;
+    private int port = PORT;
+    private int connections = 8;
+    private double readRatio = 0.9;
+    private int keys = 10_000;
+    private KeyDistribution distribution = KeyDistribution.UNIFORM;
+    private int valueSize = 100;
+    private long rate;
+    private Duration duration = Duration.ofSeconds(60);
+    private Duration reportInterval = Duration.ofSeconds(5);
+    private boolean preload = true;
+
+    public static LoadConfig fromSystemProperties() {
+        return new LoadConfig()
+                .host(System.getProperty("dax.host", HOST))
+                .port(Integer.getInteger("dax.port", PORT))
+                .connections(Integer.getInteger("dax.load.connections", 8))
+                .readRatio(Double.parseDouble(System.getProperty("dax.load.reads", "0.9")))
+                .keys(Integer.getInteger("dax.load.keys", 10_000))
+                .distribution(KeyDistribution.valueOf(System.getProperty("dax.load.distribution", "UNIFORM").toUpperCase()))
+                .valueSize(Integer.getInteger("dax.load.valueSize", 100))
+                .rate(Long.getLong("dax.load.rate", 0L))
+                .duration(Duration.ofSeconds(Long.getLong("dax.load.duration", 60L)))
+                .reportInterval(Duration.ofSeconds(Long.getLong("dax.load.report", 5L)))
+                .preload(Boolean.parseBoolean(System.getProperty("dax.load.preload", "true")));
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public LoadConfig host(String host) {
+        this.host = host;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public LoadConfig port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public LoadConfig connections(int connections) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("connections must be positive");
+        }
+        this.connections = connections;
+        return this;
+    }
+
+    //the share of requests that are GETs, the rest are ADDs
+    public double getReadRatio() {
+        return readRatio;
+    }
+
+    public LoadConfig readRatio(double readRatio) {
+        if (readRatio < 0 || readRatio > 1) {
+            throw new IllegalArgumentException("readRatio must be between 0 and 1");
+        }
+        this.readRatio = readRatio;
+        return this;
+    }
+
+    public int getKeys() {
+        return keys;
+    }
+
+    public LoadConfig keys(int keys) {
+        if (keys <= 0 || keys > MAX_KEYS) {
+            throw new IllegalArgumentException("keys must be between 1 and " + MAX_KEYS);
+        }
+        this.keys = keys;
+        return this;
+    }
+
+    public KeyDistribution getDistribution() {
+        return distribution;
+    }
+
+    public LoadConfig distribution(KeyDistribution distribution) {
+        this.distribution = distribution;
+        return this;
+    }
+
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    public LoadConfig valueSize(int valueSize) {
+        if (valueSize <= 0 || valueSize > MAX_VALUE_SIZE) {
+            throw new IllegalArgumentException("valueSize must be between 1 and " + MAX_VALUE_SIZE);
+        }
+        this.valueSize = valueSize;
+        return this;
+    }
+
+    //requests per second over all connections for open-loop load, 0 runs closed-loop as fast as responses come back
+    public long getRate() {
+        return rate;
+    }
+
+    public LoadConfig rate(long rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("rate must not be negative");
+        }
+        this.rate = rate;
+        return this;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public LoadConfig duration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    public Duration getReportInterval() {
+        return reportInterval;
+    }
+
+    public LoadConfig reportInterval(Duration reportInterval) {
+        if (reportInterval.isNegative() || reportInterval.isZero()) {
+            throw new IllegalArgumentException("reportInterval must be positive");
+        }
+        this.reportInterval = reportInterval;
+        return this;
+    }
+
+    //stores every key of the keyspace before the run so reads hit
+    public boolean isPreload() {
+        return preload;
+    }
+
+    public LoadConfig preload(boolean preload) {
+        this.preload = preload;
+        return this;
+    }
+}
@@ -0,0 +1,227 @@
+package org.global.dax.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.global.dax.shared.BinaryProtocol.REQUEST_HEADER_SIZE;
+import static org.global.dax.shared.Constants.*;
+
+/*
+ * Drives a server over a number of DaxClient connections with a mix of GETs and ADDs, one thread per connection.
+ *
+ * Closed-loop (rate 0) a connection sends its next request once the previous one is answered, a response that took
+ * longer than the connection's mean also stands for the requests it held back (see LatencyHistogram.recordCorrected).
+ * Open-loop a connection sends on a fixed schedule whether or not earlier requests were answered and latency counts
+ * from when a request was due rather than when it went out, so a stalled server cannot hide its stall.
+ */
+public final class LoadGenerator {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+    //how long an open-loop connection waits for its outstanding responses once the run is over
+    private static final long DRAIN_TIMEOUT_MS = 5000L;
+
+    //latencies are in nanoseconds
+    public record Report(long requests, long errors, double requestsPerSecond, LatencyHistogram latency) {
+    }
+
+    private final LoadConfig config;
+    private final String[] keys;
+    private final String value;
+    private final KeyDistribution.KeyGenerator keyGenerator;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+        this.keys = new String[config.getKeys()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Integer.toString(i, 36);
+        }
+        this.value = "x".repeat(config.getValueSize());
+        this.keyGenerator = config.getDistribution().generator(keys.length);
+    }
+
+    public Report run() throws IOException, InterruptedException {
+        List<DaxClient> clients = new ArrayList<>(config.getConnections());
+        try {
+            for (int i = 0; i < config.getConnections(); i++) {
+                clients.add(DaxClient.connect(config.getHost(), config.getPort()));
+            }
+            if (config.isPreload()) {
+                preload(clients.get(0));
+            }
+
+            LOG.info("Running {} load over [{}] connections for {} s, {} keys {}, {}% reads of {} byte values",
+                    config.getRate() > 0 ? config.getRate() + " requests/s open-loop" : "closed-loop",
+                    config.getConnections(), config.getDuration().toSeconds(), keys.length, config.getDistribution(),
+                    Math.round(config.getReadRatio() * 100), config.getValueSize());
+
+            long start = System.nanoTime();
+            long end = start + config.getDuration().toNanos();
+            CountDownLatch done = new CountDownLatch(clients.size());
+            List<Worker> workers = new ArrayList<>(clients.size());
+            for (int i = 0; i < clients.size(); i++) {
+                Worker worker = new Worker(clients.get(i), start, end, done);
+                workers.add(worker);
+                new Thread(worker, "dax-load-" + i).start();
+            }
+
+            LatencyHistogram total = new LatencyHistogram();
+            long reportNanos = config.getReportInterval().toNanos();
+            long lastReport = start;
+            long lastRequests = 0;
+            while (!done.await(Math.max(lastReport + reportNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+                long now = System.nanoTime();
+                lastRequests = report(workers, total, now - lastReport, lastRequests, now - start);
+                lastReport = now;
+            }
+            long finished = System.nanoTime();
+            report(workers, total, finished - lastReport, lastRequests, finished - start);
+
+            Report report = new Report(requests.sum(), errors.sum(),
+                    requests.sum() * 1e9 / Math.max(finished - start, 1), total);
+            LOG.info("Total {} requests {} errors {} requests/s {}", report.requests(), report.errors(),
+                    Math.round(report.requestsPerSecond()), describe(total));
+            return report;
+        } finally {
+            clients.forEach(DaxClient::close);
+        }
+    }
+
+    //MADD batches as large as a frame allows
+    private void preload(DaxClient client) {
+        int perBatch = Math.min(MAX_BATCH_KEYS, (MAX_FRAME_SIZE - REQUEST_HEADER_SIZE - Integer.BYTES)
+                / (MAX_KEY_SIZE + Integer.BYTES + value.length()));
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int from = 0; from < keys.length; from += perBatch) {
+            Map<String, String> batch = new LinkedHashMap<>();
+            for (int i = from; i < Math.min(from + perBatch, keys.length); i++) {
+                batch.put(keys[i], value);
+            }
+            batches.add(client.multiAdd(batch));
+        }
+        CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+        LOG.info("Preloaded {} keys", keys.length);
+    }
+
+    //drains the histograms of the interval into the total and logs the interval, returns the requests seen so far
+    private long report(List<Worker> workers, LatencyHistogram total, long intervalNanos, long lastRequests, long elapsedNanos) {
+        LatencyHistogram interval = new LatencyHistogram();
+        for (Worker worker : workers) {
+            synchronized (worker.histogram) {
+                interval.add(worker.histogram);
+                worker.histogram.reset();
+            }
+        }
+        total.add(interval);
+
+        long seen = requests.sum();
+        LOG.info("[{} s] requests/s {} errors {} {}", TimeUnit.NANOSECONDS.toSeconds(elapsedNanos),
+                Math.round((seen - lastRequests) * 1e9 / Math.max(intervalNanos, 1)), errors.sum(), describe(interval));
+        return seen;
+    }
+
+    private static String describe(LatencyHistogram histogram) {
+        return String.format("latency us p50 %.1f p99 %.1f p99.9 %.1f max %.1f",
+                histogram.percentile(50) / 1e3, histogram.percentile(99) / 1e3,
+                histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+    }
+
+    private final class Worker implements Runnable {
+        private final DaxClient client;
+        private final long start;
+        private final long end;
+        private final CountDownLatch done;
+        private final SplittableRandom random = new SplittableRandom();
+        //guarded by itself, open-loop responses are recorded by the client's reader thread
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        Worker(DaxClient client, long start, long end, CountDownLatch done) {
+            this.client = client;
+            this.start = start;
+            this.end = end;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (config.getRate() > 0) {
+                    runOpenLoop();
+                } else {
+                    runClosedLoop();
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Load connection failed due to {}", e.getMessage(), e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void runClosedLoop() {
+            long latencySum = 0;
+            long latencyCount = 0;
+            while (System.nanoTime() < end && !client.isClosed()) {
+                long sent = System.nanoTime();
+                boolean succeeded = true;
+                try {
+                    send().join();
+                } catch (CompletionException e) {
+                    succeeded = false;
+                }
+                long latency = System.nanoTime() - sent;
+                latencySum += latency;
+                latencyCount++;
+                record(latency, latencySum / latencyCount, succeeded);
+            }
+        }
+
+        private void runOpenLoop() {
+            //every connection takes an equal share of the rate
+            long interval = Math.max(1, config.getConnections() * 1_000_000_000L / config.getRate());
+            AtomicInteger outstanding = new AtomicInteger();
+            for (long due = start; due < end && !client.isClosed(); due += interval) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                long scheduled = due;
+                outstanding.incrementAndGet();
+                send().whenComplete((response, error) -> {
+                    record(System.nanoTime() - scheduled, 0, error == null);
+                    outstanding.decrementAndGet();
+                });
+            }
+
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+            while (outstanding.get() > 0 && System.currentTimeMillis() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        private CompletableFuture<?> send() {
+            String key = keys[keyGenerator.next(random)];
+            return random.nextDouble() < config.getReadRatio() ? client.get(key) : client.add(key, value);
+        }
+
+        private void record(long latency, long expectedInterval, boolean succeeded) {
+            requests.increment();
+            if (!succeeded) {
+                errors.increment();
+            }
+            synchronized (histogram) {
+                histogram.recordCorrected(latency, expectedInterval);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.global.dax.client;
+
+//a BUSY status, the server had no room to run the request and did not execute it, it is safe to retry later
+public class ServerBusyException extends DaxClientException {
+    private static final long serialVersionUID = 1L;
+
+    public ServerBusyException() {
+        super("Server busy");
+    }
+}
@@ -3,6 +3,7 @@ package org.global.dax.client;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import org.global.dax.shared.BinaryProtocol;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -11,6 +12,7 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 
 @ExtendWith(MockitoExtension.class)
 class ClientMainTest {
@@ -67,4 +69,35 @@ class ClientMainTest {
         String response = getServerResponse.invoke(client).toString();
         assertEquals(value, response);
     }
+
+    @Test
+    void shouldNegotiateBinaryProtocolAndSendBinaryCommand() throws Exception {
+        ByteBuffer response = BinaryProtocol.encodeResponse(BinaryProtocol.STATUS_OK, "hello world");
+        //like a socket, the handshake reply arrives on its own before any binary frame
+        InputStream inputStream = new SequenceInputStream(
+                new ByteArrayInputStream("OK\n".getBytes()),
+                new ByteArrayInputStream(response.array(), 0, response.remaining())
+        );
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        TestClientSocket clientSocket = new TestClientSocket(inputStream, outputStream);
+
+        ClientMain client = new ClientMain(
+                clientSocket,
+                new PrintWriter(new OutputStreamWriter(outputStream)),
+                new BufferedReader(new InputStreamReader(inputStream))
+        );
+
+        Method negotiate = client.getClass().getDeclaredMethod("negotiateBinaryProtocol");
+        negotiate.setAccessible(true);
+        negotiate.invoke(client);
+
+        Method sendBinaryCommand = client.getClass().getDeclaredMethod("sendBinaryCommand", String.class);
+        sendBinaryCommand.setAccessible(true);
+        assertEquals("hello world", sendBinaryCommand.invoke(client, "GET abcd"));
+
+        byte[] sent = outputStream.toByteArray();
+        String handshake = BinaryProtocol.NEGOTIATE_COMMAND + "\n";
+        assertEquals(handshake, new String(sent, 0, handshake.length()));
+        assertEquals(BinaryProtocol.OP_GET, sent[handshake.length()]);
+    }
 }
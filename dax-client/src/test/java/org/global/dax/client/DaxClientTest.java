@@ -0,0 +1,233 @@
+package org.global.dax.client;
+
+import org.global.dax.shared.KeyPage;
+import org.global.dax.shared.ProtocolUtils;
+import org.global.dax.shared.ShardedCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.global.dax.shared.BinaryProtocol.REQUEST_HEADER_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaxClientTest {
+    //answers binary requests in batches, so a client that waited for each response before sending would stall
+    private static class BatchingTestServer implements Closeable {
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private final ShardedCache cache = new ShardedCache();
+        private final int batchSize;
+        private volatile Socket socket;
+
+        BatchingTestServer(int batchSize) throws IOException {
+            this.batchSize = batchSize;
+            Thread thread = new Thread(this::serve, "dax-test-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void serve() {
+            try (Socket accepted = serverSocket.accept()) {
+                socket = accepted;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(accepted.getInputStream()));
+                OutputStream out = accepted.getOutputStream();
+
+                StringBuilder handshake = new StringBuilder();
+                int next;
+                while ((next = in.read()) != '\n') {
+                    handshake.append((char) next);
+                }
+                out.write(("PROTOCOL BINARY".contentEquals(handshake) ? "OK\n" : "ERROR Unknown command\n").getBytes());
+
+                while (true) {
+                    List<ByteBuffer> requests = new ArrayList<>();
+                    for (int i = 0; i < batchSize; i++) {
+                        byte[] header = new byte[REQUEST_HEADER_SIZE];
+                        in.readFully(header);
+                        byte[] frame = new byte[REQUEST_HEADER_SIZE + ByteBuffer.wrap(header).getInt(REQUEST_HEADER_SIZE - 4)];
+                        System.arraycopy(header, 0, frame, 0, header.length);
+                        in.readFully(frame, header.length, frame.length - header.length);
+                        requests.add(ByteBuffer.wrap(frame));
+                    }
+                    for (ByteBuffer request : requests) {
+                        ByteBuffer response = ProtocolUtils.handleBinaryRequest(request, cache);
+                        out.write(response.array(), 0, response.remaining());
+                    }
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+
+    private BatchingTestServer server;
+    private DaxClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new BatchingTestServer(1);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void shouldRoundTripEveryCommand() throws Exception {
+        client = DaxClient.connect("127.0.0.1", server.port());
+
+        assertNull(client.add("abcd", "hello world").get(1, TimeUnit.SECONDS));
+        assertEquals("hello world", client.get("abcd").get(1, TimeUnit.SECONDS));
+        assertNull(client.get("zzzz").get(1, TimeUnit.SECONDS));
+        assertEquals(List.of("abcd"), client.getAll().get(1, TimeUnit.SECONDS));
+        assertTrue(client.delete("abcd").get(1, TimeUnit.SECONDS));
+        assertFalse(client.delete("abcd").get(1, TimeUnit.SECONDS));
+        assertNull(client.heartbeat().get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldRoundTripBatches() throws Exception {
+        client = DaxClient.connect("127.0.0.1", server.port());
+
+        assertNull(client.multiAdd(Map.of("a", "1", "b", "2", "c", "3")).get(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("1", null, "3"), client.multiGet(List.of("a", "zz", "c")).get(1, TimeUnit.SECONDS));
+        assertEquals(2, (int) client.multiDelete(List.of("a", "b", "zz")).get(1, TimeUnit.SECONDS));
+        assertEquals(List.of("c"), client.getAll().get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldScanAllKeysPageByPage() throws Exception {
+        client = DaxClient.connect("127.0.0.1", server.port());
+        for (int i = 0; i < 100; i++) {
+            client.add(Integer.toString(i), "value");
+        }
+
+        List<String> keys = new ArrayList<>();
+        long cursor = 0;
+        do {
+            KeyPage page = client.scan(cursor, 30).get(1, TimeUnit.SECONDS);
+            keys.addAll(page.keys());
+            cursor = page.cursor();
+        } while (cursor != 0);
+
+        assertEquals(100, keys.size());
+        assertEquals(new HashSet<>(client.getAll().get(1, TimeUnit.SECONDS)), new HashSet<>(keys));
+    }
+
+    @Test
+    void shouldExpireEntriesAddedWithTtl() throws Exception {
+        client = DaxClient.connect("127.0.0.1", server.port());
+
+        assertNull(client.add("abcd", "short lived", Duration.ofMillis(50)).get(1, TimeUnit.SECONDS));
+        assertEquals("short lived", client.get("abcd").get(1, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertNull(client.get("abcd").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldPipelineManyOutstandingRequests() throws Exception {
+        server.close();
+        server = new BatchingTestServer(50);
+        client = DaxClient.connect("127.0.0.1", server.port(), 50);
+
+        List<CompletableFuture<Void>> adds = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            adds.add(client.add(String.format("k%03d", i), "value" + i));
+        }
+        CompletableFuture.allOf(adds.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.SECONDS);
+
+        List<CompletableFuture<String>> gets = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            gets.add(client.get(String.format("k%03d", i)));
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals("value" + i, gets.get(i).get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(0, client.inFlight());
+    }
+
+    @Test
+    void shouldRejectInvalidRequestsBeforeSending() throws Exception {
+        client = DaxClient.connect("127.0.0.1", server.port());
+
+        assertThrows(IllegalArgumentException.class, () -> client.add("abcde", "test"));
+        assertThrows(IllegalArgumentException.class, () -> client.add("abcd", "A".repeat(2097)));
+        assertNull(client.add("abcd", "A".repeat(2096)).get(1, TimeUnit.SECONDS));
+        assertEquals(2096, client.get("abcd").get(1, TimeUnit.SECONDS).length());
+    }
+
+    @Test
+    void shouldFailOutstandingRequestsWhenConnectionIsLost() throws Exception {
+        server.close();
+        server = new BatchingTestServer(2);
+        client = DaxClient.connect("127.0.0.1", server.port());
+
+        CompletableFuture<String> pending = client.get("abcd");
+        server.close();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> pending.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, error.getCause());
+        assertTrue(client.isClosed());
+        assertTrue(client.heartbeat().isCompletedExceptionally());
+    }
+
+    @Test
+    void shouldFailOutstandingRequestsOnAnInvalidResponseLength() throws Exception {
+        try (ServerSocket corrupt = new ServerSocket(0)) {
+            Thread thread = new Thread(() -> {
+                try (Socket accepted = corrupt.accept()) {
+                    InputStream in = accepted.getInputStream();
+                    while (in.read() != '\n') {
+                        //the handshake
+                    }
+                    DataOutputStream out = new DataOutputStream(accepted.getOutputStream());
+                    out.write("OK\n".getBytes());
+                    in.readNBytes(REQUEST_HEADER_SIZE);
+                    out.writeByte(0);
+                    out.writeInt(-1);
+                    out.flush();
+                    in.read();
+                } catch (IOException ignored) {
+                }
+            }, "dax-test-server");
+            thread.setDaemon(true);
+            thread.start();
+            client = DaxClient.connect("127.0.0.1", corrupt.getLocalPort());
+
+            CompletableFuture<String> pending = client.get("abcd");
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> pending.get(1, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, error.getCause());
+            assertTrue(client.isClosed());
+        }
+    }
+}
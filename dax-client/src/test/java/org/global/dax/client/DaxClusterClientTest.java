@@ -0,0 +1,148 @@
+package org.global.dax.client;
+
+import org.global.dax.shared.ProtocolUtils;
+import org.global.dax.shared.ShardedCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.global.dax.shared.BinaryProtocol.REQUEST_HEADER_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaxClusterClientTest {
+    //a binary protocol server for one connection, answering every frame from a cache of its own
+    private static class TestNode implements Closeable {
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private final ShardedCache cache = new ShardedCache();
+
+        TestNode() throws IOException {
+            Thread thread = new Thread(this::serve, "dax-test-node");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String endpoint() {
+            return "127.0.0.1:" + serverSocket.getLocalPort();
+        }
+
+        private void serve() {
+            try (Socket accepted = serverSocket.accept()) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(accepted.getInputStream()));
+                OutputStream out = accepted.getOutputStream();
+                while (in.read() != '\n') {
+                    //the PROTOCOL BINARY handshake
+                }
+                out.write("OK\n".getBytes());
+
+                while (true) {
+                    byte[] header = new byte[REQUEST_HEADER_SIZE];
+                    in.readFully(header);
+                    byte[] frame = new byte[REQUEST_HEADER_SIZE + ByteBuffer.wrap(header).getInt(REQUEST_HEADER_SIZE - 4)];
+                    System.arraycopy(header, 0, frame, 0, header.length);
+                    in.readFully(frame, header.length, frame.length - header.length);
+                    ByteBuffer response = ProtocolUtils.handleBinaryRequest(ByteBuffer.wrap(frame), cache);
+                    out.write(response.array(), 0, response.remaining());
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            cache.close();
+        }
+    }
+
+    private final List<TestNode> nodes = new ArrayList<>();
+    private DaxClusterClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            nodes.add(new TestNode());
+        }
+        client = DaxClusterClient.connect(nodes.stream().map(TestNode::endpoint).toList());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        for (TestNode node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    void shouldStoreEachKeyOnItsNodeOnly() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            client.add("k" + i, "v" + i).get(1, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < 300; i++) {
+            String key = "k" + i;
+            assertEquals("v" + i, client.get(key).get(1, TimeUnit.SECONDS));
+            for (TestNode node : nodes) {
+                assertEquals(node.endpoint().equals(client.nodeFor(key)) ? "v" + i : null, node.cache.get(key));
+            }
+        }
+        nodes.forEach(node -> assertTrue(node.cache.size() > 0));
+        assertTrue(client.delete("k0").get(1, TimeUnit.SECONDS));
+        assertNull(client.get("k0").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldFanBatchesOutAndMergeTheResults() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            entries.put("k" + i, "v" + i);
+        }
+        client.multiAdd(entries).get(1, TimeUnit.SECONDS);
+
+        List<String> keys = new ArrayList<>(entries.keySet());
+        keys.add(1, "none");
+        List<String> values = client.multiGet(keys).get(1, TimeUnit.SECONDS);
+        assertEquals(101, values.size());
+        assertEquals("v0", values.get(0));
+        assertNull(values.get(1));
+        assertEquals("v99", values.get(100));
+
+        assertEquals(new HashSet<>(entries.keySet()), new HashSet<>(client.getAll().get(1, TimeUnit.SECONDS)));
+        assertEquals(2, (int) client.multiDelete(List.of("k1", "k2", "none")).get(1, TimeUnit.SECONDS));
+        assertEquals(98, client.getAll().get(1, TimeUnit.SECONDS).size());
+        assertThrows(IllegalArgumentException.class, () -> client.multiGet(List.of()));
+    }
+
+    @Test
+    void shouldRouteToAnAddedNodeAndAwayFromARemovedOne() throws Exception {
+        TestNode added = new TestNode();
+        nodes.add(added);
+        client.addNode(added.endpoint());
+        assertEquals(4, client.nodes().size());
+
+        for (int i = 0; i < 200; i++) {
+            client.add("k" + i, "v" + i).get(1, TimeUnit.SECONDS);
+        }
+        assertTrue(added.cache.size() > 0);
+
+        String removed = nodes.get(0).endpoint();
+        client.removeNode(removed);
+        for (int i = 0; i < 200; i++) {
+            assertNotEquals(removed, client.nodeFor("k" + i));
+        }
+        assertNull(client.heartbeat().get(1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> client.removeNode(removed));
+        assertThrows(IllegalArgumentException.class, () -> client.addNode(added.endpoint()));
+    }
+}
@@ -0,0 +1,79 @@
+package org.global.dax.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+    private static final int KEYS = 100_000;
+
+    private static String key(int i) {
+        return Integer.toString(i, 36);
+    }
+
+    @Test
+    void shouldSpreadKeysEvenlyOverTheNodes() {
+        HashRing ring = new HashRing(List.of("a:1", "b:1", "c:1", "d:1"), HashRing.DEFAULT_VIRTUAL_NODES);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.nodeFor(key(i)), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        //within 20% of a fair share
+        counts.values().forEach(count -> assertTrue(Math.abs(count - KEYS / 4) < KEYS / 20, counts.toString()));
+    }
+
+    @Test
+    void shouldMoveOnlyTheKeysTheNewNodeTakesOver() {
+        HashRing before = new HashRing(List.of("a:1", "b:1", "c:1", "d:1"), HashRing.DEFAULT_VIRTUAL_NODES);
+        HashRing after = before.withNode("e:1");
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = after.nodeFor(key(i));
+            if (!owner.equals(before.nodeFor(key(i)))) {
+                //a key only ever moves to the new node
+                assertEquals("e:1", owner);
+                moved++;
+            }
+        }
+        //about 1/5 of the keys
+        assertTrue(Math.abs(moved - KEYS / 5) < KEYS / 25, "moved " + moved);
+    }
+
+    @Test
+    void shouldHandTheKeysOfARemovedNodeToTheOthers() {
+        HashRing before = new HashRing(List.of("a:1", "b:1", "c:1"), HashRing.DEFAULT_VIRTUAL_NODES);
+        HashRing after = before.withoutNode("b:1");
+
+        for (int i = 0; i < KEYS; i++) {
+            String owner = before.nodeFor(key(i));
+            if (!owner.equals("b:1")) {
+                assertEquals(owner, after.nodeFor(key(i)));
+            }
+        }
+        assertEquals(List.of("a:1", "c:1"), after.nodes());
+    }
+
+    @Test
+    void shouldNotDependOnTheOrderNodesWereAddedIn() {
+        HashRing ring = new HashRing(List.of("a:1", "b:1", "c:1"), 16);
+        HashRing reordered = new HashRing(List.of("c:1", "a:1"), 16).withNode("b:1");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ring.nodeFor(key(i)), reordered.nodeFor(key(i)));
+        }
+    }
+
+    @Test
+    void shouldRejectInvalidRings() {
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of("a:1", "a:1"), 10));
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of("a:1"), 0));
+        assertThrows(IllegalStateException.class, () -> new HashRing(List.of(), 10).nodeFor("abcd"));
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(List.of("a:1"), 10).withoutNode("b:1"));
+    }
+}
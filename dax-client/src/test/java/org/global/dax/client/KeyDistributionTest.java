@@ -0,0 +1,60 @@
+package org.global.dax.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyDistributionTest {
+    private static final int KEYS = 1000;
+    private static final int SAMPLES = 100_000;
+
+    @ParameterizedTest
+    @EnumSource(KeyDistribution.class)
+    void testKeysStayInRange(KeyDistribution distribution) {
+        KeyDistribution.KeyGenerator generator = distribution.generator(KEYS);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            int key = generator.next(random);
+            assertTrue(key >= 0 && key < KEYS, "key " + key);
+        }
+    }
+
+    @Test
+    void testUniformSpreadsKeysEvenly() {
+        int[] counts = sample(KeyDistribution.UNIFORM);
+        for (int count : counts) {
+            assertTrue(count > SAMPLES / KEYS / 3, "count " + count);
+        }
+    }
+
+    @Test
+    void testZipfianFavoursTheFirstKeys() {
+        int[] counts = sample(KeyDistribution.ZIPFIAN);
+
+        //with theta 0.99 the first key alone takes over a tenth of the requests for a thousand keys
+        assertTrue(counts[0] > SAMPLES / 10, "count " + counts[0]);
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[10] && counts[10] > counts[KEYS - 1]);
+    }
+
+    @Test
+    void testSingleKey() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (KeyDistribution distribution : KeyDistribution.values()) {
+            assertEquals(0, distribution.generator(1).next(random));
+        }
+    }
+
+    private static int[] sample(KeyDistribution distribution) {
+        KeyDistribution.KeyGenerator generator = distribution.generator(KEYS);
+        SplittableRandom random = new SplittableRandom(42);
+        int[] counts = new int[KEYS];
+        for (int i = 0; i < SAMPLES; i++) {
+            counts[generator.next(random)]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,78 @@
+package org.global.dax.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.count());
+        assertEquals(50, histogram.percentile(50));
+        assertEquals(99, histogram.percentile(99));
+        assertEquals(100, histogram.percentile(100));
+        assertEquals(50.5, histogram.mean(), 1e-9);
+    }
+
+    @Test
+    void testLargeValuesAreWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1000; value <= 1_000_000_000L; value *= 10) {
+            histogram.reset();
+            histogram.record(value);
+            histogram.record(value - 1);
+
+            long reported = histogram.percentile(50);
+            assertTrue(reported >= value - 1 && reported <= (value - 1) * 1.01, value + " reported as " + reported);
+        }
+    }
+
+    @Test
+    void testBucketsCoverEveryValue() {
+        for (long value : new long[]{0, 255, 256, 257, 1L << 20, (1L << 20) + 12345, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.highestValueAt(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValueAt(index - 1) < value);
+        }
+    }
+
+    @Test
+    void testCorrectedRecordingBackfillsMissedRequests() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordCorrected(100, 10);
+
+        //100, then the 90, 80 ... 10 the requests stuck behind it would have seen
+        assertEquals(10, histogram.count());
+        assertEquals(100, histogram.max());
+        assertEquals(10, histogram.percentile(10));
+
+        histogram.reset();
+        histogram.recordCorrected(100, 0);
+        assertEquals(1, histogram.count());
+    }
+
+    @Test
+    void testAddAndReset() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(20);
+        second.record(30);
+
+        first.add(second);
+        assertEquals(3, first.count());
+        assertEquals(30, first.max());
+        assertEquals(20, first.percentile(50));
+
+        first.reset();
+        assertEquals(0, first.count());
+        assertEquals(0, first.max());
+        assertEquals(0, first.percentile(99));
+    }
+}
@@ -0,0 +1,84 @@
+package org.global.dax.server;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A log-linear histogram any thread may record into. Values below 2 * STEPS are counted exactly, larger ones by
+ * their power of two split into STEPS linear buckets, so a reported value is within an eighth of what was recorded.
+ * Buckets are LongAdders, which only grow per-thread cells once threads actually contend on the same bucket.
+ */
+final class ConcurrentHistogram {
+    private static final int PRECISION_BITS = 3;
+    private static final int STEPS = 1 << PRECISION_BITS;
+    private static final int EXACT = 2 * STEPS;
+    private static final int BUCKETS = EXACT + (Long.SIZE - 2 - PRECISION_BITS) * STEPS;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    ConcurrentHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void record(long value) {
+        long v = Math.max(value, 0);
+        counts[index(v)].increment();
+        max.accumulate(v);
+    }
+
+    long count() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    //the highest value of the bucket holding the percentile, or 0 when nothing was recorded,
+    //buckets are read one at a time so it is approximate while values are being recorded
+    long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max());
+            }
+        }
+        return max();
+    }
+
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+        return EXACT + (shift - 1) * STEPS + (int) ((value >>> shift) - STEPS);
+    }
+
+    static long highestValueAt(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / STEPS + 1;
+        long step = (index - EXACT) % STEPS + STEPS;
+        return (step << shift) + (1L << shift) - 1;
+    }
+}
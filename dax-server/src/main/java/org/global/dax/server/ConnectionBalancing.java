@@ -0,0 +1,31 @@
+package org.global.dax.server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//how the acceptor spreads new connections over the I/O reactors
+public enum ConnectionBalancing {
+    ROUND_ROBIN {
+        @Override
+        Reactor select(List<Reactor> reactors, AtomicInteger cursor) {
+            return reactors.get(Math.floorMod(cursor.getAndIncrement(), reactors.size()));
+        }
+    },
+    LEAST_CONNECTIONS {
+        @Override
+        Reactor select(List<Reactor> reactors, AtomicInteger cursor) {
+            //rotate the starting point so ties do not always land on the first reactor
+            int start = Math.floorMod(cursor.getAndIncrement(), reactors.size());
+            Reactor selected = reactors.get(start);
+            for (int i = 1; i < reactors.size(); i++) {
+                Reactor candidate = reactors.get((start + i) % reactors.size());
+                if (candidate.connectionCount() < selected.connectionCount()) {
+                    selected = candidate;
+                }
+            }
+            return selected;
+        }
+    };
+
+    abstract Reactor select(List<Reactor> reactors, AtomicInteger cursor);
+}
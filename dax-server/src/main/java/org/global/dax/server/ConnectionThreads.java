@@ -0,0 +1,189 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.FrameDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The VIRTUAL_THREADS I/O model. The server channel stays in blocking mode and every accepted connection gets a
+ * thread of its own that reads, runs and writes its requests with plain blocking calls, decoded and answered by the
+ * same RequestDecoder as the reactors. A blocking write only returns once the socket took the response, so a client
+ * that does not read simply parks its own thread, there is no write queue to bound.
+ *
+ * The threads are virtual on a JDK that has them (21+), looked up reflectively since the build targets 17. On an
+ * older JDK the mode falls back to platform threads, which works but only scales to as many connections as the OS
+ * has threads for.
+ */
+final class ConnectionThreads implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionThreads.class);
+
+    private final ServerMain server;
+    private final ServerSocketChannel serverChannel;
+    private final ThreadFactory threads = newThreadFactory();
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    ConnectionThreads(ServerMain server, ServerSocketChannel serverChannel) {
+        this.server = server;
+        this.serverChannel = serverChannel;
+    }
+
+    int connectionCount() {
+        return connections.size();
+    }
+
+    //closing the channels wakes up the accepting thread and every connection thread blocked in a read or write
+    void stop() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        for (SocketChannel client : connections) {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                SocketChannel client = serverChannel.accept();
+                try {
+                    //responses are small and written as soon as they are ready, don't let Nagle hold them back
+                    client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                } catch (IOException e) {
+                    //the client went away before it was set up, only that connection is lost
+                    LOG.warn("Client closed before it could be served: {}", e.getMessage());
+                    try {
+                        client.close();
+                    } catch (IOException ignored) {
+                    }
+                    continue;
+                }
+                connections.add(client);
+                if (!running) {
+                    //raced with stop(), which may have closed the connections before this one was added
+                    client.close();
+                    break;
+                }
+                server.getMetrics().connectionAccepted();
+                threads.newThread(() -> serve(client)).start();
+            }
+        } catch (AsynchronousCloseException e) {
+            //stopped
+        } catch (IOException e) {
+            LOG.error("Connection threads stopped accepting due to {}", e.getMessage(), e);
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        FrameDecoder decoder = new FrameDecoder(server.getBufferPool());
+        //the responses to every frame of one read, written together with a single gathering write
+        List<ByteBuffer> responses = new ArrayList<>();
+        String clientAddress = "unknown";
+        try {
+            clientAddress = client.getRemoteAddress().toString();
+            LOG.info("Accepted connection from the client [{}] on [{}]", clientAddress, Thread.currentThread());
+
+            while (running) {
+                //the buffer is held while the thread waits for the client, in a pool sized for every connection
+                ByteBuffer buffer = decoder.readBuffer();
+                if (buffer == null) {
+                    LOG.warn("Closing the client [{}], the server is out of I/O buffer memory", clientAddress);
+                    server.getMetrics().ioMemoryDisconnect();
+                    return;
+                }
+                if (client.read(buffer) == -1) {
+                    LOG.info("Disconnecting the client [{}]", clientAddress);
+                    return;
+                }
+
+                ByteBuffer frame;
+                while ((frame = decoder.nextFrame()) != null) {
+                    RequestDecoder requestDecoder = server.getRequestDecoder();
+                    RequestDecoder.Request request = requestDecoder.decode(frame, decoder, clientAddress);
+                    if (request.stream() == null) {
+                        ByteBuffer[] response = request.handler().get();
+                        //the connection has a thread of its own, it waits for the log sync itself
+                        Collections.addAll(responses, request.durable()
+                                ? requestDecoder.awaitDurable(request, response)
+                                : response);
+                        continue;
+                    }
+                    //a streamed response is produced chunk by chunk as the socket takes it
+                    write(client, responses);
+                    Iterator<ByteBuffer> stream = request.stream();
+                    while (stream.hasNext()) {
+                        client.write(stream.next());
+                    }
+                }
+                write(client, responses);
+            }
+        } catch (IOException e) {
+            if (running) {
+                LOG.error("Failed to serve the client [{}] due to {}", clientAddress, e.getMessage());
+            }
+        } finally {
+            decoder.release();
+            connections.remove(client);
+            try {
+                LOG.info("Closing connection to client [{}]", clientAddress);
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void write(SocketChannel client, List<ByteBuffer> responses) throws IOException {
+        if (responses.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] buffers = responses.toArray(ByteBuffer[]::new);
+        ByteBuffer last = buffers[buffers.length - 1];
+        do {
+            client.write(buffers);
+        } while (last.hasRemaining());
+        responses.clear();
+    }
+
+    //Thread.ofVirtual().name("dax-connection-", 0).factory() where it exists, named daemon platform threads otherwise
+    private static ThreadFactory newThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Method name = builderType.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "dax-connection-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Virtual threads are not available on Java {}, serving connections on platform threads",
+                    System.getProperty("java.version"));
+        }
+
+        AtomicLong next = new AtomicLong();
+        return task -> {
+            Thread thread = new Thread(task, "dax-connection-" + next.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package org.global.dax.server;
+
+//where requests run once a reactor has decoded them
+public enum ExecutionStrategy {
+    //every request is handed to the worker pool, the worker enqueues the response and wakes the reactor up
+    WORKER_POOL,
+    //requests run on the reactor that read them and only expensive ones (binary GET ALL, GET ALL pages) go to the
+    //worker pool, the connection stops reading until the offloaded response is back so responses keep their order,
+    //a plain text GET ALL is streamed by the reactor itself as the socket drains
+    INLINE
+}
@@ -0,0 +1,10 @@
+package org.global.dax.server;
+
+//how the server waits for its connections
+public enum IoModel {
+    //non-blocking channels multiplexed by selector threads, see Reactor and ExecutionStrategy
+    SELECTOR,
+    //a thread per connection doing blocking reads and writes, virtual threads on a JDK that has them (21+),
+    //see ConnectionThreads
+    VIRTUAL_THREADS
+}
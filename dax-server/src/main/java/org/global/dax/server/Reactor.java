@@ -0,0 +1,182 @@
+package org.global.dax.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.global.dax.shared.Constants.WAKEUP_TIMEOUT_MS;
+
+/*
+ * A selector thread. The acceptor reactor owns the server channel; in single selector mode it also serves the
+ * connections it accepts, otherwise it hands them to I/O reactors that own them for the rest of their life, so
+ * every read, parse and write of a connection happens on the same thread.
+ */
+final class Reactor implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(Reactor.class);
+
+    private final String name;
+    private final ServerMain server;
+    private final Selector selector;
+    //work handed over by other threads (new connections, offloaded responses), run by this reactor on its own thread
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile Thread thread;
+    private volatile boolean running = true;
+
+    Reactor(String name, ServerMain server) throws IOException {
+        this.name = name;
+        this.server = server;
+        this.selector = Selector.open();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    int connectionCount() {
+        return connections.get();
+    }
+
+    void start() {
+        Thread reactorThread = new Thread(this, name);
+        reactorThread.start();
+    }
+
+    void registerServer(ServerSocketChannel serverChannel) throws ClosedChannelException {
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    //may be called from any thread, the channel is registered on the next turn of the loop
+    void register(SocketChannel client) {
+        connections.incrementAndGet();
+        execute(() -> {
+            try {
+                client.register(selector, SelectionKey.OP_READ, new ServerMain.ClientContext(this, server.getBufferPool()));
+            } catch (ClosedChannelException e) {
+                LOG.warn("Client closed before it could be registered with [{}]", name);
+                connectionClosed();
+            }
+        });
+    }
+
+    //may be called from any thread, the task runs on the reactor thread before its next select
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        LOG.info("Reactor [{}] started", name);
+
+        try {
+            //keep on listening continuously for the messages from the clients
+            while (running) {
+                runTasks();
+
+                //support multiple concurrent clients over a single thread with the NIO multiplexing approach
+                // Selector wakeup + prevents CPU spinning due to spurious wakeup and is safer in real-world systems.
+                if (selector.select(WAKEUP_TIMEOUT_MS) == 0) {
+                    continue;
+                }
+
+                long started = System.nanoTime();
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    process(key);
+                }
+                server.getMetrics().recordSelectorLoop(System.nanoTime() - started);
+            }
+        } catch (IOException e) {
+            LOG.error("Reactor [{}] failed due to {}", name, e.getMessage(), e);
+        } finally {
+            close();
+        }
+    }
+
+    private void process(SelectionKey key) {
+        SelectableChannel channelObj = key.channel();
+
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+
+            if (key.isAcceptable()) { //handles OP_ACCEPT without blocking
+                if (channelObj instanceof ServerSocketChannel channel) {
+                    server.handleAccept(channel);
+                } else {
+                    throw new IOException("Unknown channel [" + channelObj.getClass() + "]");
+                }
+            } else if (key.isReadable()) { //handles OP_READ without blocking
+                if (channelObj instanceof SocketChannel client && key.attachment() instanceof ServerMain.ClientContext ctx) {
+                    server.handleRead(key, selector, client, ctx);
+                } else {
+                    throw new IOException("Unknown channel [" + channelObj.getClass() + "]");
+                }
+            } else if (key.isWritable()) { //handles OP_WRITE without blocking
+                if (channelObj instanceof SocketChannel client && key.attachment() instanceof ServerMain.ClientContext ctx) {
+                    server.handleWrite(key, client, ctx);
+                } else {
+                    throw new IOException("Unknown channel [" + channelObj.getClass() + "]");
+                }
+            }
+        } catch (CancelledKeyException | ClosedChannelException e) {
+            LOG.warn("Channel closed unexpectedly: {}", e.getMessage());
+            server.closeClient(key);
+        } catch (IOException e) {
+            LOG.error("I/O error: {}", e.getMessage(), e);
+            server.closeClient(key);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Reactor [{}] task failed due to {}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void close() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+        LOG.info("Reactor [{}] stopped", name);
+    }
+}
@@ -0,0 +1,194 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.BinaryProtocol;
+import org.global.dax.shared.ProtocolUtils;
+import org.global.dax.shared.ShardedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.global.dax.shared.BinaryProtocol.REQUEST_HEADER_SIZE;
+import static org.global.dax.shared.Constants.MAX_KEY_SIZE;
+import static org.global.dax.shared.Constants.REPLICATION_BATCH_BYTES;
+
+/*
+ * The replica side of replication, a single thread that follows the primary. Every time it connects it clears the
+ * cache, applies the snapshot and then the batches of mutations as they come, acknowledging each one once applied.
+ * A lost connection is retried with a growing backoff and starts over with a fresh snapshot, clients keep reading
+ * from the cache meanwhile and may see it partly filled while it bootstraps.
+ *
+ * The lag in milliseconds compares the primary's clock with this server's, it assumes the clocks are in sync.
+ */
+final class ReplicaLink implements Replication {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaLink.class);
+    private static final long MIN_BACKOFF_MS = 100L;
+    private static final long MAX_BACKOFF_MS = 5000L;
+
+    private final ShardedCache cache;
+    private final InetSocketAddress primary;
+    private final LongAdder bootstraps = new LongAdder();
+    private final LongAdder appliedMutations = new LongAdder();
+    private volatile Thread thread;
+    private volatile SocketChannel channel;
+    private volatile boolean running = true;
+    //bootstrapped and following the primary
+    private volatile boolean connected;
+    private volatile long appliedSequence;
+    private volatile long lagRecords;
+    private volatile long lagMillis;
+
+    ReplicaLink(ShardedCache cache, InetSocketAddress primary) {
+        this.cache = cache;
+        this.primary = primary;
+    }
+
+    @Override
+    public void start() {
+        thread = new Thread(this::follow, "dax-replica-link");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        try {
+            SocketChannel current = channel;
+            if (current != null) {
+                current.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void addStats(Map<String, Number> stats) {
+        stats.put("replication.connected", connected ? 1 : 0);
+        stats.put("replication.bootstraps", bootstraps.sum());
+        stats.put("replication.applied", appliedMutations.sum());
+        stats.put("replication.sequence", appliedSequence);
+        stats.put("replication.lag_records", lagRecords);
+        stats.put("replication.lag_ms", lagMillis);
+    }
+
+    private void follow() {
+        long backoff = MIN_BACKOFF_MS;
+        while (running) {
+            try (SocketChannel link = SocketChannel.open(primary)) {
+                channel = link;
+                if (!running) {
+                    //raced with stop(), which may have closed the previous channel
+                    return;
+                }
+                handshake(link);
+                backoff = MIN_BACKOFF_MS;
+                bootstrap();
+                applyBatches(link);
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Lost the link to the primary [{}] due to {}, retrying in [{}] ms", primary,
+                            e.getMessage(), backoff);
+                }
+            } finally {
+                connected = false;
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private static void handshake(SocketChannel link) throws IOException {
+        link.write(ByteBuffer.wrap(HANDSHAKE.getBytes()));
+        ByteBuffer response = ByteBuffer.allocate(HANDSHAKE_RESPONSE.length());
+        readFully(link, response);
+        if (!HANDSHAKE_RESPONSE.equals(new String(response.array()))) {
+            throw new IOException("Invalid replication handshake response");
+        }
+    }
+
+    //the snapshot that follows replaces whatever the cache held
+    private void bootstrap() {
+        cache.removeAll(cache.getAllKeys());
+        bootstraps.increment();
+        lagRecords = 0;
+        lagMillis = 0;
+    }
+
+    private void applyBatches(SocketChannel link) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        ByteBuffer ack = ByteBuffer.allocate(Long.BYTES);
+        while (running) {
+            header.clear();
+            readFully(link, header);
+            long batchSequence = header.getLong(0);
+            long headSequence = header.getLong(Long.BYTES);
+            long committedMillis = header.getLong(2 * Long.BYTES);
+            int length = header.getInt(3 * Long.BYTES);
+            if (length < 0 || length > REPLICATION_BATCH_BYTES) {
+                throw new IOException("Invalid replication batch of " + length + " bytes");
+            }
+
+            ByteBuffer batch = ByteBuffer.allocate(length);
+            readFully(link, batch);
+            apply(batch.flip());
+            if (batchSequence == SNAPSHOT) {
+                continue;
+            }
+
+            if (!connected) {
+                //the end of the snapshot
+                connected = true;
+                LOG.info("Bootstrapped from the primary [{}], following its mutations", primary);
+            }
+            appliedSequence = batchSequence;
+            lagRecords = Math.max(0, headSequence - batchSequence);
+            lagMillis = length > 0 ? Math.max(0, System.currentTimeMillis() - committedMillis) : 0;
+            ack.clear().putLong(batchSequence).flip();
+            while (ack.hasRemaining()) {
+                link.write(ack);
+            }
+        }
+    }
+
+    //the frames of a batch one after the other, each as long as its header says
+    private void apply(ByteBuffer batch) throws IOException {
+        while (batch.hasRemaining()) {
+            if (batch.remaining() < REQUEST_HEADER_SIZE) {
+                throw new IOException("Truncated replication batch");
+            }
+            int frameLength = REQUEST_HEADER_SIZE + batch.getInt(batch.position() + 1 + MAX_KEY_SIZE);
+            if (frameLength < REQUEST_HEADER_SIZE || frameLength > batch.remaining()) {
+                throw new IOException("Truncated replication batch");
+            }
+
+            ByteBuffer[] response = ProtocolUtils.respondToBinaryRequest(batch.slice(batch.position(), frameLength), cache);
+            if (response[0].get(0) == BinaryProtocol.STATUS_ERROR) {
+                LOG.warn("Failed to apply a replicated mutation with opcode [{}]", batch.get(batch.position()));
+            }
+            batch.position(batch.position() + frameLength);
+            appliedMutations.increment();
+        }
+    }
+
+    private static void readFully(SocketChannel link, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (link.read(buffer) == -1) {
+                throw new IOException("Primary closed the connection");
+            }
+        }
+    }
+}
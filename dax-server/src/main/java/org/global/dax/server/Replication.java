@@ -0,0 +1,36 @@
+package org.global.dax.server;
+
+import java.io.IOException;
+import java.util.Map;
+
+/*
+ * Primary/replica replication, one side of the link per server. A primary (dax.replication.port) streams every ADD
+ * and DELETE applied to its cache to the replicas connected to that port, a replica (dax.replica.of) applies them to
+ * its own cache and serves reads from it.
+ *
+ * The replica opens the link with the text line REPLICATE and the primary answers OK, from then on the link carries
+ *
+ * primary -> replica  batch = [sequence:8][head sequence:8][committed millis:8][length:4][binary request frames]
+ * replica -> primary  ack   = [applied sequence:8]
+ *
+ * The frames are binary protocol ADD, ADD TTL and DELETE requests, applied in order. Every mutation gets the next
+ * sequence number of the primary, a batch carries the sequence of its last mutation, the primary's latest sequence
+ * when it was sent and the wall clock time its first mutation was committed at. A new replica is first sent a
+ * snapshot of the cache shard by shard, in batches with sequence SNAPSHOT, and then the mutations made since the
+ * snapshot started. Entries that expire or are evicted on the primary are not replicated, a replica expires and
+ * evicts entries on its own.
+ */
+interface Replication {
+    //sequence of the batches of a snapshot, they are not acknowledged
+    long SNAPSHOT = -1;
+    int BATCH_HEADER_SIZE = 3 * Long.BYTES + Integer.BYTES;
+    String HANDSHAKE = "REPLICATE\n";
+    String HANDSHAKE_RESPONSE = "OK\n";
+
+    void start() throws IOException;
+
+    void stop();
+
+    //adds the replication.* entries to a STATS snapshot
+    void addStats(Map<String, Number> stats);
+}
@@ -0,0 +1,363 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.BinaryProtocol;
+import org.global.dax.shared.ShardedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+import static org.global.dax.shared.Constants.REPLICATION_BATCH_BYTES;
+import static org.global.dax.shared.Constants.REPLICATION_HEARTBEAT_MS;
+import static org.global.dax.shared.Constants.REPLICATION_QUEUE_SIZE;
+
+/*
+ * The primary side of replication. Every replica connected to the replication port gets a session: a bounded queue
+ * of the mutations committed since it connected and a thread that sends the snapshot and then the queue in batches,
+ * plus one that reads its acknowledgements. Mutations are encoded once, when the cache reports them, and shared by
+ * all sessions.
+ *
+ * Writers never wait for a replica, a session whose queue overflows is dropped and the replica bootstraps again
+ * when it reconnects. Mutations to one shard reach the queues in the order they were applied, mutations to
+ * different shards are not ordered against each other, so the sequence of a batch is the highest one it carries and
+ * the lag in records is approximate by the writes in flight.
+ */
+final class ReplicationPrimary implements Replication, ShardedCache.MutationListener {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicationPrimary.class);
+
+    //a committed mutation, its frame is only ever read through duplicates
+    private record Mutation(long sequence, long committedMillis, ByteBuffer frame) {
+    }
+
+    private final ShardedCache cache;
+    private final int port;
+    private final AtomicLong sequence = new AtomicLong();
+    //sessions past the handshake, the mutation listener feeds their queues
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextSessionId = new AtomicInteger();
+    private final LongAdder droppedReplicas = new LongAdder();
+    private volatile ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+    private volatile int localPort;
+
+    ReplicationPrimary(ShardedCache cache, int port) {
+        this.cache = cache;
+        this.port = port;
+    }
+
+    //the bound replication port, useful when the server was configured with port 0
+    int getLocalPort() {
+        return localPort;
+    }
+
+    @Override
+    public void start() throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        serverChannel = channel;
+        localPort = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        cache.addMutationListener(this);
+
+        Thread acceptor = new Thread(this::accept, "dax-replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("Replication started on port: {}", localPort);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        cache.removeMutationListener(this);
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException ignored) {
+        }
+        sessions.forEach(Session::close);
+    }
+
+    @Override
+    public void added(String key, byte[] value, long ttlMillis) {
+        if (!sessions.isEmpty()) {
+            publish(ttlMillis > 0
+                    ? BinaryProtocol.encodeAddRequest(key, value, ttlMillis)
+                    : BinaryProtocol.encodeRequest(BinaryProtocol.OP_ADD, key, value));
+        }
+    }
+
+    @Override
+    public void removed(String key) {
+        if (!sessions.isEmpty()) {
+            publish(BinaryProtocol.encodeRequest(BinaryProtocol.OP_DELETE, key, null));
+        }
+    }
+
+    //called under the lock of the mutated shard, it only queues
+    private void publish(ByteBuffer frame) {
+        Mutation mutation = new Mutation(sequence.incrementAndGet(), System.currentTimeMillis(), frame);
+        for (Session session : sessions) {
+            session.offer(mutation);
+        }
+    }
+
+    @Override
+    public void addStats(Map<String, Number> stats) {
+        long now = System.currentTimeMillis();
+        long head = sequence.get();
+        stats.put("replication.sequence", head);
+        stats.put("replication.replicas", sessions.size());
+        stats.put("replication.replicas_dropped", droppedReplicas.sum());
+        sessions.stream()
+                .sorted((a, b) -> Integer.compare(a.id, b.id))
+                .forEach(session -> {
+                    String prefix = "replication.replica." + session.id;
+                    stats.put(prefix + ".lag_records", Math.max(0, head - session.acked));
+                    stats.put(prefix + ".lag_ms", session.lagMillis(now));
+                });
+    }
+
+    private void accept() {
+        try {
+            while (running) {
+                SocketChannel replica = serverChannel.accept();
+                Session session = new Session(nextSessionId.getAndIncrement(), replica);
+                Thread sender = new Thread(session::run, "dax-replication-" + session.id);
+                sender.setDaemon(true);
+                sender.start();
+            }
+        } catch (AsynchronousCloseException e) {
+            //stopped
+        } catch (IOException e) {
+            LOG.error("Replication stopped accepting replicas due to {}", e.getMessage(), e);
+        }
+    }
+
+    private final class Session {
+        private final int id;
+        private final SocketChannel channel;
+        private final BlockingQueue<Mutation> queue = new ArrayBlockingQueue<>(REPLICATION_QUEUE_SIZE);
+        //[sequence, committed millis] of the batches sent and not acknowledged yet
+        private final Deque<long[]> inFlight = new ConcurrentLinkedDeque<>();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long acked;
+        private String address = "unknown";
+
+        Session(int id, SocketChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+
+        void run() {
+            try {
+                address = channel.getRemoteAddress().toString();
+                handshake();
+                //registered before the snapshot is taken, so whatever the snapshot misses is in the queue
+                sessions.add(this);
+                long start = sequence.get();
+                acked = start;
+                LOG.info("Replica [{}] connected, sending a snapshot as of sequence [{}]", address, start);
+
+                sendSnapshot();
+                //the end of the snapshot, acknowledged once the replica applied all of it
+                send(List.of(), start, 0);
+
+                Thread acks = new Thread(this::readAcks, "dax-replication-acks-" + id);
+                acks.setDaemon(true);
+                acks.start();
+                stream(start);
+            } catch (IOException e) {
+                if (running && !closed.get()) {
+                    LOG.warn("Replica [{}] disconnected due to {}", address, e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private void handshake() throws IOException {
+            ByteBuffer request = ByteBuffer.allocate(HANDSHAKE.length());
+            while (request.hasRemaining()) {
+                if (channel.read(request) == -1) {
+                    throw new IOException("Replica closed the connection");
+                }
+            }
+            if (!HANDSHAKE.equals(new String(request.array()))) {
+                throw new IOException("Invalid replication handshake");
+            }
+            write(new ByteBuffer[]{ByteBuffer.wrap(HANDSHAKE_RESPONSE.getBytes())});
+        }
+
+        //shard by shard, so only one shard's entries are copied at a time; a resize waits until every shard was sent,
+        //its moved entries would otherwise be missed
+        private void sendSnapshot() throws IOException {
+            Lock shardCount = cache.shardCountLock();
+            shardCount.lock();
+            try {
+                sendShards();
+            } finally {
+                shardCount.unlock();
+            }
+        }
+
+        private void sendShards() throws IOException {
+            for (int shardIndex = 0; shardIndex < cache.getShardCount(); shardIndex++) {
+                List<ByteBuffer> frames = new ArrayList<>();
+                cache.forEachEntry(shardIndex, (key, value, ttlMillis) -> {
+                    byte[] bytes = new byte[value.remaining()];
+                    value.duplicate().get(bytes);
+                    frames.add(ttlMillis > 0
+                            ? BinaryProtocol.encodeAddRequest(key, bytes, ttlMillis)
+                            : BinaryProtocol.encodeRequest(BinaryProtocol.OP_ADD, key, bytes));
+                });
+
+                List<ByteBuffer> batch = new ArrayList<>();
+                int batchBytes = 0;
+                for (ByteBuffer frame : frames) {
+                    if (batchBytes + frame.remaining() > REPLICATION_BATCH_BYTES) {
+                        send(batch, SNAPSHOT, 0);
+                        batch.clear();
+                        batchBytes = 0;
+                    }
+                    batch.add(frame);
+                    batchBytes += frame.remaining();
+                }
+                if (!batch.isEmpty()) {
+                    send(batch, SNAPSHOT, 0);
+                }
+            }
+        }
+
+        private void stream(long lastSent) throws IOException, InterruptedException {
+            List<ByteBuffer> batch = new ArrayList<>();
+            while (running) {
+                Mutation mutation = queue.poll(REPLICATION_HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+                if (mutation == null) {
+                    send(List.of(), lastSent, 0);
+                    continue;
+                }
+
+                long committedMillis = mutation.committedMillis();
+                int batchBytes = 0;
+                do {
+                    batch.add(mutation.frame().duplicate());
+                    batchBytes += mutation.frame().remaining();
+                    lastSent = Math.max(lastSent, mutation.sequence());
+                    mutation = queue.peek();
+                } while (mutation != null
+                        && batchBytes + mutation.frame().remaining() <= REPLICATION_BATCH_BYTES
+                        && queue.poll() != null);
+
+                inFlight.add(new long[]{lastSent, committedMillis});
+                send(batch, lastSent, committedMillis);
+                batch.clear();
+            }
+        }
+
+        private void send(List<ByteBuffer> frames, long batchSequence, long committedMillis) throws IOException {
+            int length = 0;
+            for (ByteBuffer frame : frames) {
+                length += frame.remaining();
+            }
+
+            ByteBuffer[] buffers = new ByteBuffer[frames.size() + 1];
+            buffers[0] = ByteBuffer.allocate(BATCH_HEADER_SIZE)
+                    .putLong(batchSequence)
+                    .putLong(sequence.get())
+                    .putLong(committedMillis)
+                    .putInt(length)
+                    .flip();
+            for (int i = 0; i < frames.size(); i++) {
+                buffers[i + 1] = frames.get(i);
+            }
+            write(buffers);
+        }
+
+        private void write(ByteBuffer[] buffers) throws IOException {
+            ByteBuffer last = buffers[buffers.length - 1];
+            do {
+                channel.write(buffers);
+            } while (last.hasRemaining());
+        }
+
+        private void readAcks() {
+            ByteBuffer ack = ByteBuffer.allocate(Long.BYTES);
+            try {
+                while (true) {
+                    ack.clear();
+                    while (ack.hasRemaining()) {
+                        if (channel.read(ack) == -1) {
+                            throw new IOException("Replica closed the connection");
+                        }
+                    }
+                    long applied = ack.getLong(0);
+                    acked = applied;
+                    while (!inFlight.isEmpty() && inFlight.peek()[0] <= applied) {
+                        inFlight.poll();
+                    }
+                }
+            } catch (IOException e) {
+                //the sender notices on its next write
+            } finally {
+                close();
+            }
+        }
+
+        //how long the oldest mutation the replica has not applied yet has been committed, 0 when it is caught up
+        long lagMillis(long now) {
+            long[] oldest = inFlight.peek();
+            if (oldest != null) {
+                return Math.max(0, now - oldest[1]);
+            }
+            Mutation queued = queue.peek();
+            return queued != null ? Math.max(0, now - queued.committedMillis()) : 0;
+        }
+
+        //under a shard lock, the replica is not waited for
+        void offer(Mutation mutation) {
+            if (!queue.offer(mutation) && sessions.remove(this)) {
+                LOG.warn("Dropping the replica [{}], it fell more than [{}] mutations behind", address,
+                        REPLICATION_QUEUE_SIZE);
+                droppedReplicas.increment();
+                close();
+            }
+        }
+
+        void close() {
+            sessions.remove(this);
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
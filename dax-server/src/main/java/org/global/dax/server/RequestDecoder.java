@@ -0,0 +1,169 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.BinaryProtocol;
+import org.global.dax.shared.FrameDecoder;
+import org.global.dax.shared.ProtocolUtils;
+import org.global.dax.shared.ShardedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/*
+ * Turns a request frame into the work that answers it, for every I/O model: the reactors decide where a Request
+ * runs and how its response is queued, connection threads run it in place and write the response straight away.
+ */
+final class RequestDecoder {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestDecoder.class);
+    private static final byte[] BUSY_RESPONSE = "BUSY\n".getBytes();
+    private static final String READ_ONLY = "Read-only replica";
+    private static final String NOT_DURABLE = "Write-ahead log failed";
+
+    //a decoded frame ready to run, offload marks requests too expensive for the reactor thread,
+    //a streamed request has no handler, its response is written chunk by chunk from the stream,
+    //the response of a durable one is sent once the log sync covering it is done, see whenDurable
+    record Request(Supplier<ByteBuffer[]> handler, boolean offload, Iterator<ByteBuffer> stream, boolean binary,
+                   boolean durable) {
+        Request(Supplier<ByteBuffer[]> handler, boolean offload, boolean binary) {
+            this(handler, offload, null, binary, false);
+        }
+    }
+
+    private final ShardedCache cache;
+    private final ServerMetrics metrics;
+    //a replica only takes mutations from its primary, ADD and DELETE from clients are refused
+    private final boolean readOnly;
+    //null when writes are not logged, with DURABLE acks a write is answered once the log sync covering it is done
+    private final WriteAheadLog wal;
+    private final boolean durableWrites;
+
+    RequestDecoder(ShardedCache cache, ServerMetrics metrics, boolean readOnly) {
+        this(cache, metrics, readOnly, null);
+    }
+
+    RequestDecoder(ShardedCache cache, ServerMetrics metrics, boolean readOnly, WriteAheadLog wal) {
+        this.cache = cache;
+        this.metrics = metrics;
+        this.readOnly = readOnly;
+        this.wal = wal;
+        this.durableWrites = wal != null && wal.isDurable();
+    }
+
+    Request decode(ByteBuffer frame, FrameDecoder decoder, String clientAddress) {
+        long received = System.nanoTime();
+        if (decoder.isBinary()) {
+            //per request logs are DEBUG, guarded where boxing an argument would allocate even with DEBUG off
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Received a binary request of [{}] bytes from the client [{}]", frame.remaining(), clientAddress);
+            }
+            ServerMetrics.Command command = ServerMetrics.Command.ofOpcode(frame.get(0));
+            boolean write = isWrite(frame.get(0));
+            boolean refused = readOnly && write;
+            boolean logged = write && !refused && wal != null;
+
+            return new Request(() -> {
+                ByteBuffer[] response = command == ServerMetrics.Command.STATS
+                        ? new ByteBuffer[]{BinaryProtocol.encodeResponse(BinaryProtocol.STATUS_OK, metrics.format())}
+                        : refused
+                        ? new ByteBuffer[]{BinaryProtocol.encodeResponse(BinaryProtocol.STATUS_ERROR, READ_ONLY)}
+                        : logged && !admitted()
+                        ? refusal(true)
+                        : ProtocolUtils.respondToBinaryRequest(frame, cache);
+                metrics.recordRequest(command, System.nanoTime() - received);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Sending a binary response with status [{}] to the client [{}]", response[0].get(0), clientAddress);
+                }
+                return response;
+            }, frame.get(0) == BinaryProtocol.OP_GET_ALL || frame.get(0) == BinaryProtocol.OP_SCAN, null, true,
+                    logged && durableWrites);
+        }
+
+        String input = new String(frame.array()).trim();
+        LOG.debug("Received the command [{}] from the client [{}]", input, clientAddress);
+
+        if (input.equalsIgnoreCase(BinaryProtocol.NEGOTIATE_COMMAND)) {
+            //frames after the handshake are binary, even when they arrived in this same read
+            decoder.setBinary(true);
+            LOG.info("Switched the client [{}] to the binary protocol", clientAddress);
+            return new Request(() -> new ByteBuffer[]{ByteBuffer.wrap("OK\n".getBytes())}, false, false);
+        }
+
+        ServerMetrics.Command command = ServerMetrics.Command.ofText(input);
+        if (ProtocolUtils.isGetAll(input)) {
+            LOG.debug("Streaming all keys to the client [{}]", clientAddress);
+            metrics.countRequest(command);
+            return new Request(null, false, ProtocolUtils.streamAllKeys(cache), false, false);
+        }
+
+        boolean write = (readOnly || wal != null) && isWrite(input);
+        boolean logged = write && !readOnly;
+        return new Request(() -> {
+            //STATS needs the server's metrics, every other command is answered from the cache alone
+            ByteBuffer[] response = input.equalsIgnoreCase("STATS")
+                    ? new ByteBuffer[]{ByteBuffer.wrap((metrics.format() + "\n").getBytes())}
+                    : readOnly && write
+                    ? new ByteBuffer[]{ByteBuffer.wrap(("ERROR " + READ_ONLY + "\n").getBytes())}
+                    : logged && !admitted()
+                    ? refusal(false)
+                    : ProtocolUtils.respondToClientRequest(input, cache);
+            metrics.recordRequest(command, System.nanoTime() - received);
+            LOG.debug("Sending the response to [{}] to the client [{}]", input, clientAddress);
+            return response;
+        }, input.regionMatches(true, 0, "GET ALL", 0, 7), null, false, logged && durableWrites);
+    }
+
+    //a logged write is refused before it reaches the cache when the log could not take it, so the cache, the log and
+    //the response agree
+    private boolean admitted() {
+        return !wal.isFailed() && wal.admits();
+    }
+
+    private ByteBuffer[] refusal(boolean binary) {
+        if (wal.isFailed()) {
+            return notDurable(binary);
+        }
+        //the disk is not keeping up, the write can be retried
+        metrics.busyResponse();
+        return new ByteBuffer[]{binary ? BinaryProtocol.encodeResponse(BinaryProtocol.STATUS_BUSY) : ByteBuffer.wrap(BUSY_RESPONSE)};
+    }
+
+    private static ByteBuffer[] notDurable(boolean binary) {
+        return new ByteBuffer[]{binary
+                ? BinaryProtocol.encodeResponse(BinaryProtocol.STATUS_ERROR, NOT_DURABLE)
+                : ByteBuffer.wrap(("ERROR " + NOT_DURABLE + "\n").getBytes())};
+    }
+
+    //hands the response of a durable request to answer once the log sync covering it is done, an error in its place
+    //when the log failed first; answer runs on the log's flusher thread and must not block
+    void whenDurable(Request request, ByteBuffer[] response, Consumer<ByteBuffer[]> answer) {
+        wal.whenDurable(synced -> answer.accept(synced ? response : notDurable(request.binary())));
+    }
+
+    //the same for a caller with a thread of its own, which waits for the sync
+    ByteBuffer[] awaitDurable(Request request, ByteBuffer[] response) {
+        return wal.awaitDurable() ? response : notDurable(request.binary());
+    }
+
+    private static boolean isWrite(byte opcode) {
+        return opcode == BinaryProtocol.OP_ADD || opcode == BinaryProtocol.OP_ADD_TTL || opcode == BinaryProtocol.OP_DELETE
+                || opcode == BinaryProtocol.OP_MADD || opcode == BinaryProtocol.OP_MDELETE;
+    }
+
+    private static boolean isWrite(String input) {
+        String name = input.split(" ", 2)[0].toUpperCase();
+        return name.equals("ADD") || name.equals("DELETE") || name.equals("MADD") || name.equals("MDELETE");
+    }
+
+    //answered in place of a request the server has no room to run, the request itself is not executed
+    Request busy(Request request) {
+        return new Request(() -> {
+            metrics.busyResponse();
+            return new ByteBuffer[]{request.binary()
+                    ? BinaryProtocol.encodeResponse(BinaryProtocol.STATUS_BUSY)
+                    : ByteBuffer.wrap(BUSY_RESPONSE)};
+        }, false, request.binary());
+    }
+}
@@ -0,0 +1,215 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheConfig;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.global.dax.shared.Constants.MAX_FRAME_SIZE;
+import static org.global.dax.shared.Constants.MAX_IO_MEMORY_BYTES;
+import static org.global.dax.shared.Constants.MAX_PENDING_TASKS;
+import static org.global.dax.shared.Constants.PORT;
+
+/*
+ * Server settings, read from -Ddax.* system properties when the server is started from the command line.
+ */
+public final class ServerConfig {
+    private int port = PORT;
+    private IoModel ioModel = IoModel.SELECTOR;
+    //0 keeps accept, read and write on a single selector thread
+    private int reactorThreads = 0;
+    private ConnectionBalancing balancing = ConnectionBalancing.ROUND_ROBIN;
+    private ExecutionStrategy execution = ExecutionStrategy.INLINE;
+    private CacheConfig cache = new CacheConfig();
+    //ceiling for the pooled read buffers of all connections
+    private long ioMemory = MAX_IO_MEMORY_BYTES;
+    //tasks that may wait for a worker thread, further requests are answered BUSY
+    private int workerQueue = MAX_PENDING_TASKS;
+    //-1 leaves replication off, 0 picks a free port
+    private int replicationPort = -1;
+    //the primary this server replicates, null for a server of its own
+    private InetSocketAddress replicaOf;
+    //where the cache is loaded from on start and snapshotted to, null keeps the cache in memory only
+    private Path snapshotDir;
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+    //where ADD and DELETE are logged before they are acknowledged, null leaves the log off
+    private Path walDir;
+    private WalAck walAck = WalAck.DURABLE;
+
+    public static ServerConfig fromSystemProperties() {
+        return new ServerConfig()
+                .port(Integer.getInteger("dax.port", PORT))
+                .ioModel(IoModel.valueOf(System.getProperty("dax.io.model", "SELECTOR").toUpperCase()))
+                .reactorThreads(Integer.getInteger("dax.reactors", 0))
+                .balancing(ConnectionBalancing.valueOf(System.getProperty("dax.balancing", "ROUND_ROBIN").toUpperCase()))
+                .execution(ExecutionStrategy.valueOf(System.getProperty("dax.execution", "INLINE").toUpperCase()))
+                .cache(CacheConfig.fromSystemProperties())
+                .ioMemory(Long.getLong("dax.io.memory", MAX_IO_MEMORY_BYTES))
+                .workerQueue(Integer.getInteger("dax.worker.queue", MAX_PENDING_TASKS))
+                .replicationPort(Integer.getInteger("dax.replication.port", -1))
+                .replicaOf(System.getProperty("dax.replica.of"))
+                .snapshotDir(System.getProperty("dax.snapshot.dir") != null ? Path.of(System.getProperty("dax.snapshot.dir")) : null)
+                .snapshotInterval(Duration.ofSeconds(Long.getLong("dax.snapshot.interval", 300L)))
+                .walDir(System.getProperty("dax.wal.dir") != null ? Path.of(System.getProperty("dax.wal.dir")) : null)
+                .walAck(WalAck.valueOf(System.getProperty("dax.wal.ack", "DURABLE").toUpperCase()));
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerConfig port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public IoModel getIoModel() {
+        return ioModel;
+    }
+
+    //the reactor, balancing and execution settings only apply to SELECTOR
+    public ServerConfig ioModel(IoModel ioModel) {
+        this.ioModel = ioModel;
+        return this;
+    }
+
+    public int getReactorThreads() {
+        return reactorThreads;
+    }
+
+    public ServerConfig reactorThreads(int reactorThreads) {
+        if (reactorThreads < 0) {
+            throw new IllegalArgumentException("reactorThreads must not be negative");
+        }
+        this.reactorThreads = reactorThreads;
+        return this;
+    }
+
+    public ConnectionBalancing getBalancing() {
+        return balancing;
+    }
+
+    public ServerConfig balancing(ConnectionBalancing balancing) {
+        this.balancing = balancing;
+        return this;
+    }
+
+    public ExecutionStrategy getExecution() {
+        return execution;
+    }
+
+    public ServerConfig execution(ExecutionStrategy execution) {
+        this.execution = execution;
+        return this;
+    }
+
+    public CacheConfig getCache() {
+        return cache;
+    }
+
+    public ServerConfig cache(CacheConfig cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    public long getIoMemory() {
+        return ioMemory;
+    }
+
+    //at least one buffer of the largest size class, so any single frame can always be read
+    public ServerConfig ioMemory(long ioMemory) {
+        if (ioMemory < 2L * MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("ioMemory must be at least " + 2L * MAX_FRAME_SIZE + " bytes");
+        }
+        this.ioMemory = ioMemory;
+        return this;
+    }
+
+    public int getWorkerQueue() {
+        return workerQueue;
+    }
+
+    public ServerConfig workerQueue(int workerQueue) {
+        if (workerQueue <= 0) {
+            throw new IllegalArgumentException("workerQueue must be positive");
+        }
+        this.workerQueue = workerQueue;
+        return this;
+    }
+
+    public int getReplicationPort() {
+        return replicationPort;
+    }
+
+    //makes the server a primary, replicas connect to this port
+    public ServerConfig replicationPort(int replicationPort) {
+        if (replicationPort < -1) {
+            throw new IllegalArgumentException("replicationPort must be -1 (off), 0 (any free port) or a port");
+        }
+        this.replicationPort = replicationPort;
+        return this;
+    }
+
+    public InetSocketAddress getReplicaOf() {
+        return replicaOf;
+    }
+
+    //host:port of a primary's replication port, makes the server a read-only replica of it
+    public ServerConfig replicaOf(String primary) {
+        if (primary == null) {
+            this.replicaOf = null;
+            return this;
+        }
+
+        int separator = primary.lastIndexOf(':');
+        try {
+            this.replicaOf = new InetSocketAddress(primary.substring(0, separator),
+                    Integer.parseInt(primary.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("replicaOf must be host:port");
+        }
+        return this;
+    }
+
+    public Path getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    public ServerConfig snapshotDir(Path snapshotDir) {
+        this.snapshotDir = snapshotDir;
+        return this;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    //zero only snapshots when the server stops
+    public ServerConfig snapshotInterval(Duration snapshotInterval) {
+        if (snapshotInterval.isNegative()) {
+            throw new IllegalArgumentException("snapshotInterval must not be negative");
+        }
+        this.snapshotInterval = snapshotInterval;
+        return this;
+    }
+
+    public Path getWalDir() {
+        return walDir;
+    }
+
+    //snapshots go to the same directory unless snapshotDir says otherwise, they are what keeps the log bounded
+    public ServerConfig walDir(Path walDir) {
+        this.walDir = walDir;
+        return this;
+    }
+
+    public WalAck getWalAck() {
+        return walAck;
+    }
+
+    public ServerConfig walAck(WalAck walAck) {
+        this.walAck = walAck;
+        return this;
+    }
+}
@@ -1,57 +1,286 @@
 package org.global.dax.server;
 
-import org.global.dax.shared.ProtocolUtils;
+import org.global.dax.server.RequestDecoder.Request;
+import org.global.dax.shared.BinaryProtocol;
+import org.global.dax.shared.BufferPool;
+import org.global.dax.shared.FrameDecoder;
 import org.global.dax.shared.ShardedCache;
 import org.global.dax.shared.SharedClassExample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.global.dax.shared.Constants.*;
 
 public final class ServerMain {
     private static final Logger LOG = LoggerFactory.getLogger(ServerMain.class);
+    //queued buffers handed to one gathering write at most
+    private static final int GATHERED_BUFFERS = 64;
+    //chunks of a streamed response produced ahead of what the socket has taken
+    private static final int STREAMED_CHUNKS_AHEAD = 2;
 
     //a wrapper for client state
     static class ClientContext {
-        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-        private final Queue<ByteBuffer> writeQueue = new LinkedList<>();
+        //the reactor that owns the connection, null when the context is used on its own
+        private final Reactor reactor;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        //filled by the reactor and worker threads, drained by the reactor, producers stop at the high watermark
+        //so there is room for the response they are about to queue; one that still does not fit is held
+        private final WriteQueue writeQueue = new WriteQueue(2 * MAX_WRITE_QUEUE_SIZE);
+        //set while a flush of the write queue is pending on the reactor, so producers share one wakeup
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        //the head of the write queue for a gathering write, reactor only and emptied after every write
+        private final ByteBuffer[] gathered = new ByteBuffer[GATHERED_BUFFERS];
+        //reads go straight into its pooled buffer, which it keeps only while a partial frame is pending,
+        //text mode until the PROTOCOL BINARY handshake switches it
+        private final FrameDecoder decoder;
+        //requests of one client run one batch at a time so responses leave in the order the requests arrived
+        private final Deque<List<Request>> pendingBatches = new ArrayDeque<>();
+        private boolean batchRunning;
+        //the batches stopped at the high watermark, the reactor resumes them once it is down to the low watermark
+        private boolean batchesStalled;
+        //the rest of a streamed response, produced by the reactor as the socket drains, requests behind it wait
+        private volatile Iterator<ByteBuffer> stream;
+        //touched by the owning reactor thread alone, offloadPending is for inline execution only
+        private boolean offloadPending;
+        //the client is not draining its responses, it is not read from until its backlog is down to the low watermark
+        private boolean backlogged;
+        //the responses from a durable write on, sent in order once the log sync covering the write is done, or from
+        //one the write queue had no room for on, sent as the reactor makes room; added to by whoever produces the
+        //responses, drained by the reactor, guarded by the context's monitor
+        private final Deque<Held> held = new ArrayDeque<>();
+        //buffers of the held responses, they count towards the watermarks like queued ones
+        private volatile int heldBuffers;
+        //resolved on the first read, so the request path does not ask the channel and build a string every time
+        private String remoteAddress;
 
-        public ByteBuffer getReadBuffer() {
-            return readBuffer;
+        ClientContext() {
+            this(null, new BufferPool(MAX_IO_MEMORY_BYTES));
+        }
+
+        ClientContext(Reactor reactor, BufferPool bufferPool) {
+            this.reactor = reactor;
+            this.decoder = new FrameDecoder(bufferPool);
+        }
+
+        //runs the task on the owning reactor thread
+        void execute(Runnable task) {
+            if (reactor != null) {
+                reactor.execute(task);
+            } else {
+                task.run();
+            }
+        }
+
+        //runs once per connection so the owning reactor's connection count stays accurate
+        void markClosed() {
+            if (closed.compareAndSet(false, true) && reactor != null) {
+                reactor.connectionClosed();
+            }
         }
 
         public Queue<ByteBuffer> getWriteQueue() {
             return writeQueue;
         }
 
+        public FrameDecoder getDecoder() {
+            return decoder;
+        }
+
+        public boolean isBinaryProtocol() {
+            return decoder.isBinary();
+        }
+
+        public String getRemoteAddress(SocketChannel client) throws IOException {
+            if (remoteAddress == null) {
+                remoteAddress = client.getRemoteAddress().toString();
+            }
+            return remoteAddress;
+        }
+
         public void addWriteByteBuffer(ByteBuffer byteBuffer) {
-            //check for write buffer size to avoid unbounded memory usage
-            if (writeQueue.size() >= MAX_WRITE_QUEUE_SIZE) {
-                throw new IllegalStateException("Write queue exceeded capacity");
+            addWriteResponse(new ByteBuffer[]{byteBuffer});
+        }
+
+        //a response may be several buffers (a header and a view of a stored value), they count as one,
+        //one with more buffers than the queue has room for is copied into a single one; held behind a durable write
+        //that waits for the log
+        public void addWriteResponse(ByteBuffer[] response) {
+            synchronized (this) {
+                if (!held.isEmpty()) {
+                    hold(new Held(response, true));
+                    return;
+                }
+            }
+            offer(response);
+        }
+
+        private void offer(ByteBuffer[] response) {
+            if (!queue(response)) {
+                //never dropped, a lost response would pair every later one with the wrong request
+                synchronized (this) {
+                    hold(new Held(response, true));
+                }
             }
-            writeQueue.add(byteBuffer);
         }
+
+        //false when the queue has no room for the response even joined into one buffer
+        private boolean queue(ByteBuffer[] response) {
+            return writeQueue.offer(response) || writeQueue.offer(joined(response));
+        }
+
+        //the response of a durable write, it and the responses after it wait for release
+        synchronized Held holdUntilSynced(ByteBuffer[] response) {
+            return hold(new Held(response, false));
+        }
+
+        private Held hold(Held response) {
+            held.add(response);
+            heldBuffers += response.buffers;
+            return response;
+        }
+
+        //the log sync covering a held write is done, answer takes its response's place
+        synchronized void release(Held durable, ByteBuffer[] answer) {
+            durable.response = answer;
+            durable.synced = true;
+            queueSynced();
+        }
+
+        //reactor only, once writing made room in the queue
+        void queueHeld() {
+            if (heldBuffers > 0) {
+                synchronized (this) {
+                    queueSynced();
+                }
+            }
+        }
+
+        //moves the held responses that are ready from the head on to the queue, as far as it has room
+        private void queueSynced() {
+            while (!held.isEmpty() && held.peek().synced && queue(held.peek().response)) {
+                heldBuffers -= held.poll().buffers;
+            }
+        }
+
+        //buffers queued and held, the watermarks apply to it
+        int backlog() {
+            return writeQueue.size() + heldBuffers;
+        }
+
+        private static ByteBuffer[] joined(ByteBuffer[] response) {
+            int length = 0;
+            for (ByteBuffer buffer : response) {
+                length += buffer.remaining();
+            }
+            ByteBuffer joined = ByteBuffer.allocate(length);
+            for (ByteBuffer buffer : response) {
+                joined.put(buffer.duplicate());
+            }
+            return new ByteBuffer[]{joined.flip()};
+        }
+    }
+
+    //a response waiting in a client's context, see ClientContext.held
+    private static final class Held {
+        private final int buffers;
+        private ByteBuffer[] response;
+        private boolean synced;
+
+        Held(ByteBuffer[] response, boolean synced) {
+            this.buffers = response.length;
+            this.response = response;
+            this.synced = synced;
+        }
+    }
+
+    private final ServerConfig config;
+    private final ShardedCache cache;
+    //read buffers of every connection, within the configured I/O memory
+    private final BufferPool bufferPool;
+    //bounded, a saturated pool refuses work rather than letting the backlog grow without limit
+    private final ThreadPoolExecutor executor;
+    private final ServerMetrics metrics;
+    private final RequestDecoder requestDecoder;
+    //the primary or replica side of replication, null when it is off
+    private final Replication replication;
+    //null when the cache is not persisted
+    private final Snapshots snapshots;
+    //null when writes are not logged
+    private final WriteAheadLog wal;
+    //I/O reactors, or only the acceptor in single selector mode
+    private final List<Reactor> reactors = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextReactor = new AtomicInteger();
+    private volatile Reactor acceptor;
+    //VIRTUAL_THREADS only, in place of the reactors
+    private volatile ConnectionThreads connectionThreads;
+    private volatile boolean running = true;
+    private volatile int localPort;
+
+    public ServerMain() {
+        this(ServerConfig.fromSystemProperties());
     }
 
-    private final ShardedCache cache = new ShardedCache();
-    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_THREADS);
+    public ServerMain(ServerConfig config) {
+        this.config = config;
+        this.cache = new ShardedCache(config.getCache());
+        this.bufferPool = new BufferPool(config.getIoMemory());
+        this.executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getWorkerQueue()));
+        if (config.getReplicaOf() != null && config.getReplicationPort() >= 0) {
+            throw new IllegalArgumentException("A replica cannot be a primary of its own");
+        }
+        this.replication = config.getReplicaOf() != null
+                ? new ReplicaLink(cache, config.getReplicaOf())
+                : config.getReplicationPort() >= 0 ? new ReplicationPrimary(cache, config.getReplicationPort()) : null;
+        this.wal = config.getWalDir() != null
+                ? new WriteAheadLog(cache, config.getWalDir(), config.getWalAck(), WAL_SEGMENT_BYTES, WAL_COMPACT_BYTES)
+                : null;
+        Path snapshotDir = config.getSnapshotDir() != null ? config.getSnapshotDir() : config.getWalDir();
+        this.snapshots = snapshotDir != null
+                ? new Snapshots(cache, snapshotDir, config.getSnapshotInterval(), wal)
+                : null;
+        this.metrics = new ServerMetrics(cache, bufferPool, executor, () -> {
+            ConnectionThreads threads = connectionThreads;
+            return threads != null
+                    ? threads.connectionCount()
+                    : reactors.stream().mapToInt(Reactor::connectionCount).sum();
+        }, stats -> {
+            if (replication != null) {
+                replication.addStats(stats);
+            }
+            if (snapshots != null) {
+                snapshots.addStats(stats);
+            }
+            if (wal != null) {
+                wal.addStats(stats);
+            }
+        });
+        this.requestDecoder = new RequestDecoder(cache, metrics, config.getReplicaOf() != null, wal);
+    }
 
     public static void main(String[] args) {
         LOG.info("{} {}!", message(), SharedClassExample.sharedString());
 
+        ServerConfig config = ServerConfig.fromSystemProperties();
         try {
-            new ServerMain().startServer();
+            new ServerMain(config).startServer();
         } catch (IOException e) {
-            LOG.error("Failed to start the NIO Server on PORT: {} due to {}", PORT, e.getMessage(), e);
+            LOG.error("Failed to start the NIO Server on PORT: {} due to {}", config.getPort(), e.getMessage(), e);
         }
     }
 
@@ -61,155 +290,506 @@ public final class ServerMain {
 
     public void startServer() throws IOException {
         //Non-blocking I/O using selector and channels
-        try (Selector selector = Selector.open();
-             ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            if (snapshots != null) {
+                //warm before the port is bound, clients never see the cache half loaded, the log is replayed too
+                snapshots.load();
+            }
+            serverChannel.bind(new InetSocketAddress(config.getPort()));
+            int boundPort = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+            //registered before the port is published, so whoever waits on the port finds the metrics in place
+            metrics.register(boundPort);
+            if (replication != null) {
+                //before the port is published as well, a primary's replication port is known by then
+                replication.start();
+            }
 
-            serverChannel.bind(new InetSocketAddress(PORT));
-            serverChannel.configureBlocking(false);
-            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
-            LOG.info("NIO Server started on port: {}", PORT);
-
-            //keep on listening continuously for the messages from the clients
-            //noinspection InfiniteLoopStatement
-            while (true) {
-                //support multiple concurrent clients over a single thread with the NIO multiplexing approach
-                // Selector wakeup + prevents CPU spinning due to spurious wakeup and is safer in real-world systems.
-                if (selector.select(WAKEUP_TIMEOUT_MS) == 0) {
-                    continue;
+            if (config.getIoModel() == IoModel.VIRTUAL_THREADS) {
+                connectionThreads = new ConnectionThreads(this, serverChannel);
+                localPort = boundPort;
+                LOG.info("Server started on port: {} with a thread per connection", localPort);
+                if (!running) {
+                    //stopped before the connection threads were in place
+                    connectionThreads.stop();
                 }
+                connectionThreads.run();
+                return;
+            }
 
-                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
-                while (keyIterator.hasNext()) {
-                    SelectionKey key = keyIterator.next();
-                    keyIterator.remove();
-
-                    SelectableChannel channelObj = key.channel();
+            serverChannel.configureBlocking(false);
+            localPort = boundPort;
 
-                    try {
-                        if (!key.isValid()) {
-                            continue;
-                        }
+            acceptor = new Reactor("dax-acceptor", this);
+            for (int i = 0; i < config.getReactorThreads(); i++) {
+                Reactor reactor = new Reactor("dax-reactor-" + i, this);
+                reactors.add(reactor);
+                reactor.start();
+            }
+            if (reactors.isEmpty()) {
+                //single selector mode, the acceptor serves every connection itself
+                reactors.add(acceptor);
+            }
 
-                        if (key.isAcceptable()) { //handles OP_ACCEPT without blocking
-                            if (channelObj instanceof ServerSocketChannel channel) {
-                                handleAccept(selector, channel);
-                            } else {
-                                throw new IOException("Unknown channel [" + channelObj.getClass() + "]");
-                            }
-                        } else if (key.isReadable()) { //handles OP_READ without blocking
-                            if (channelObj instanceof SocketChannel client && key.attachment() instanceof ClientContext ctx) {
-                                handleRead(key, selector, client, ctx);
-                            } else {
-                                throw new IOException("Unknown channel [" + channelObj.getClass() + "]");
-                            }
-                        } else if (key.isWritable()) { //handles OP_WRITE without blocking
-                            if (channelObj instanceof SocketChannel client && key.attachment() instanceof ClientContext ctx) {
-                                handleWrite(key, client, ctx);
-                            } else {
-                                throw new IOException("Unknown channel [" + channelObj.getClass() + "]");
-                            }
-                        }
-                    } catch (CancelledKeyException | ClosedChannelException e) {
-                        LOG.warn("Channel closed unexpectedly: {}", e.getMessage());
-                        key.cancel();  // Only cancel on error
-                    } catch (IOException e) {
-                        LOG.error("I/O error: {}", e.getMessage(), e);
-                        if (channelObj instanceof SocketChannel client) {
-                            closeChannel(client);
-                        }
-                        key.cancel();  // Only cancel on error
-                    }
-                }
+            acceptor.registerServer(serverChannel);
+            LOG.info("NIO Server started on port: {} with [{}] I/O reactor(s)", localPort, reactors.size());
+            if (!running) {
+                //stopped before the acceptor was in place
+                acceptor.stop();
             }
+            acceptor.run();
+        } finally {
+            stop();
         }
     }
 
-    private void handleAccept(Selector selector,
-                              ServerSocketChannel channel) throws IOException {
+    public void stop() {
+        running = false;
+        if (connectionThreads != null) {
+            connectionThreads.stop();
+        }
+        if (acceptor != null) {
+            acceptor.stop();
+        }
+        reactors.forEach(Reactor::stop);
+        if (replication != null) {
+            replication.stop();
+        }
+        executor.shutdown();
+        if (snapshots != null) {
+            snapshots.stop();
+        }
+        if (wal != null) {
+            //after the final snapshot, which leaves the log next to nothing to replay
+            wal.stop();
+        }
+        cache.close();
+        metrics.unregister();
+    }
+
+    //the bound port, useful when the server was configured with port 0
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    //the bound replication port of a primary, -1 for any other server
+    public int getReplicationPort() {
+        return replication instanceof ReplicationPrimary primary ? primary.getLocalPort() : -1;
+    }
+
+    List<Reactor> getReactors() {
+        return reactors;
+    }
+
+    ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    RequestDecoder getRequestDecoder() {
+        return requestDecoder;
+    }
+
+    void handleAccept(ServerSocketChannel channel) throws IOException {
         SocketChannel client = channel.accept();
+        if (client == null) {
+            return;
+        }
         client.configureBlocking(false);
+        //responses are small and written as soon as they are ready, don't let Nagle hold them back
+        client.setOption(StandardSocketOptions.TCP_NODELAY, true);
 
-        SelectionKey key = client.register(selector, SelectionKey.OP_READ);
-        key.attach(new ClientContext());
-        LOG.info("Accepted connection from the client [{}]", client.getRemoteAddress());
+        Reactor reactor = config.getBalancing().select(reactors, nextReactor);
+        reactor.register(client);
+        metrics.connectionAccepted();
+        LOG.info("Accepted connection from the client [{}] on [{}]", client.getRemoteAddress(), reactor.getName());
     }
 
-    private void handleRead(SelectionKey key,
-                            Selector selector,
-                            SocketChannel client,
-                            ClientContext ctx) throws IOException {
-        String clientAddress = client.getRemoteAddress().toString();
+    void handleRead(SelectionKey key,
+                    Selector selector,
+                    SocketChannel client,
+                    ClientContext ctx) throws IOException {
+        String clientAddress = ctx.getRemoteAddress(client);
+        FrameDecoder decoder = ctx.getDecoder();
 
-        ByteBuffer buffer = ctx.getReadBuffer();
-        buffer.clear();
+        ByteBuffer buffer = decoder.readBuffer();
+        if (buffer == null) {
+            LOG.warn("Closing the client [{}], the server is out of I/O buffer memory", clientAddress);
+            metrics.ioMemoryDisconnect();
+            closeClient(key);
+            return;
+        }
 
         int bytesRead = client.read(buffer);
         if (bytesRead == -1) {
             LOG.info("Disconnecting the client [{}]", clientAddress);
-            closeChannel(client);
-            key.cancel();
+            closeClient(key);
+            return;
+        }
+
+        if (config.getExecution() == ExecutionStrategy.INLINE) {
+            processInline(key, client, ctx, clientAddress);
             return;
         }
 
-        buffer.flip();
-        byte[] data = new byte[buffer.remaining()];
-        buffer.get(data);
-        String input = new String(data).trim();
-        LOG.info("Received the command [{}] from the client [{}]", input, clientAddress);
+        //a single read may carry several pipelined requests, or only part of one
+        List<Request> requests = new ArrayList<>();
+        ByteBuffer frame;
+        while ((frame = decoder.nextFrame()) != null) {
+            requests.add(requestDecoder.decode(frame, decoder, clientAddress));
+        }
 
-        //offload slower/expensive logic as an async logic to a worker thread pool, when the response is ready,
-        //we enqueue it and wake up the selector to register interest in writing
-        executor.submit(() -> {
-            try {
-                String response = ProtocolUtils.handleClientRequest(input, cache);
-                ByteBuffer responseBuffer = ByteBuffer.wrap((response + "\n").getBytes());
-                LOG.info("Sending the response [{}] to the client [{}]", response, clientAddress);
+        if (!requests.isEmpty()) {
+            dispatch(key, client, ctx, clientAddress, requests);
+        }
+    }
 
-                synchronized (ctx) {
-                    ctx.addWriteByteBuffer(responseBuffer);
+    //runs the decoded requests on the reactor thread, handing only expensive ones to the worker pool
+    private void processInline(SelectionKey key,
+                               SocketChannel client,
+                               ClientContext ctx,
+                               String clientAddress) throws IOException {
+        FrameDecoder decoder = ctx.getDecoder();
+        ctx.backlogged = false;
+
+        while (!ctx.offloadPending) {
+            if (ctx.stream != null || ctx.backlog() >= WRITE_QUEUE_HIGH_WATERMARK) {
+                //flush before taking on more work, if the client is not reading leave the rest in the decoder
+                handleWrite(key, client, ctx);
+                if (ctx.stream != null || ctx.backlog() >= WRITE_QUEUE_HIGH_WATERMARK) {
+                    ctx.backlogged = true;
+                    metrics.readPaused();
+                    break;
                 }
+            }
+
+            ByteBuffer frame = decoder.nextFrame();
+            if (frame == null) {
+                break;
+            }
 
-                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
-                selector.wakeup(); // required if you're modifying key from a different thread
-            } catch (IllegalStateException e) {
-                LOG.warn("Backpressure for [{}]: {}", clientAddress, e.getMessage());
-                try {
-                    client.close();
-                } catch (IOException ex) {
-                    LOG.error("Error closing client [{}]: {}", clientAddress, ex.getMessage());
+            Request request = requestDecoder.decode(frame, decoder, clientAddress);
+            if (request.stream() != null) {
+                ctx.stream = request.stream();
+                continue;
+            }
+            if (request.offload()) {
+                if (offload(key, client, ctx, clientAddress, request.handler())) {
+                    break;
                 }
-                key.cancel();
-            } catch (Exception e) {
-                LOG.error("Worker thread error: {}", e.getMessage(), e);
+                //the worker pool is saturated
+                request = requestDecoder.busy(request);
+            }
+            respond(key, ctx, request);
+        }
+
+        updateReadInterest(key, ctx);
+        //write straight away, OP_WRITE is only needed when the socket cannot take everything
+        handleWrite(key, client, ctx);
+    }
+
+    //false when the worker pool refused the request
+    private boolean offload(SelectionKey key,
+                            SocketChannel client,
+                            ClientContext ctx,
+                            String clientAddress,
+                            Supplier<ByteBuffer[]> handler) {
+        //frames behind the expensive request wait in the decoder until its response is queued
+        ctx.offloadPending = true;
+        try {
+            executor.submit(() -> runOffloaded(key, client, ctx, clientAddress, handler));
+            return true;
+        } catch (RejectedExecutionException e) {
+            ctx.offloadPending = false;
+            return false;
+        }
+    }
+
+    private void runOffloaded(SelectionKey key,
+                              SocketChannel client,
+                              ClientContext ctx,
+                              String clientAddress,
+                              Supplier<ByteBuffer[]> handler) {
+        ByteBuffer[] response;
+        try {
+            response = handler.get();
+        } catch (RuntimeException e) {
+            LOG.error("Worker thread error: {}", e.getMessage(), e);
+            response = new ByteBuffer[]{ctx.isBinaryProtocol()
+                    ? BinaryProtocol.encodeResponse(BinaryProtocol.STATUS_ERROR, "Internal error")
+                    : ByteBuffer.wrap("ERROR Internal error\n".getBytes())};
+        }
+
+        ByteBuffer[] offloaded = response;
+        ctx.execute(() -> {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                ctx.offloadPending = false;
+                queueResponse(ctx, offloaded);
+                processInline(key, client, ctx, clientAddress);
+            } catch (IOException e) {
+                LOG.error("Failed to resume the client [{}] due to {}", clientAddress, e.getMessage());
+                closeClient(key);
             }
         });
     }
 
-    private void handleWrite(SelectionKey key,
-                             SocketChannel client,
-                             ClientContext ctx) throws IOException {
+    private void respond(SelectionKey key, ClientContext ctx, Request request) {
+        ByteBuffer[] response = request.handler().get();
+        if (request.durable()) {
+            queueDurable(key, ctx, request, response);
+        } else {
+            queueResponse(ctx, response);
+        }
+    }
+
+    private void queueResponse(ClientContext ctx, ByteBuffer[] response) {
+        ctx.addWriteResponse(response);
+        metrics.recordWriteQueueDepth(ctx.getWriteQueue().size());
+    }
+
+    //no thread waits for the log, the flusher hands the response back to the reactor once its sync is done; the
+    //requests behind it carry on and their responses are held until then
+    private void queueDurable(SelectionKey key, ClientContext ctx, Request request, ByteBuffer[] response) {
+        Held durable = ctx.holdUntilSynced(response);
+        requestDecoder.whenDurable(request, response, answer -> ctx.execute(() -> {
+            ctx.release(durable, answer);
+            flush(key, ctx);
+        }));
+    }
+
+    //stop reading from a client while it waits for an offloaded request or is not draining its responses
+    private void updateReadInterest(SelectionKey key, ClientContext ctx) {
+        if (ctx.offloadPending || ctx.backlogged) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        } else {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    private void dispatch(SelectionKey key,
+                          SocketChannel client,
+                          ClientContext ctx,
+                          String clientAddress,
+                          List<Request> requests) {
+        //offload slower/expensive logic as an async logic to a worker thread pool, when the responses are ready,
+        //we enqueue them and ask the reactor to flush them once
+        synchronized (ctx) {
+            ctx.pendingBatches.add(requests);
+            if (ctx.batchRunning) {
+                return;
+            }
+            ctx.batchRunning = true;
+        }
+        runBatches(key, ctx, clientAddress);
+    }
+
+    //reactor thread only, when the worker pool is saturated the pending batches are answered BUSY right here
+    private void runBatches(SelectionKey key, ClientContext ctx, String clientAddress) {
+        try {
+            executor.submit(() -> drainBatches(key, ctx, clientAddress));
+        } catch (RejectedExecutionException e) {
+            synchronized (ctx) {
+                for (int i = ctx.pendingBatches.size(); i > 0; i--) {
+                    ctx.pendingBatches.add(ctx.pendingBatches.poll().stream().map(requestDecoder::busy).toList());
+                }
+            }
+            drainBatches(key, ctx, clientAddress);
+        }
+    }
+
+    private void drainBatches(SelectionKey key, ClientContext ctx, String clientAddress) {
+        while (true) {
+            List<Request> batch;
+            synchronized (ctx) {
+                batch = ctx.pendingBatches.poll();
+                if (batch == null) {
+                    ctx.batchRunning = false;
+                    return;
+                }
+            }
+            if (!runBatch(key, ctx, batch)) {
+                //batchRunning stays set, the reactor resumes the batches once the stream is written out
+                //or the write queue is down to the low watermark
+                return;
+            }
+        }
+    }
+
+    //false when the batch stopped at a streamed response or at the high watermark, the rest of it goes back to the
+    //front of the batches
+    private boolean runBatch(SelectionKey key, ClientContext ctx, List<Request> batch) {
+        boolean completed = true;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                Request request = batch.get(i);
+                if (request.stream() != null) {
+                    synchronized (ctx) {
+                        ctx.stream = request.stream();
+                        if (i + 1 < batch.size()) {
+                            ctx.pendingBatches.addFirst(batch.subList(i + 1, batch.size()));
+                        }
+                    }
+                    completed = false;
+                    break;
+                }
+                if (ctx.backlog() >= WRITE_QUEUE_HIGH_WATERMARK) {
+                    //the client is not keeping up, wait for it rather than dropping the connection
+                    synchronized (ctx) {
+                        ctx.batchesStalled = true;
+                        ctx.pendingBatches.addFirst(batch.subList(i, batch.size()));
+                    }
+                    completed = false;
+                    break;
+                }
+
+                respond(key, ctx, request);
+            }
+
+            //the reactor owns the key's interest in writing, it flushes the whole batch after one wakeup
+            requestFlush(key, ctx);
+        } catch (Exception e) {
+            LOG.error("Worker thread error: {}", e.getMessage(), e);
+        }
+        return completed;
+    }
+
+    void handleWrite(SelectionKey key,
+                     SocketChannel client,
+                     ClientContext ctx) throws IOException {
         Queue<ByteBuffer> queue = ctx.getWriteQueue();
 
+        //worker pool threads may append responses meanwhile, they request another flush once they have
+        boolean streamed = ctx.stream != null;
+        ctx.queueHeld();
+        fillFromStream(ctx);
         while (!queue.isEmpty()) {
-            ByteBuffer buf = queue.peek();
-            client.write(buf);
-            if (buf.hasRemaining()) {
+            if (!writeQueued(client, queue, ctx.gathered)) {
                 //stop for partial writing
                 break;
             }
-            queue.poll(); // Done with this buffer
+            //the socket took everything, queue what waited for room and the next chunks of a streamed response
+            ctx.queueHeld();
+            fillFromStream(ctx);
         }
+        streamed &= ctx.stream == null;
 
         if (queue.isEmpty()) {
             // Nothing more to write, remove OP_WRITE interest
             key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        boolean drained = ctx.stream == null && ctx.backlog() <= WRITE_QUEUE_LOW_WATERMARK;
+        if (config.getExecution() == ExecutionStrategy.INLINE) {
+            if (ctx.backlogged && drained) {
+                //the client caught up, carry on with the requests that were left in the decoder
+                processInline(key, client, ctx, ctx.getRemoteAddress(client));
+            }
+            return;
+        }
+
+        //workers keep answering what was already read, only reading more waits for the client
+        if (!ctx.backlogged && (ctx.stream != null || ctx.backlog() >= WRITE_QUEUE_HIGH_WATERMARK)) {
+            ctx.backlogged = true;
+            metrics.readPaused();
+            updateReadInterest(key, ctx);
+        } else if (ctx.backlogged && drained) {
+            ctx.backlogged = false;
+            updateReadInterest(key, ctx);
+        }
+
+        boolean resume = streamed;
+        synchronized (ctx) {
+            if (ctx.batchesStalled && drained) {
+                ctx.batchesStalled = false;
+                resume = true;
+            }
+        }
+        if (resume) {
+            //the stream is written out or the client caught up, the requests waiting behind can run
+            runBatches(key, ctx, ctx.getRemoteAddress(client));
+        }
+    }
+
+    //called off the reactor thread once responses are queued, responses queued before the flush runs share it
+    private void requestFlush(SelectionKey key, ClientContext ctx) {
+        if (ctx.flushScheduled.compareAndSet(false, true)) {
+            ctx.execute(() -> flush(key, ctx));
         }
     }
 
-    private void closeChannel(SocketChannel client) {
+    private void flush(SelectionKey key, ClientContext ctx) {
+        //cleared first, a response queued from here on requests a flush of its own
+        ctx.flushScheduled.set(false);
+        if (!key.isValid() || !(key.channel() instanceof SocketChannel client)) {
+            return;
+        }
+        try {
+            handleWrite(key, client, ctx);
+        } catch (IOException e) {
+            LOG.error("Failed to write to the client due to {}", e.getMessage());
+            closeClient(key);
+        }
+    }
+
+    //writes the published buffers from the head of the queue with one gathering write, so the views of stored values
+    //go to the socket as they are, and drops the buffers the socket took in full; false when it did not take everything
+    private static boolean writeQueued(SocketChannel client, Queue<ByteBuffer> queue, ByteBuffer[] gathered)
+            throws IOException {
+        int count = 0;
+        for (ByteBuffer buf : queue) {
+            gathered[count++] = buf;
+            if (count == gathered.length) {
+                break;
+            }
+        }
+
         try {
-            LOG.info("Closing connection to client [{}]", client.getRemoteAddress());
-            client.close();
-        } catch (IOException ignored) {}
+            client.write(gathered, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (gathered[i].hasRemaining()) {
+                    return false;
+                }
+                queue.poll();
+            }
+            return true;
+        } finally {
+            Arrays.fill(gathered, 0, count, null);
+        }
+    }
+
+    //not while responses before the stream are held
+    private static void fillFromStream(ClientContext ctx) {
+        while (ctx.stream != null && ctx.heldBuffers == 0 && ctx.getWriteQueue().size() < STREAMED_CHUNKS_AHEAD) {
+            if (ctx.stream.hasNext()) {
+                ctx.addWriteByteBuffer(ctx.stream.next());
+            } else {
+                ctx.stream = null;
+            }
+        }
+    }
+
+    void closeClient(SelectionKey key) {
+        if (key.channel() instanceof SocketChannel client) {
+            try {
+                LOG.info("Closing connection to client [{}]", key.attachment() instanceof ClientContext ctx
+                        ? ctx.getRemoteAddress(client)
+                        : client.getRemoteAddress());
+                client.close();
+            } catch (IOException ignored) {}
+        }
+        key.cancel();
+
+        if (key.attachment() instanceof ClientContext ctx) {
+            ctx.markClosed();
+            //on the owning reactor, which may still be decoding from the buffer when a worker closes the client
+            ctx.execute(ctx.getDecoder()::release);
+        }
     }
 }
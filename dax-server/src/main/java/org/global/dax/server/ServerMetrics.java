@@ -0,0 +1,315 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.BinaryProtocol;
+import org.global.dax.shared.BufferPool;
+import org.global.dax.shared.ShardStats;
+import org.global.dax.shared.ShardedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/*
+ * Counters and histograms of a running server, cheap enough to update on every request: counters are LongAdders
+ * and histograms are striped the same way, so reactors and workers recording at once do not contend. Gauges
+ * (queue depths, connections, cache sizes) are only read when a snapshot is taken.
+ *
+ * A snapshot answers the STATS command as name=value pairs and backs the attributes of the server's MBean.
+ */
+final class ServerMetrics implements DynamicMBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerMetrics.class);
+    private static final String RESIZE_SHARDS = "resizeShards";
+
+    enum Command {
+        GET, ADD, DELETE, GET_ALL, BATCH, HEARTBEAT, STATS, OTHER;
+
+        //GET ALL and its pages count as GET_ALL
+        static Command ofText(String input) {
+            String[] parts = input.trim().split(" ", 3);
+            return switch (parts[0].toUpperCase()) {
+                case "GET" -> parts.length > 1 && parts[1].trim().equalsIgnoreCase("ALL") ? GET_ALL : GET;
+                case "ADD" -> ADD;
+                case "DELETE" -> DELETE;
+                case "MGET", "MADD", "MDELETE" -> BATCH;
+                case "HEARTBEAT" -> HEARTBEAT;
+                case "STATS" -> STATS;
+                default -> OTHER;
+            };
+        }
+
+        static Command ofOpcode(byte opcode) {
+            return switch (opcode) {
+                case BinaryProtocol.OP_GET -> GET;
+                case BinaryProtocol.OP_ADD, BinaryProtocol.OP_ADD_TTL -> ADD;
+                case BinaryProtocol.OP_DELETE -> DELETE;
+                case BinaryProtocol.OP_GET_ALL, BinaryProtocol.OP_SCAN -> GET_ALL;
+                case BinaryProtocol.OP_MGET, BinaryProtocol.OP_MADD, BinaryProtocol.OP_MDELETE -> BATCH;
+                case BinaryProtocol.OP_HEARTBEAT -> HEARTBEAT;
+                case BinaryProtocol.OP_STATS -> STATS;
+                default -> OTHER;
+            };
+        }
+    }
+
+    private final ShardedCache cache;
+    private final BufferPool bufferPool;
+    private final ThreadPoolExecutor executor;
+    private final IntSupplier activeConnections;
+    //stats of the optional parts of the server (replication, snapshots), added to every snapshot
+    private final Consumer<Map<String, Number>> moreStats;
+    private final LongAdder[] requests = new LongAdder[Command.values().length];
+    //from a request being decoded to its response being queued, so offloaded requests include the executor queue,
+    //durable writes do not include the log sync they wait for, see wal.last_sync_us
+    private final ConcurrentHistogram[] latencies = new ConcurrentHistogram[Command.values().length];
+    //time a reactor spends on the keys of one select
+    private final ConcurrentHistogram selectorLoop = new ConcurrentHistogram();
+    //buffers waiting in a client's write queue, sampled whenever a response is queued
+    private final ConcurrentHistogram writeQueueDepth = new ConcurrentHistogram();
+    private final LongAdder acceptedConnections = new LongAdder();
+    //connections closed because no read buffer was left within the I/O memory
+    private final LongAdder ioMemoryDisconnects = new LongAdder();
+    //times a connection stopped being read because it was not draining its responses
+    private final LongAdder readPauses = new LongAdder();
+    //requests answered BUSY instead of being run, the worker pool was saturated
+    private final LongAdder busyResponses = new LongAdder();
+    private ObjectName objectName;
+
+    ServerMetrics(ShardedCache cache,
+                  BufferPool bufferPool,
+                  ThreadPoolExecutor executor,
+                  IntSupplier activeConnections,
+                  Consumer<Map<String, Number>> moreStats) {
+        this.cache = cache;
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+        this.activeConnections = activeConnections;
+        this.moreStats = moreStats;
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new LongAdder();
+            latencies[i] = new ConcurrentHistogram();
+        }
+    }
+
+    void recordRequest(Command command, long latencyNanos) {
+        requests[command.ordinal()].increment();
+        latencies[command.ordinal()].record(latencyNanos);
+    }
+
+    //a streamed response has no single point at which it is done, it is only counted
+    void countRequest(Command command) {
+        requests[command.ordinal()].increment();
+    }
+
+    void recordSelectorLoop(long nanos) {
+        selectorLoop.record(nanos);
+    }
+
+    void recordWriteQueueDepth(int depth) {
+        writeQueueDepth.record(depth);
+    }
+
+    void connectionAccepted() {
+        acceptedConnections.increment();
+    }
+
+    void ioMemoryDisconnect() {
+        ioMemoryDisconnects.increment();
+    }
+
+    void readPaused() {
+        readPauses.increment();
+    }
+
+    void busyResponse() {
+        busyResponses.increment();
+    }
+
+    //latencies are in microseconds
+    Map<String, Number> snapshot() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("connections.active", activeConnections.getAsInt());
+        stats.put("connections.accepted", acceptedConnections.sum());
+        stats.put("connections.io_memory_closed", ioMemoryDisconnects.sum());
+        stats.put("connections.read_paused", readPauses.sum());
+
+        for (Command command : Command.values()) {
+            String prefix = "requests." + command.name().toLowerCase(Locale.ROOT);
+            ConcurrentHistogram latency = latencies[command.ordinal()];
+            stats.put(prefix + ".count", requests[command.ordinal()].sum());
+            stats.put(prefix + ".p50_us", micros(latency.percentile(50)));
+            stats.put(prefix + ".p99_us", micros(latency.percentile(99)));
+            stats.put(prefix + ".p999_us", micros(latency.percentile(99.9)));
+            stats.put(prefix + ".max_us", micros(latency.max()));
+        }
+
+        stats.put("executor.queue", executor.getQueue().size());
+        stats.put("executor.active", executor.getActiveCount());
+        stats.put("executor.busy_responses", busyResponses.sum());
+        stats.put("selector.loop.p50_us", micros(selectorLoop.percentile(50)));
+        stats.put("selector.loop.p99_us", micros(selectorLoop.percentile(99)));
+        stats.put("selector.loop.max_us", micros(selectorLoop.max()));
+        stats.put("writequeue.p50", writeQueueDepth.percentile(50));
+        stats.put("writequeue.p99", writeQueueDepth.percentile(99));
+        stats.put("writequeue.max", writeQueueDepth.max());
+        stats.put("buffers.capacity", bufferPool.capacity());
+        stats.put("buffers.allocated", bufferPool.allocatedBytes());
+        stats.put("buffers.in_use", bufferPool.inUseBytes());
+        stats.put("buffers.exhausted", bufferPool.exhaustedCount());
+
+        long hits = 0;
+        long misses = 0;
+        //the count only grows, every index below it stays valid
+        int shardCount = cache.getShardCount();
+        long largestSize = 0;
+        long busiestLoad = 0;
+        long totalSize = 0;
+        for (int i = 0; i < shardCount; i++) {
+            ShardStats shard = cache.getShardStats(i);
+            String prefix = "shard." + i;
+            stats.put(prefix + ".size", shard.size());
+            stats.put(prefix + ".memory", shard.memoryUsed());
+            stats.put(prefix + ".hits", shard.hits());
+            stats.put(prefix + ".misses", shard.misses());
+            stats.put(prefix + ".hit_ratio", ratio(shard.hits(), shard.misses()));
+            stats.put(prefix + ".evictions", shard.evictions());
+            stats.put(prefix + ".expirations", shard.expirations());
+            hits += shard.hits();
+            misses += shard.misses();
+            totalSize += shard.size();
+            largestSize = Math.max(largestSize, shard.size());
+            busiestLoad = Math.max(busiestLoad, shard.hits() + shard.misses());
+        }
+        stats.put("cache.size", cache.size());
+        stats.put("cache.memory", cache.getMemoryUsed());
+        stats.put("cache.hits", hits);
+        stats.put("cache.misses", misses);
+        stats.put("cache.hit_ratio", ratio(hits, misses));
+        stats.put("cache.evictions", cache.getEvictionCount());
+        stats.put("cache.expirations", cache.getExpiredCount());
+        //the largest shard and the busiest one against the mean, 1.0 when the keys are spread evenly
+        stats.put("cache.shards", shardCount);
+        stats.put("cache.shard_skew", skew(largestSize, totalSize, shardCount));
+        stats.put("cache.shard_load_skew", skew(busiestLoad, hits + misses, shardCount));
+        stats.put("cache.resizing", cache.isResizing() ? 1 : 0);
+        stats.put("cache.migrated_entries", cache.getMigratedCount());
+        moreStats.accept(stats);
+        return stats;
+    }
+
+    //the STATS response, name=value pairs separated by spaces on a single line
+    String format() {
+        StringJoiner joined = new StringJoiner(" ");
+        snapshot().forEach((name, value) -> joined.add(name + "=" + value));
+        return joined.toString();
+    }
+
+    private static double micros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0 : Math.round(hits * 10_000.0 / (hits + misses)) / 10_000.0;
+    }
+
+    private static double skew(long largest, long total, int count) {
+        return total == 0 ? 0 : Math.round(largest * count * 100.0 / total) / 100.0;
+    }
+
+    //exposes the snapshot as the attributes of org.global.dax:type=Server,port=<port>, and resizeShards as its
+    //only operation
+    synchronized void register(int port) {
+        try {
+            objectName = new ObjectName("org.global.dax:type=Server,port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            LOG.warn("Failed to register the server metrics with JMX due to {}", e.getMessage());
+            objectName = null;
+        }
+    }
+
+    synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOG.warn("Failed to unregister the server metrics from JMX due to {}", e.getMessage());
+        }
+        objectName = null;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> stats = snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (stats.containsKey(attribute)) {
+                list.add(new Attribute(attribute, stats.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if (!RESIZE_SHARDS.equals(actionName) || params == null || params.length != 1
+                || !(params[0] instanceof Integer shardCount)) {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+        //returns once every moved entry is in its new shard
+        try {
+            LOG.info("Resizing the cache from [{}] to [{}] shards", cache.getShardCount(), shardCount);
+            long start = System.nanoTime();
+            cache.resize(shardCount);
+            LOG.info("Resized the cache to [{}] shards in [{}] ms", shardCount,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeOperationsException(e, e.getMessage());
+        }
+        return cache.getShardCount();
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        MBeanAttributeInfo[] attributes = snapshot().entrySet().stream()
+                .map(stat -> new MBeanAttributeInfo(stat.getKey(), stat.getValue().getClass().getName(),
+                        stat.getKey(), true, false, false))
+                .toArray(MBeanAttributeInfo[]::new);
+        MBeanOperationInfo resize = new MBeanOperationInfo(RESIZE_SHARDS,
+                "Grows the shard count online, returns the new count",
+                new MBeanParameterInfo[]{new MBeanParameterInfo("shardCount", "int", "The new shard count")},
+                "int", MBeanOperationInfo.ACTION);
+        return new MBeanInfo(ServerMetrics.class.getName(), "DAX server metrics", attributes, null,
+                new MBeanOperationInfo[]{resize}, null);
+    }
+}
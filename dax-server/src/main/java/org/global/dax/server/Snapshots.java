@@ -0,0 +1,148 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.CacheSnapshot;
+import org.global.dax.shared.ShardedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Warm restarts: the cache is loaded from the snapshot directory before the server takes its first client, then
+ * written back to it every interval from a background thread and once more when the server stops. A snapshot is only
+ * ever written after the load, so a server that fails to start does not replace a good snapshot with an empty one.
+ *
+ * With a write-ahead log the log is replayed on top of the snapshot as part of the load, every snapshot records the
+ * log sequence it covers and deletes the log segments before it, and the log asks for a snapshot when it grows too
+ * large.
+ */
+final class Snapshots {
+    private static final Logger LOG = LoggerFactory.getLogger(Snapshots.class);
+
+    private final ShardedCache cache;
+    private final Path directory;
+    private final Duration interval;
+    //null when writes are not logged
+    private final WriteAheadLog wal;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile ScheduledExecutorService scheduler;
+    //set once the cache was loaded, cleared by the final snapshot on stop
+    private boolean active;
+    private volatile long loadedEntries;
+    private volatile long loadMillis;
+    private volatile long lastEntries;
+    private volatile long lastMillis;
+
+    Snapshots(ShardedCache cache, Path directory, Duration interval) {
+        this(cache, directory, interval, null);
+    }
+
+    Snapshots(ShardedCache cache, Path directory, Duration interval, WriteAheadLog wal) {
+        this.cache = cache;
+        this.directory = directory;
+        this.interval = interval;
+        this.wal = wal;
+    }
+
+    //a missing snapshot is a cold start, a snapshot that cannot be read fails the start
+    synchronized void load() throws IOException {
+        long start = System.nanoTime();
+        long entries = CacheSnapshot.load(cache, directory);
+        loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (entries < 0) {
+            LOG.info("No snapshot in [{}], starting with an empty cache", directory);
+        } else {
+            loadedEntries = entries;
+            LOG.info("Loaded [{}] entries from the snapshot in [{}] in [{}] ms", entries, directory, loadMillis);
+        }
+        if (wal != null) {
+            //before any snapshot can be taken, a snapshot of a cache still being replayed would cover too little
+            wal.open(CacheSnapshot.logSequence(directory));
+            wal.setCompactor(this::requestSnapshot);
+        }
+        active = true;
+
+        if (!interval.isZero() || wal != null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "dax-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (!interval.isZero()) {
+            scheduler.scheduleWithFixedDelay(this::snapshot, interval.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //a snapshot on the background thread, ignored once the server is stopping
+    void requestSnapshot() {
+        ScheduledExecutorService current = scheduler;
+        try {
+            if (current != null) {
+                current.execute(this::snapshot);
+                return;
+            }
+        } catch (RejectedExecutionException ignored) {
+        }
+        if (wal != null) {
+            wal.truncate(0);
+        }
+    }
+
+    //the final snapshot, the cache must still be open
+    void stop() {
+        ScheduledExecutorService current = scheduler;
+        if (current != null) {
+            //a snapshot in progress is finished rather than interrupted
+            current.shutdown();
+        }
+        synchronized (this) {
+            if (active) {
+                snapshot();
+                active = false;
+            }
+        }
+    }
+
+    synchronized void snapshot() {
+        if (!active) {
+            return;
+        }
+        long start = System.nanoTime();
+        //read before the first shard is copied, every mutation logged up to it is already in the cache
+        long covered = wal != null ? wal.appendedSequence() : 0;
+        try {
+            lastEntries = CacheSnapshot.write(cache, directory, covered);
+            lastMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            written.increment();
+            LOG.info("Wrote [{}] entries to the snapshot in [{}] in [{}] ms", lastEntries, directory, lastMillis);
+        } catch (IOException | RuntimeException e) {
+            covered = 0;
+            failed.increment();
+            LOG.error("Failed to write the snapshot to [{}] due to {}", directory, e.getMessage(), e);
+        } finally {
+            if (wal != null) {
+                wal.truncate(covered);
+            }
+        }
+    }
+
+    void addStats(Map<String, Number> stats) {
+        stats.put("snapshot.loaded_entries", loadedEntries);
+        stats.put("snapshot.load_ms", loadMillis);
+        stats.put("snapshot.written", written.sum());
+        stats.put("snapshot.failed", failed.sum());
+        stats.put("snapshot.last_entries", lastEntries);
+        stats.put("snapshot.last_ms", lastMillis);
+    }
+}
@@ -0,0 +1,9 @@
+package org.global.dax.server;
+
+//when a write is acknowledged to the client, with the write-ahead log on
+public enum WalAck {
+    //once the log sync that covers the write is done, a crash loses no acknowledged write
+    DURABLE,
+    //as soon as the write is applied, a crash loses the writes of the last WAL_SYNC_INTERVAL_MS
+    RELAXED
+}
@@ -0,0 +1,559 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.BinaryProtocol;
+import org.global.dax.shared.ProtocolUtils;
+import org.global.dax.shared.ShardedCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static org.global.dax.shared.BinaryProtocol.REQUEST_HEADER_SIZE;
+import static org.global.dax.shared.Constants.MAX_KEY_SIZE;
+import static org.global.dax.shared.Constants.WAL_MAX_PENDING_BYTES;
+import static org.global.dax.shared.Constants.WAL_SYNC_INTERVAL_MS;
+
+/*
+ * Write-ahead log of the ADD and DELETE mutations of the cache, so a restart loses no acknowledged write. Records
+ * are appended to a buffer in memory as the cache reports the mutations, and a single flusher thread writes and
+ * syncs whatever accumulated while its previous sync ran: one fsync covers the writes of every request that arrived
+ * in the meantime (group commit). With DURABLE acks a write request is answered once the sync covering it is done,
+ * the flusher hands it back through a callback so no thread waits for it; with RELAXED acks it is answered at once
+ * and the log is synced every WAL_SYNC_INTERVAL_MS. A write is refused before it reaches the cache once the log has
+ * failed, or while more than WAL_MAX_PENDING_BYTES wait to be written.
+ *
+ * segment = record*, the file is named after the sequence of its first record
+ * record  = [length:4][crc32c:4][sequence:8][written at epoch millis:8][binary request frame]
+ *
+ * The frames are binary protocol ADD, ADD TTL and DELETE requests, as in replication, the checksum covers everything
+ * after it. On start the records after the sequence the latest snapshot covers are replayed on top of it, a record a
+ * crash tore at the end of the last segment is cut off. Segments are rolled at segmentBytes, and once they add up to
+ * more than compactBytes a snapshot is requested, the segments it covers are deleted when it is written.
+ */
+final class WriteAheadLog implements ShardedCache.MutationListener {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES;
+    //the checksum covers the record from the sequence on
+    private static final int CHECKED_OFFSET = 2 * Integer.BYTES;
+    private static final int INITIAL_BUFFER_BYTES = 1024 * 1024;
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private record Segment(Path path, long firstSequence) {
+    }
+
+    //called back once the records up to sequence are synced
+    private record Waiter(long sequence, Consumer<Boolean> callback) {
+    }
+
+    private final ShardedCache cache;
+    private final Path directory;
+    private final WalAck ack;
+    private final long segmentBytes;
+    private final long compactBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //signalled by the first append into an empty buffer, the flusher waits on it while there is nothing to write
+    private final Condition appendedCondition = lock.newCondition();
+    private final Condition durableCondition = lock.newCondition();
+    //guarded by the lock, writers append to pending while the flusher writes out the buffer it swapped it for
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    //in sequence order, a waiter is registered for everything appended so far
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private long appended;
+    private long durable;
+    private boolean running;
+    private boolean closed;
+    private volatile IOException failure;
+
+    //oldest first, the flusher writes to the last one
+    private final List<Segment> segments = new ArrayList<>();
+    //the flusher's alone
+    private FileChannel active;
+    private long activeBytes;
+    private Thread flusher;
+
+    private final AtomicLong logBytes = new AtomicLong();
+    //set while a compaction snapshot is requested and not written yet
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private volatile Runnable compactor;
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private volatile long replayed;
+    private volatile long lastSyncMicros;
+
+    WriteAheadLog(ShardedCache cache, Path directory, WalAck ack, long segmentBytes, long compactBytes) {
+        if (segmentBytes <= 0 || compactBytes <= segmentBytes) {
+            throw new IllegalArgumentException("The log must be compacted past more than one segment");
+        }
+        this.cache = cache;
+        this.directory = directory;
+        this.ack = ack;
+        this.segmentBytes = segmentBytes;
+        this.compactBytes = compactBytes;
+    }
+
+    //takes the snapshot that compacts the log, it calls truncate once it is done
+    void setCompactor(Runnable compactor) {
+        this.compactor = compactor;
+    }
+
+    //replays the records after coveredSequence onto the cache and starts logging its mutations, the records replayed
+    long open(long coveredSequence) throws IOException {
+        Files.createDirectories(directory);
+        List<Segment> found;
+        try (Stream<Path> listed = Files.list(directory)) {
+            found = listed.filter(WriteAheadLog::isSegment)
+                    .map(path -> new Segment(path, firstSequence(path)))
+                    .sorted((a, b) -> Long.compare(a.firstSequence(), b.firstSequence()))
+                    .toList();
+        }
+
+        long start = System.nanoTime();
+        long last = coveredSequence;
+        long records = 0;
+        for (int i = 0; i < found.size(); i++) {
+            Segment segment = found.get(i);
+            if (segment.firstSequence() > last + 1) {
+                LOG.error("The log is missing the records [{}] to [{}], they are lost", last + 1, segment.firstSequence() - 1);
+            }
+            long[] replay = replaySegment(segment, i == found.size() - 1, coveredSequence, last);
+            last = Math.max(last, replay[0]);
+            records += replay[1];
+
+            long size = Files.size(segment.path());
+            if (size == 0) {
+                Files.delete(segment.path());
+            } else {
+                segments.add(segment);
+                logBytes.addAndGet(size);
+            }
+        }
+        replayed = records;
+        LOG.info("Replayed [{}] records of the log in [{}] after sequence [{}] in [{}] ms", records, directory,
+                coveredSequence, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        appended = last;
+        durable = last;
+        roll(last + 1);
+        running = true;
+        cache.addMutationListener(this);
+
+        flusher = new Thread(this::flush, "dax-wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        return records;
+    }
+
+    //[last sequence, records applied], a torn record at the end of the last segment is cut off. The segment is read
+    //rather than mapped, a file cannot be truncated while a mapping of it is live on every platform
+    private long[] replaySegment(Segment segment, boolean last, long coveredSequence, long previous) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.path(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Log segment too large " + segment.path());
+            }
+            ByteBuffer in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+                //until the whole segment is read
+            }
+            in.flip();
+            long sequence = previous;
+            long applied = 0;
+            long now = System.currentTimeMillis();
+            while (in.hasRemaining()) {
+                int position = in.position();
+                int length = in.remaining() >= RECORD_HEADER_SIZE ? in.getInt(position) : -1;
+                if (length < RECORD_HEADER_SIZE + REQUEST_HEADER_SIZE || length > in.remaining()
+                        || in.getInt(position + Integer.BYTES) != checksum(in, position, length)) {
+                    if (!last) {
+                        throw new IOException("Corrupt record at [" + position + "] in the log segment " + segment.path());
+                    }
+                    LOG.warn("Cutting off a torn record at [{}] in the log segment [{}]", position, segment.path());
+                    channel.truncate(position);
+                    channel.force(true);
+                    break;
+                }
+
+                sequence = in.getLong(position + CHECKED_OFFSET);
+                if (sequence > coveredSequence) {
+                    long writtenAt = in.getLong(position + CHECKED_OFFSET + Long.BYTES);
+                    apply(in.slice(position + RECORD_HEADER_SIZE, length - RECORD_HEADER_SIZE), now - writtenAt);
+                    applied++;
+                }
+                in.position(position + length);
+            }
+            return new long[]{sequence, applied};
+        }
+    }
+
+    //a TTL counts from when the record was written, an entry that expired since is removed
+    private void apply(ByteBuffer frame, long elapsedMillis) {
+        if (frame.get(0) == BinaryProtocol.OP_ADD_TTL) {
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining()).put(frame.duplicate()).flip();
+            long ttlMillis = copy.getLong(REQUEST_HEADER_SIZE) - elapsedMillis;
+            if (ttlMillis > 0) {
+                frame = copy.putLong(REQUEST_HEADER_SIZE, ttlMillis);
+            } else {
+                frame = ByteBuffer.allocate(REQUEST_HEADER_SIZE).put(copy.limit(REQUEST_HEADER_SIZE)).flip()
+                        .put(0, BinaryProtocol.OP_DELETE)
+                        .putInt(1 + MAX_KEY_SIZE, 0);
+            }
+        }
+        ByteBuffer[] response = ProtocolUtils.respondToBinaryRequest(frame, cache);
+        if (response[0].get(0) == BinaryProtocol.STATUS_ERROR) {
+            LOG.warn("Failed to replay a logged mutation with opcode [{}]", frame.get(0));
+        }
+    }
+
+    @Override
+    public void added(String key, byte[] value, long ttlMillis) {
+        append(ttlMillis > 0
+                ? BinaryProtocol.encodeAddRequest(key, value, ttlMillis)
+                : BinaryProtocol.encodeRequest(BinaryProtocol.OP_ADD, key, value));
+    }
+
+    @Override
+    public void removed(String key) {
+        append(BinaryProtocol.encodeRequest(BinaryProtocol.OP_DELETE, key, null));
+    }
+
+    //called under the lock of the mutated shard, so the records of a key are in the order its writes were applied;
+    //it never waits, writers are held back before they take the lock, see admits
+    private void append(ByteBuffer frame) {
+        int length = RECORD_HEADER_SIZE + frame.remaining();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            //only a write that was admitted just before the log failed gets here, it is answered with the failure
+            if (!running || failure != null) {
+                return;
+            }
+            if (pending.remaining() < length) {
+                pending = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + length))
+                        .put(pending.flip());
+            }
+
+            int start = pending.position();
+            pending.putInt(length).putInt(0).putLong(++appended).putLong(now).put(frame);
+            pending.putInt(start + Integer.BYTES, checksum(pending, start, length));
+            if (start == 0) {
+                appendedCondition.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(start + CHECKED_OFFSET, length - CHECKED_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    //false once the log failed, a write is refused rather than applied to the cache without being logged
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    //false while the disk is not keeping up, a write is refused rather than buffered without limit; asked before the
+    //write takes its shard's lock, so no writer waits for the disk while holding it
+    boolean admits() {
+        lock.lock();
+        try {
+            if (pending.position() < WAL_MAX_PENDING_BYTES) {
+                return true;
+            }
+            appendedCondition.signal();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //with DURABLE acks, runs the callback once every record appended so far is synced, with false when the log failed
+    //or stopped first and the write may not survive a crash; it runs on the flusher thread and must not block, or on
+    //the caller when there is nothing to wait for
+    void whenDurable(Consumer<Boolean> callback) {
+        boolean synced;
+        lock.lock();
+        try {
+            synced = failure == null && (ack == WalAck.RELAXED || durable >= appended);
+            if (!synced && failure == null && !closed) {
+                waiters.add(new Waiter(appended, callback));
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        callback.accept(synced);
+    }
+
+    //the same for a caller with a thread of its own, it waits for the sync
+    boolean awaitDurable() {
+        if (ack == WalAck.RELAXED) {
+            return failure == null;
+        }
+        lock.lock();
+        try {
+            long target = appended;
+            while (durable < target && failure == null && !closed) {
+                durableCondition.awaitUninterruptibly();
+            }
+            return failure == null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isDurable() {
+        return ack == WalAck.DURABLE;
+    }
+
+    //the last sequence appended, every mutation up to it has been applied to the cache
+    long appendedSequence() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush() {
+        try {
+            while (true) {
+                ByteBuffer batch;
+                long upTo;
+                lock.lock();
+                try {
+                    while (pending.position() == 0 && running) {
+                        appendedCondition.await();
+                    }
+                    if (ack == WalAck.RELAXED && running && pending.position() < WAL_MAX_PENDING_BYTES) {
+                        //the writes of the whole interval share one sync
+                        appendedCondition.await(WAL_SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    }
+                    if (pending.position() == 0) {
+                        //stopped with everything written
+                        return;
+                    }
+                    batch = pending;
+                    pending = spare;
+                    upTo = appended;
+                } finally {
+                    lock.unlock();
+                }
+
+                long start = System.nanoTime();
+                batch.flip();
+                int bytes = batch.remaining();
+                while (batch.hasRemaining()) {
+                    active.write(batch);
+                }
+                active.force(false);
+                lastSyncMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                syncs.increment();
+                activeBytes += bytes;
+                logBytes.addAndGet(bytes);
+
+                List<Waiter> synced = new ArrayList<>();
+                lock.lock();
+                try {
+                    durable = upTo;
+                    //a buffer grown by a burst of writes is not kept
+                    spare = batch.capacity() > INITIAL_BUFFER_BYTES ? ByteBuffer.allocate(INITIAL_BUFFER_BYTES) : batch.clear();
+                    while (!waiters.isEmpty() && waiters.peek().sequence() <= upTo) {
+                        synced.add(waiters.poll());
+                    }
+                    durableCondition.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                synced.forEach(waiter -> callBack(waiter, true));
+
+                if (activeBytes >= segmentBytes) {
+                    roll(upTo + 1);
+                }
+                Runnable current = compactor;
+                if (logBytes.get() > compactBytes && current != null && compacting.compareAndSet(false, true)) {
+                    compactions.increment();
+                    current.run();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException | Error e) {
+            //the flusher is gone either way, waiters must still hear that their writes are not durable
+            fail(new IOException(e.toString(), e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(IOException e) {
+        LOG.error("The log in [{}] failed, writes are no longer durable, due to {}", directory, e.getMessage(), e);
+        List<Waiter> failed;
+        lock.lock();
+        try {
+            failure = e;
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+            durableCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        failed.forEach(waiter -> callBack(waiter, false));
+    }
+
+    //one callback that throws must not keep the others, or the flusher, from running
+    private void callBack(Waiter waiter, boolean synced) {
+        try {
+            waiter.callback().accept(synced);
+        } catch (RuntimeException e) {
+            LOG.error("A durable write callback failed due to {}", e.getMessage(), e);
+        }
+    }
+
+    //the next records go to a new segment starting at firstSequence
+    private void roll(long firstSequence) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        FileChannel next = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        syncDirectory();
+        if (active != null) {
+            active.close();
+        }
+        active = next;
+        activeBytes = 0;
+        synchronized (segments) {
+            segments.add(new Segment(path, firstSequence));
+        }
+    }
+
+    //the entry of a new segment survives a crash, on file systems that support syncing a directory
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    //deletes the segments whose records a snapshot covers, the segment written to is always kept,
+    //0 deletes nothing and only ends a failed compaction
+    void truncate(long coveredSequence) {
+        List<Segment> obsolete = new ArrayList<>();
+        synchronized (segments) {
+            while (segments.size() > 1 && segments.get(1).firstSequence() - 1 <= coveredSequence) {
+                obsolete.add(segments.remove(0));
+            }
+        }
+        try {
+            for (Segment segment : obsolete) {
+                long size = Files.size(segment.path());
+                Files.delete(segment.path());
+                logBytes.addAndGet(-size);
+            }
+            if (!obsolete.isEmpty()) {
+                LOG.info("Deleted [{}] log segment(s) covered by the snapshot up to sequence [{}]", obsolete.size(),
+                        coveredSequence);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to delete a log segment due to {}", e.getMessage());
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    //syncs what is still buffered, mutations after it are no longer logged
+    void stop() {
+        cache.removeMutationListener(this);
+        lock.lock();
+        try {
+            running = false;
+            appendedCondition.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (active != null) {
+                active.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to close the log segment due to {}", e.getMessage());
+        }
+        List<Waiter> left;
+        long synced;
+        lock.lock();
+        try {
+            closed = true;
+            synced = failure == null ? durable : -1;
+            left = new ArrayList<>(waiters);
+            waiters.clear();
+            durableCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        //the flusher synced everything appended before it stopped
+        left.forEach(waiter -> callBack(waiter, waiter.sequence() <= synced));
+    }
+
+    void addStats(Map<String, Number> stats) {
+        long durableSequence;
+        long appendedSequence;
+        lock.lock();
+        try {
+            durableSequence = durable;
+            appendedSequence = appended;
+        } finally {
+            lock.unlock();
+        }
+        long syncCount = syncs.sum();
+        stats.put("wal.sequence", appendedSequence);
+        stats.put("wal.durable_sequence", durableSequence);
+        stats.put("wal.syncs", syncCount);
+        stats.put("wal.last_sync_us", lastSyncMicros);
+        synchronized (segments) {
+            stats.put("wal.segments", segments.size());
+        }
+        stats.put("wal.bytes", logBytes.get());
+        stats.put("wal.compactions", compactions.sum());
+        stats.put("wal.replayed", replayed);
+        stats.put("wal.failed", failure != null ? 1 : 0);
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static long firstSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,122 @@
+package org.global.dax.server;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Bounded multi-producer single-consumer queue of the buffers waiting to be written to one connection, an array
+ * ring that allocates nothing once created.
+ *
+ * A producer claims as many consecutive slots as its response has buffers with a single CAS on the tail, then
+ * publishes each slot by storing the buffer, so the buffers of one response stay together and in order. The owning
+ * reactor is the only consumer: it sees a slot that is claimed but not yet published as the end of the queue,
+ * and the producer asks for a flush once it has published.
+ */
+final class WriteQueue extends AbstractQueue<ByteBuffer> {
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final int mask;
+    //next slot to claim, advanced by producers
+    private final AtomicLong tail = new AtomicLong();
+    //next slot to consume, advanced by the consumer only, producers read it to check for room
+    private final AtomicLong head = new AtomicLong();
+
+    //capacity is rounded up to a power of two
+    WriteQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    //adds the buffers of one response together, false when they do not all fit
+    boolean offer(ByteBuffer[] buffers) {
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed + buffers.length - head.get() > capacity()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + buffers.length));
+
+        for (int i = 0; i < buffers.length; i++) {
+            slots.lazySet((int) (claimed + i) & mask, buffers[i]);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(ByteBuffer buffer) {
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed + 1 - head.get() > capacity()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+
+        slots.lazySet((int) claimed & mask, buffer);
+        return true;
+    }
+
+    //consumer only
+    @Override
+    public ByteBuffer poll() {
+        long index = head.get();
+        ByteBuffer buffer = slots.get((int) index & mask);
+        if (buffer != null) {
+            slots.lazySet((int) index & mask, null);
+            head.lazySet(index + 1);
+        }
+        return buffer;
+    }
+
+    //consumer only, null also while the next slot is claimed but not yet published
+    @Override
+    public ByteBuffer peek() {
+        return slots.get((int) head.get() & mask);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    //claimed slots, including those whose buffers are not published yet
+    @Override
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    //consumer only, the published buffers from the head on
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return new Iterator<>() {
+            private long index = head.get();
+            private ByteBuffer next = slots.get((int) index & mask);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ByteBuffer current = next;
+                index++;
+                //a full ring wraps around to the head, stop at the tail
+                next = index < tail.get() ? slots.get((int) index & mask) : null;
+                return current;
+            }
+        };
+    }
+}
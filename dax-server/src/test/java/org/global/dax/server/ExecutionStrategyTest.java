@@ -0,0 +1,120 @@
+package org.global.dax.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Set;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ExecutionStrategyTest {
+    private ServerMain server;
+
+    private Socket connect(ExecutionStrategy strategy) throws IOException {
+        server = new ServerMain(new ServerConfig().port(0).execution(strategy));
+        Thread thread = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-test-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getLocalPort() > 0);
+
+        Socket socket = new Socket("127.0.0.1", server.getLocalPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionStrategy.class)
+    void testPipelinedResponsesKeepRequestOrder(ExecutionStrategy strategy) throws IOException {
+        try (Socket socket = connect(strategy)) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            //GET ALL is streamed, the requests behind it must still be answered after it
+            out.write("ADD abcd one\nGET ALL\nGET abcd\nADD abcd two\nGET abcd\nHEARTBEAT\n".getBytes());
+            out.flush();
+
+            assertEquals("OK", in.readLine());
+            assertEquals("abcd", in.readLine());
+            assertEquals("one", in.readLine());
+            assertEquals("OK", in.readLine());
+            assertEquals("two", in.readLine());
+            assertEquals("OK", in.readLine());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionStrategy.class)
+    void testStreamedGetAllIsFollowedByTheRequestsBehindIt(ExecutionStrategy strategy) throws IOException {
+        try (Socket socket = connect(strategy)) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            //enough keys for many chunks, added a few at a time to stay within the worker pool's write queue
+            for (int i = 0; i < 20_000; i += 50) {
+                StringBuilder adds = new StringBuilder();
+                for (int j = i; j < i + 50; j++) {
+                    adds.append("ADD ").append(Integer.toString(j, 36)).append(" v\n");
+                }
+                out.write(adds.toString().getBytes());
+                out.flush();
+                for (int j = 0; j < 50; j++) {
+                    assertEquals("OK", in.readLine());
+                }
+            }
+
+            //the GET ALL and the requests behind it are sent in one go
+            out.write("GET ALL\nGET 0\nGET ALL 5\nHEARTBEAT\n".getBytes());
+            out.flush();
+
+            String[] keys = in.readLine().split(",");
+            assertEquals(20_000, keys.length);
+            assertEquals(20_000, Set.of(keys).size());
+            assertEquals("v", in.readLine());
+            assertEquals(5, in.readLine().split(" ")[1].split(",").length);
+            assertEquals("OK", in.readLine());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionStrategy.class)
+    void testAnswersMoreRequestsThanTheWriteQueueHolds(ExecutionStrategy strategy) throws IOException {
+        try (Socket socket = connect(strategy)) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            //more requests than MAX_WRITE_QUEUE_SIZE in flight at once, the server waits for the client to drain
+            //its responses instead of disconnecting it
+            StringBuilder requests = new StringBuilder();
+            for (int i = 0; i < 500; i++) {
+                requests.append("ADD k").append(i % 100).append(" v").append(i).append('\n');
+                requests.append("GET k").append(i % 100).append('\n');
+            }
+            out.write(requests.toString().getBytes());
+            out.flush();
+
+            for (int i = 0; i < 500; i++) {
+                assertEquals("OK", in.readLine());
+                assertEquals("v" + i, in.readLine());
+            }
+        }
+    }
+}
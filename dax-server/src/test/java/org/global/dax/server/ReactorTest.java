@@ -0,0 +1,129 @@
+package org.global.dax.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReactorTest {
+    private final List<Socket> sockets = new ArrayList<>();
+    private ServerMain server;
+
+    private void startServer(ServerConfig config) {
+        server = new ServerMain(config.port(0));
+        Thread thread = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-test-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getLocalPort() > 0);
+    }
+
+    private String send(Socket socket, String command) throws IOException {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out.println(command);
+        return in.readLine();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getLocalPort());
+        socket.setSoTimeout(5000);
+        sockets.add(socket);
+        return socket;
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testSingleSelectorModeServesClients() throws IOException {
+        startServer(new ServerConfig());
+
+        Socket socket = connect();
+        assertEquals("OK", send(socket, "ADD abcd test"));
+        assertEquals("test", send(socket, "GET abcd"));
+        assertEquals(1, server.getReactors().size());
+        assertEquals("dax-acceptor", server.getReactors().get(0).getName());
+    }
+
+    @Test
+    void testConnectionsAreSpreadRoundRobin() throws IOException {
+        startServer(new ServerConfig().reactorThreads(3));
+
+        for (int i = 0; i < 6; i++) {
+            Socket socket = connect();
+            assertEquals("OK", send(socket, "ADD k" + i + " v" + i));
+        }
+
+        assertEquals(3, server.getReactors().size());
+        for (Reactor reactor : server.getReactors()) {
+            assertEquals(2, reactor.connectionCount());
+        }
+        //every reactor shares the same cache
+        assertEquals("v5", send(sockets.get(0), "GET k5"));
+    }
+
+    @Test
+    void testLeastConnectionsFillsTheEmptiestReactor() throws IOException {
+        startServer(new ServerConfig().reactorThreads(2).balancing(ConnectionBalancing.LEAST_CONNECTIONS));
+
+        Socket first = connect();
+        Socket second = connect();
+        assertEquals("OK", send(first, "HEARTBEAT"));
+        assertEquals("OK", send(second, "HEARTBEAT"));
+
+        //free up one reactor, the next two connections should not both land on the busy one
+        first.close();
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getReactors().stream().mapToInt(Reactor::connectionCount).sum() == 1);
+
+        assertEquals("OK", send(connect(), "HEARTBEAT"));
+        assertEquals("OK", send(connect(), "HEARTBEAT"));
+        assertEquals(3, server.getReactors().stream().mapToInt(Reactor::connectionCount).sum());
+        assertTrue(server.getReactors().stream().allMatch(r -> r.connectionCount() <= 2));
+    }
+
+    @Test
+    void testRoundRobinAndLeastConnectionsSelection() throws IOException {
+        ServerMain owner = new ServerMain(new ServerConfig());
+        List<Reactor> reactors = List.of(new Reactor("a", owner), new Reactor("b", owner));
+        AtomicInteger cursor = new AtomicInteger();
+
+        assertEquals("a", ConnectionBalancing.ROUND_ROBIN.select(reactors, cursor).getName());
+        assertEquals("b", ConnectionBalancing.ROUND_ROBIN.select(reactors, cursor).getName());
+        assertEquals("a", ConnectionBalancing.ROUND_ROBIN.select(reactors, cursor).getName());
+
+        try (SocketChannel channel = SocketChannel.open()) {
+            reactors.get(0).register(channel);
+            assertEquals("b", ConnectionBalancing.LEAST_CONNECTIONS.select(reactors, cursor).getName());
+            assertEquals("b", ConnectionBalancing.LEAST_CONNECTIONS.select(reactors, cursor).getName());
+        } finally {
+            for (Reactor reactor : reactors) {
+                reactor.getSelector().close();
+            }
+        }
+    }
+}
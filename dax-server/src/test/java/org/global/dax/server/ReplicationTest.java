@@ -0,0 +1,165 @@
+package org.global.dax.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicationTest {
+    private final List<ServerMain> servers = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private ServerMain primary;
+
+    @BeforeEach
+    void setup() {
+        primary = start(new ServerConfig().port(0).replicationPort(0));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        servers.forEach(ServerMain::stop);
+    }
+
+    private ServerMain start(ServerConfig config) {
+        ServerMain server = new ServerMain(config);
+        servers.add(server);
+        Thread thread = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-test-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getLocalPort() > 0);
+        return server;
+    }
+
+    private ServerMain startReplica() {
+        return start(new ServerConfig().port(0).replicaOf("127.0.0.1:" + primary.getReplicationPort()));
+    }
+
+    private Client connect(ServerMain server) throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getLocalPort());
+        socket.setSoTimeout(5000);
+        sockets.add(socket);
+        return new Client(new PrintWriter(socket.getOutputStream(), true),
+                new BufferedReader(new InputStreamReader(socket.getInputStream())));
+    }
+
+    private record Client(PrintWriter out, BufferedReader in) {
+        String send(String command) throws IOException {
+            out.println(command);
+            return in.readLine();
+        }
+
+        Map<String, String> stats() throws IOException {
+            Map<String, String> stats = new HashMap<>();
+            for (String stat : send("STATS").split(" ")) {
+                String[] pair = stat.split("=");
+                stats.put(pair[0], pair[1]);
+            }
+            return stats;
+        }
+    }
+
+    @Test
+    void testReplicaBootstrapsFromSnapshotAndFollowsTheLog() throws IOException {
+        Client writer = connect(primary);
+        for (int i = 0; i < 500; i++) {
+            assertEquals("OK", writer.send("ADD k" + i + " v" + i));
+        }
+
+        Client reader = connect(startReplica());
+        await().atMost(Duration.ofSeconds(10)).until(() -> "1".equals(reader.stats().get("replication.connected")));
+        for (int i = 0; i < 500; i++) {
+            assertEquals("v" + i, reader.send("GET k" + i));
+        }
+
+        assertEquals("OK", writer.send("ADD k0 new"));
+        assertEquals("OK", writer.send("DELETE k1"));
+        assertEquals("OK", writer.send("MADD x1 a x2 b"));
+        assertEquals("OK", writer.send("ADD ttl0 gone 300"));
+        await().atMost(Duration.ofSeconds(10)).until(() -> reader.send("GET x2").equals("b"));
+        assertEquals("new", reader.send("GET k0"));
+        assertEquals("", reader.send("GET k1"));
+        assertEquals("gone", reader.send("GET ttl0"));
+        //the replica expires the entry on its own
+        await().atMost(Duration.ofSeconds(5)).until(() -> reader.send("GET ttl0").isEmpty());
+    }
+
+    @Test
+    void testReplicaRefusesWritesFromClients() throws IOException {
+        Client reader = connect(startReplica());
+        assertEquals("ERROR Read-only replica", reader.send("ADD abcd value"));
+        assertEquals("ERROR Read-only replica", reader.send("DELETE abcd"));
+        assertEquals("ERROR Read-only replica", reader.send("MDELETE abcd"));
+        assertEquals("", reader.send("GET abcd"));
+    }
+
+    @Test
+    void testLagIsReportedOnBothSides() throws IOException {
+        Client writer = connect(primary);
+        Client reader = connect(startReplica());
+        await().atMost(Duration.ofSeconds(10)).until(() -> "1".equals(reader.stats().get("replication.connected")));
+
+        for (int i = 0; i < 100; i++) {
+            writer.send("ADD k" + i + " v" + i);
+        }
+        await().atMost(Duration.ofSeconds(10)).until(() -> reader.send("GET k99").equals("v99"));
+
+        Map<String, String> primaryStats = writer.stats();
+        assertEquals("1", primaryStats.get("replication.replicas"));
+        assertEquals("100", primaryStats.get("replication.sequence"));
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> "0".equals(writer.stats().get("replication.replica.0.lag_records")));
+
+        Map<String, String> replicaStats = reader.stats();
+        assertEquals("100", replicaStats.get("replication.applied"));
+        assertEquals("100", replicaStats.get("replication.sequence"));
+        assertEquals("0", replicaStats.get("replication.lag_records"));
+        assertNotNull(replicaStats.get("replication.lag_ms"));
+    }
+
+    @Test
+    void testReplicaReconnectsWithAFreshSnapshot() throws IOException {
+        ServerMain replica = startReplica();
+        Client reader = connect(replica);
+        await().atMost(Duration.ofSeconds(10)).until(() -> "1".equals(reader.stats().get("replication.connected")));
+
+        //a primary on the same replication port, holding other data
+        int replicationPort = primary.getReplicationPort();
+        primary.stop();
+        await().atMost(Duration.ofSeconds(5)).until(() -> "0".equals(reader.stats().get("replication.connected")));
+        primary = start(new ServerConfig().port(0).replicationPort(replicationPort));
+        assertEquals("OK", connect(primary).send("ADD abcd value"));
+
+        await().atMost(Duration.ofSeconds(15)).until(() -> reader.send("GET abcd").equals("value"));
+        assertEquals("2", reader.stats().get("replication.bootstraps"));
+    }
+
+    @Test
+    void testServerCannotBeReplicaAndPrimary() {
+        assertThrows(IllegalArgumentException.class, () -> new ServerMain(new ServerConfig()
+                .replicationPort(0)
+                .replicaOf("127.0.0.1:9091")));
+        assertThrows(IllegalArgumentException.class, () -> new ServerConfig().replicaOf("no-port"));
+    }
+}
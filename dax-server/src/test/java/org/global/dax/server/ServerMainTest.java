@@ -3,6 +3,7 @@ package org.global.dax.server;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -87,10 +88,16 @@ public class ServerMainTest {
         ByteBuffer buffer = ByteBuffer.wrap("test\n".getBytes());
         clientContext.addWriteByteBuffer(buffer);
 
-        when(mockChannel.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
-            ByteBuffer buf = invocation.getArgument(0);
-            buf.position(buf.limit()); // simulate full write
-            return buf.limit();
+        when(mockChannel.write(any(ByteBuffer[].class), anyInt(), anyInt())).thenAnswer(invocation -> {
+            ByteBuffer[] bufs = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += bufs[i].remaining();
+                bufs[i].position(bufs[i].limit()); // simulate full write
+            }
+            return written;
         });
 
         Method handleWriteMethod = server.getClass()
@@ -105,4 +112,77 @@ public class ServerMainTest {
 
         assertTrue(clientContext.getWriteQueue().isEmpty());
     }
+
+    @Test
+    void testHandleReadReassemblesPipelinedAndPartialCommands() throws Exception {
+        String firstRead = "ADD abcd value1\nGET ab";
+        String secondRead = "cd\nHEARTBEAT\n";
+
+        when(mockChannel.read(any(ByteBuffer.class)))
+                .thenAnswer(invocation -> {
+                    ByteBuffer buf = invocation.getArgument(0);
+                    buf.put(firstRead.getBytes());
+                    return firstRead.length();
+                })
+                .thenAnswer(invocation -> {
+                    ByteBuffer buf = invocation.getArgument(0);
+                    buf.put(secondRead.getBytes());
+                    return secondRead.length();
+                });
+        when(mockChannel.getRemoteAddress()).thenReturn(new InetSocketAddress("127.0.0.1", 12345));
+
+        Method handleReadMethod = server.getClass()
+                .getDeclaredMethod(
+                        "handleRead",
+                        SelectionKey.class,
+                        Selector.class,
+                        SocketChannel.class,
+                        ServerMain.ClientContext.class
+                );
+        handleReadMethod.setAccessible(true);
+        handleReadMethod.invoke(server, mockKey, mockKey.selector(), mockChannel, clientContext);
+        handleReadMethod.invoke(server, mockKey, mockKey.selector(), mockChannel, clientContext);
+
+        long timeout = System.currentTimeMillis() + 1000; // wait up to 1 second
+        while (System.currentTimeMillis() < timeout) {
+            synchronized (clientContext) {
+                if (clientContext.getWriteQueue().size() == 3) break;
+            }
+            Thread.sleep(10); // brief wait before retrying
+        }
+
+        StringBuilder responses = new StringBuilder();
+        synchronized (clientContext) {
+            for (ByteBuffer buf : clientContext.getWriteQueue()) {
+                byte[] bytes = new byte[buf.remaining()];
+                buf.get(bytes);
+                responses.append(new String(bytes));
+            }
+        }
+        assertEquals("OK\nvalue1\nOK\n", responses.toString());
+    }
+
+    @Test
+    void testResponsesBeyondTheWriteQueueAreHeldInOrder() {
+        int capacity = ((WriteQueue) clientContext.getWriteQueue()).capacity();
+        for (int i = 0; i < capacity + 10; i++) {
+            clientContext.addWriteByteBuffer(ByteBuffer.wrap(Integer.toString(i).getBytes()));
+        }
+        assertEquals(capacity + 10, clientContext.backlog());
+
+        StringBuilder responses = new StringBuilder();
+        for (int round = 0; round < 2; round++) {
+            ByteBuffer buf;
+            while ((buf = clientContext.getWriteQueue().poll()) != null) {
+                responses.append(new String(buf.array())).append(',');
+            }
+            clientContext.queueHeld();
+        }
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < capacity + 10; i++) {
+            expected.append(i).append(',');
+        }
+        assertEquals(expected.toString(), responses.toString());
+        assertEquals(0, clientContext.backlog());
+    }
 }
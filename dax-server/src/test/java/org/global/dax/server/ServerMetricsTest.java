@@ -0,0 +1,129 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.BinaryProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerMetricsTest {
+    private ServerMain server;
+    private Socket socket;
+    private PrintWriter out;
+    private BufferedReader in;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server = new ServerMain(new ServerConfig().port(0));
+        Thread thread = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-test-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getLocalPort() > 0);
+
+        socket = new Socket("127.0.0.1", server.getLocalPort());
+        socket.setSoTimeout(5000);
+        out = new PrintWriter(socket.getOutputStream(), true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        socket.close();
+        server.stop();
+    }
+
+    private String send(String command) throws IOException {
+        out.println(command);
+        return in.readLine();
+    }
+
+    private Map<String, String> stats() throws IOException {
+        Map<String, String> stats = new HashMap<>();
+        for (String stat : send("STATS").split(" ")) {
+            String[] pair = stat.split("=");
+            stats.put(pair[0], pair[1]);
+        }
+        return stats;
+    }
+
+    @Test
+    void testStatsCountRequestsAndCacheHits() throws IOException {
+        assertEquals("OK", send("ADD abcd test"));
+        assertEquals("test", send("GET abcd"));
+        assertEquals("", send("GET efgh"));
+        assertEquals("OK", send("HEARTBEAT"));
+
+        Map<String, String> stats = stats();
+        assertEquals("1", stats.get("requests.add.count"));
+        assertEquals("2", stats.get("requests.get.count"));
+        assertEquals("1", stats.get("requests.heartbeat.count"));
+        assertEquals("0", stats.get("requests.delete.count"));
+        assertEquals("1", stats.get("cache.size"));
+        assertEquals("1", stats.get("cache.hits"));
+        assertEquals("1", stats.get("cache.misses"));
+        assertEquals("0.5", stats.get("cache.hit_ratio"));
+        assertEquals("1", stats.get("connections.active"));
+        assertTrue(Double.parseDouble(stats.get("requests.get.max_us")) > 0);
+        assertNotNull(stats.get("shard.7.size"));
+        assertNotNull(stats.get("executor.queue"));
+        assertNotNull(stats.get("selector.loop.p99_us"));
+    }
+
+    @Test
+    void testMetricsAreExposedThroughJmx() throws Exception {
+        assertEquals("OK", send("ADD abcd test"));
+
+        ObjectName name = new ObjectName("org.global.dax:type=Server,port=" + server.getLocalPort());
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "requests.add.count"));
+        assertEquals(1, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "cache.size"));
+
+        server.stop();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    void testCommandsAreClassified() {
+        assertEquals(ServerMetrics.Command.GET, ServerMetrics.Command.ofText("get abcd"));
+        assertEquals(ServerMetrics.Command.GET_ALL, ServerMetrics.Command.ofText("GET ALL"));
+        assertEquals(ServerMetrics.Command.GET_ALL, ServerMetrics.Command.ofText("GET ALL 10 0"));
+        assertEquals(ServerMetrics.Command.BATCH, ServerMetrics.Command.ofText("MADD a 1 b 2"));
+        assertEquals(ServerMetrics.Command.OTHER, ServerMetrics.Command.ofText("PUT a 1"));
+        assertEquals(ServerMetrics.Command.ADD, ServerMetrics.Command.ofOpcode(BinaryProtocol.OP_ADD_TTL));
+        assertEquals(ServerMetrics.Command.GET_ALL, ServerMetrics.Command.ofOpcode(BinaryProtocol.OP_SCAN));
+        assertEquals(ServerMetrics.Command.STATS, ServerMetrics.Command.ofOpcode(BinaryProtocol.OP_STATS));
+    }
+
+    @Test
+    void testHistogramPercentiles() {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        assertEquals(0, histogram.percentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        long p50 = histogram.percentile(50);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.125, "p50 " + p50);
+        assertEquals(1_000_000, histogram.percentile(100));
+    }
+}
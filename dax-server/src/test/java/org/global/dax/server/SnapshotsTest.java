@@ -0,0 +1,77 @@
+package org.global.dax.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotsTest {
+    @TempDir
+    Path directory;
+
+    private ServerMain start() {
+        ServerMain server = new ServerMain(new ServerConfig().port(0).snapshotDir(directory).snapshotInterval(Duration.ZERO));
+        Thread thread = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-test-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getLocalPort() > 0);
+        return server;
+    }
+
+    private static String send(ServerMain server, String command) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            new PrintWriter(socket.getOutputStream(), true).println(command);
+            return new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine();
+        }
+    }
+
+    @Test
+    void testRestartedServerIsWarm() throws IOException {
+        ServerMain first = start();
+        assertEquals("OK", send(first, "ADD abcd value"));
+        assertEquals("OK", send(first, "ADD efgh other 60000"));
+        first.stop();
+
+        ServerMain second = start();
+        try {
+            assertEquals("value", send(second, "GET abcd"));
+            assertEquals("other", send(second, "GET efgh"));
+            assertTrue(send(second, "STATS").contains("snapshot.loaded_entries=2"));
+        } finally {
+            second.stop();
+        }
+    }
+
+    @Test
+    void testServerThatNeverStartedKeepsTheSnapshot() throws IOException {
+        ServerMain first = start();
+        assertEquals("OK", send(first, "ADD abcd value"));
+        first.stop();
+
+        //stopped before it was started, it must not replace the snapshot with its empty cache
+        new ServerMain(new ServerConfig().port(0).snapshotDir(directory)).stop();
+
+        ServerMain second = start();
+        try {
+            assertEquals("value", send(second, "GET abcd"));
+        } finally {
+            second.stop();
+        }
+    }
+}
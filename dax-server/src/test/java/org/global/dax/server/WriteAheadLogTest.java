@@ -0,0 +1,287 @@
+package org.global.dax.server;
+
+import org.global.dax.shared.ShardedCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+    private static final long SEGMENT_BYTES = 4096;
+    private static final long COMPACT_BYTES = 4 * SEGMENT_BYTES;
+
+    @TempDir
+    Path directory;
+
+    private final List<ShardedCache> caches = new ArrayList<>();
+    private final List<WriteAheadLog> logs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        logs.forEach(WriteAheadLog::stop);
+        caches.forEach(ShardedCache::close);
+    }
+
+    private ShardedCache cache() {
+        ShardedCache cache = new ShardedCache();
+        caches.add(cache);
+        return cache;
+    }
+
+    private WriteAheadLog log(ShardedCache cache, WalAck ack) {
+        WriteAheadLog log = new WriteAheadLog(cache, directory, ack, SEGMENT_BYTES, COMPACT_BYTES);
+        logs.add(log);
+        return log;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    @Test
+    void testSyncedWritesAreReplayedAfterACrash() throws IOException, InterruptedException {
+        ShardedCache cache = cache();
+        WriteAheadLog log = log(cache, WalAck.DURABLE);
+        assertEquals(0, log.open(0));
+        for (int i = 0; i < 300; i++) {
+            cache.put(Integer.toString(i, 36), ("value" + i).getBytes());
+        }
+        cache.put("ttl", "value".getBytes(), 60_000);
+        cache.put("tmp", "value".getBytes(), 300);
+        assertTrue(cache.remove("0"));
+        assertEquals(2, cache.removeAll(List.of("1", "2")));
+        assertTrue(log.awaitDurable());
+
+        //the first log is never stopped, as after a crash
+        Thread.sleep(400);
+        ShardedCache restored = cache();
+        assertEquals(305, log(restored, WalAck.DURABLE).open(0));
+        assertEquals(298, restored.size());
+        assertEquals("value299", restored.get(Integer.toString(299, 36)));
+        assertNull(restored.get("0"));
+        assertNull(restored.get("2"));
+        assertEquals("value", restored.get("ttl"));
+        //expired while the server was down
+        assertNull(restored.get("tmp"));
+    }
+
+    @Test
+    void testDurableCallbackRunsOnceTheWriteIsSynced() throws Exception {
+        ShardedCache cache = cache();
+        WriteAheadLog log = log(cache, WalAck.DURABLE);
+        log.open(0);
+        cache.put("abcd", "value");
+
+        CompletableFuture<Boolean> synced = new CompletableFuture<>();
+        log.whenDurable(synced::complete);
+        assertTrue(synced.get(5, TimeUnit.SECONDS));
+        Map<String, Number> stats = new HashMap<>();
+        log.addStats(stats);
+        assertEquals(1L, stats.get("wal.durable_sequence").longValue());
+
+        //nothing left to wait for
+        CompletableFuture<Boolean> again = new CompletableFuture<>();
+        log.whenDurable(again::complete);
+        assertTrue(again.isDone());
+        assertTrue(log.admits());
+        assertFalse(log.isFailed());
+    }
+
+    @Test
+    void testFlusherFailureFailsTheWaitersInsteadOfHangingThem() throws Exception {
+        ShardedCache cache = cache();
+        WriteAheadLog log = log(cache, WalAck.DURABLE);
+        log.open(0);
+
+        //a callback that throws on the flusher does not keep it from answering the next one, one for a write that
+        //is already synced runs on the caller
+        Thread caller = Thread.currentThread();
+        AtomicBoolean thrown = new AtomicBoolean();
+        for (int i = 0; i < 1000 && !thrown.get(); i++) {
+            cache.put("abcd", "value" + i);
+            log.whenDurable(synced -> {
+                if (Thread.currentThread() != caller) {
+                    thrown.set(true);
+                    throw new IllegalStateException("callback failed");
+                }
+            });
+        }
+        await().atMost(Duration.ofSeconds(5)).until(thrown::get);
+        cache.put("efgh", "value");
+        CompletableFuture<Boolean> next = new CompletableFuture<>();
+        log.whenDurable(next::complete);
+        assertTrue(next.get(5, TimeUnit.SECONDS));
+
+        log.setCompactor(() -> {
+            throw new IllegalStateException("compaction failed");
+        });
+        for (int i = 0; i < 1000 && !log.isFailed(); i++) {
+            cache.put(Integer.toString(i, 36), new byte[100]);
+        }
+        await().atMost(Duration.ofSeconds(5)).until(log::isFailed);
+        CompletableFuture<Boolean> failed = new CompletableFuture<>();
+        log.whenDurable(failed::complete);
+        assertFalse(failed.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTornRecordAtTheEndIsCutOff() throws IOException {
+        ShardedCache cache = cache();
+        WriteAheadLog log = log(cache, WalAck.DURABLE);
+        log.open(0);
+        cache.put("abcd", "value");
+        assertTrue(log.awaitDurable());
+
+        List<Path> segments = segments();
+        Path last = segments.get(segments.size() - 1);
+        long length = Files.size(last);
+        Files.write(last, new byte[]{0, 0, 0, 99, 1, 2}, StandardOpenOption.APPEND);
+
+        ShardedCache restored = cache();
+        assertEquals(1, log(restored, WalAck.DURABLE).open(0));
+        assertEquals("value", restored.get("abcd"));
+        assertEquals(length, Files.size(last));
+    }
+
+    @Test
+    void testRecordsCoveredByTheSnapshotAreSkipped() throws IOException {
+        ShardedCache cache = cache();
+        WriteAheadLog log = log(cache, WalAck.RELAXED);
+        log.open(0);
+        cache.put("k1", "old");
+        long covered = log.appendedSequence();
+        cache.put("k2", "value");
+        log.stop();
+
+        ShardedCache restored = cache();
+        restored.put("k1", "snapshot");
+        assertEquals(1, log(restored, WalAck.RELAXED).open(covered));
+        assertEquals("snapshot", restored.get("k1"));
+        assertEquals("value", restored.get("k2"));
+    }
+
+    @Test
+    void testSnapshotsKeepTheLogBounded() throws IOException, InterruptedException {
+        ShardedCache cache = cache();
+        WriteAheadLog log = log(cache, WalAck.DURABLE);
+        Snapshots snapshots = new Snapshots(cache, directory, Duration.ZERO, log);
+        snapshots.load();
+        for (int i = 0; i < 3000; i++) {
+            cache.put("k" + (i % 100), ("value" + i).getBytes());
+            if (i % 100 == 99) {
+                assertTrue(log.awaitDurable());
+                Thread.sleep(10);
+            }
+        }
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> {
+            cache.put("k0", "last");
+            log.awaitDurable();
+            Map<String, Number> stats = new HashMap<>();
+            log.addStats(stats);
+            return stats.get("wal.bytes").longValue() <= COMPACT_BYTES;
+        });
+        Map<String, Number> stats = new HashMap<>();
+        log.addStats(stats);
+        assertTrue(stats.get("wal.compactions").longValue() > 0);
+        snapshots.stop();
+        log.stop();
+
+        ShardedCache restored = cache();
+        Snapshots reloaded = new Snapshots(restored, directory, Duration.ZERO, log(restored, WalAck.DURABLE));
+        reloaded.load();
+        assertEquals(100, restored.size());
+        assertEquals("last", restored.get("k0"));
+        assertEquals("value2999", restored.get("k99"));
+        reloaded.stop();
+    }
+
+    @ParameterizedTest
+    @EnumSource(ExecutionStrategy.class)
+    void testPipelinedDurableWritesKeepTheResponseOrder(ExecutionStrategy strategy) throws IOException {
+        ServerMain server = new ServerMain(new ServerConfig().port(0).execution(strategy).walDir(directory));
+        Thread thread = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-test-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getLocalPort() > 0);
+
+        try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            //the GET behind each ADD is answered after the ADD, which waits for its sync
+            StringBuilder requests = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                requests.append("ADD k").append(i).append(" v").append(i).append('\n');
+                requests.append("GET k").append(i).append('\n');
+            }
+            socket.getOutputStream().write(requests.toString().getBytes());
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            for (int i = 0; i < 200; i++) {
+                assertEquals("OK", in.readLine());
+                assertEquals("v" + i, in.readLine());
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void testServerAcknowledgesAfterTheSync() throws IOException {
+        ServerMain server = new ServerMain(new ServerConfig().port(0).walDir(directory));
+        Thread thread = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "dax-test-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+        await().atMost(Duration.ofSeconds(5)).until(() -> server.getLocalPort() > 0);
+
+        try (Socket socket = new Socket("127.0.0.1", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            for (int i = 0; i < 50; i++) {
+                out.println("ADD k" + i + " value");
+                assertEquals("OK", in.readLine());
+            }
+            out.println("STATS");
+            String stats = in.readLine();
+            assertTrue(stats.contains("wal.sequence=50"));
+            assertTrue(stats.contains("wal.durable_sequence=50"));
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.global.dax.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteQueueTest {
+
+    private static ByteBuffer buffer(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, value);
+    }
+
+    @Test
+    void testBuffersOfOneOfferStayTogetherAndInOrder() {
+        WriteQueue queue = new WriteQueue(8);
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer(new ByteBuffer[]{buffer(1), buffer(2)}));
+        assertTrue(queue.offer(buffer(3)));
+
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.peek().getInt(0));
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(i, queue.poll().getInt(0));
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testOfferFailsWhenTheBuffersDoNotAllFit() {
+        WriteQueue queue = new WriteQueue(4);
+        assertTrue(queue.offer(new ByteBuffer[]{buffer(1), buffer(2), buffer(3)}));
+        assertFalse(queue.offer(new ByteBuffer[]{buffer(4), buffer(5)}));
+        assertTrue(queue.offer(buffer(4)));
+        assertFalse(queue.offer(buffer(5)));
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    void testCapacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new WriteQueue(5).capacity());
+        assertEquals(8, new WriteQueue(8).capacity());
+    }
+
+    @Test
+    void testWrapsAroundTheRing() {
+        WriteQueue queue = new WriteQueue(4);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(new ByteBuffer[]{buffer(2 * i), buffer(2 * i + 1)}));
+            assertEquals(2 * i, queue.poll().getInt(0));
+            assertEquals(2 * i + 1, queue.poll().getInt(0));
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testIteratorStopsAtTheTailOfAFullRing() {
+        WriteQueue queue = new WriteQueue(4);
+        queue.offer(buffer(0));
+        queue.poll();
+        for (int i = 1; i <= 4; i++) {
+            queue.offer(buffer(i));
+        }
+
+        List<Integer> values = new ArrayList<>();
+        Iterator<ByteBuffer> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            values.add(iterator.next().getInt(0));
+        }
+        assertEquals(List.of(1, 2, 3, 4), values);
+    }
+
+    @Test
+    void testConcurrentProducersKeepTheirOwnOrder() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        WriteQueue queue = new WriteQueue(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    //two buffers per response, the consumer checks they arrive next to each other
+                    ByteBuffer[] response = {buffer(producer << 24 | i), buffer(producer << 24 | i)};
+                    while (!queue.offer(response)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        int[] next = new int[producers];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (int received = 0; received < producers * perProducer; ) {
+            assertTrue(System.nanoTime() < deadline, "producers did not finish");
+            ByteBuffer first = queue.poll();
+            if (first == null) {
+                Thread.yield();
+                continue;
+            }
+            ByteBuffer second;
+            while ((second = queue.poll()) == null) {
+                Thread.yield();
+            }
+            int value = first.getInt(0);
+            assertEquals(value, second.getInt(0));
+            assertEquals(next[value >>> 24]++, value & 0xFFFFFF);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,323 @@
+package org.global.dax.shared;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.global.dax.shared.Constants.*;
+
+/*
+ * Length-prefixed binary framing, negotiated per connection with the text command NEGOTIATE_COMMAND.
+ *
+ * request  = [opcode:1][key:MAX_KEY_SIZE][value length:4][value bytes]
+ * response = [status:1][payload length:4][payload bytes]
+ *
+ * Keys are always MAX_KEY_SIZE bytes on the wire, shorter keys are padded with trailing NUL bytes.
+ * A GET ALL payload is the concatenation of the fixed size keys.
+ * An ADD TTL value is [ttl millis:8][value bytes].
+ * A SCAN value is [page size:4][cursor:8], its payload is [next cursor:8] followed by the page of fixed size keys.
+ *
+ * Batches carry no key of their own, their value starts with [count:4]:
+ * MGET    = [count][key]*,                  payload [value length:4][value bytes]* with length -1 for a missing key
+ * MADD    = [count]([key][value length:4][value bytes])*
+ * MDELETE = [count][key]*,                  payload [removed:4]
+ *
+ * STATS carries no key or value, its payload is the UTF-8 text of the text protocol's STATS response.
+ */
+public final class BinaryProtocol {
+    public static final String NEGOTIATE_COMMAND = "PROTOCOL BINARY";
+
+    public static final byte OP_GET = 1;
+    public static final byte OP_ADD = 2;
+    public static final byte OP_DELETE = 3;
+    public static final byte OP_GET_ALL = 4;
+    public static final byte OP_HEARTBEAT = 5;
+    public static final byte OP_ADD_TTL = 6;
+    public static final byte OP_SCAN = 7;
+    public static final byte OP_MGET = 8;
+    public static final byte OP_MADD = 9;
+    public static final byte OP_MDELETE = 10;
+    public static final byte OP_STATS = 11;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_NOT_FOUND = 1;
+    public static final byte STATUS_ERROR = 2;
+    //the server had no room to run the request, it was not executed and may be retried
+    public static final byte STATUS_BUSY = 3;
+
+    public static final int REQUEST_HEADER_SIZE = 1 + MAX_KEY_SIZE + Integer.BYTES;
+    public static final int RESPONSE_HEADER_SIZE = 1 + Integer.BYTES;
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] NO_KEY = new byte[MAX_KEY_SIZE];
+
+    private BinaryProtocol() {
+    }
+
+    public static ByteBuffer encodeRequest(byte opcode, String key, byte[] value) {
+        byte[] keyBytes = key != null ? encodeKey(key) : NO_KEY;
+        byte[] valueBytes = value != null ? value : EMPTY;
+        if (valueBytes.length > MAX_VALUE_SIZE) {
+            throw new IllegalArgumentException("value too large");
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(REQUEST_HEADER_SIZE + valueBytes.length);
+        frame.put(opcode).put(keyBytes).putInt(valueBytes.length).put(valueBytes);
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeAddRequest(String key, byte[] value, long ttlMillis) {
+        if (value.length > MAX_VALUE_SIZE) {
+            throw new IllegalArgumentException("value too large");
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(REQUEST_HEADER_SIZE + Long.BYTES + value.length);
+        frame.put(OP_ADD_TTL).put(encodeKey(key)).putInt(Long.BYTES + value.length).putLong(ttlMillis).put(value);
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeScanRequest(long cursor, int pageSize) {
+        ByteBuffer frame = ByteBuffer.allocate(REQUEST_HEADER_SIZE + Integer.BYTES + Long.BYTES);
+        frame.put(OP_SCAN).put(NO_KEY).putInt(Integer.BYTES + Long.BYTES).putInt(pageSize).putLong(cursor);
+        return frame.flip();
+    }
+
+    //MGET or MDELETE
+    public static ByteBuffer encodeBatchRequest(byte opcode, List<String> keys) {
+        checkBatchSize(keys.size());
+        int valueLength = Integer.BYTES + keys.size() * MAX_KEY_SIZE;
+        ByteBuffer frame = allocateBatch(valueLength);
+        frame.put(opcode).put(NO_KEY).putInt(valueLength).putInt(keys.size());
+        keys.forEach(key -> frame.put(encodeKey(key)));
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeBatchAddRequest(Map<String, byte[]> entries) {
+        checkBatchSize(entries.size());
+        int valueLength = Integer.BYTES;
+        for (byte[] value : entries.values()) {
+            if (value.length > MAX_VALUE_SIZE) {
+                throw new IllegalArgumentException("value too large");
+            }
+            valueLength += MAX_KEY_SIZE + Integer.BYTES + value.length;
+        }
+
+        ByteBuffer frame = allocateBatch(valueLength);
+        frame.put(OP_MADD).put(NO_KEY).putInt(valueLength).putInt(entries.size());
+        entries.forEach((key, value) -> frame.put(encodeKey(key)).putInt(value.length).put(value));
+        return frame.flip();
+    }
+
+    private static void checkBatchSize(int count) {
+        if (count == 0 || count > MAX_BATCH_KEYS) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+    }
+
+    private static ByteBuffer allocateBatch(int valueLength) {
+        if (REQUEST_HEADER_SIZE + valueLength > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("batch too large");
+        }
+        return ByteBuffer.allocate(REQUEST_HEADER_SIZE + valueLength);
+    }
+
+    //the MGET payload, missing values are encoded with a length of -1
+    public static byte[] encodeValues(ByteBuffer[] values) {
+        int length = values.length * Integer.BYTES;
+        for (ByteBuffer value : values) {
+            length += value == null ? 0 : value.remaining();
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        for (ByteBuffer value : values) {
+            if (value == null) {
+                payload.putInt(-1);
+            } else {
+                payload.putInt(value.remaining()).put(value.duplicate());
+            }
+        }
+        return payload.array();
+    }
+
+    public static List<byte[]> decodeValues(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        List<byte[]> values = new ArrayList<>();
+        try {
+            while (buffer.hasRemaining()) {
+                int length = buffer.getInt();
+                byte[] value = length < 0 ? null : new byte[length];
+                if (value != null) {
+                    buffer.get(value);
+                }
+                values.add(value);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated value list", e);
+        }
+        return values;
+    }
+
+    public static ByteBuffer encodeResponse(byte status) {
+        return encodeResponse(status, EMPTY);
+    }
+
+    public static ByteBuffer encodeResponse(byte status, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(RESPONSE_HEADER_SIZE + payload.length);
+        frame.put(status).putInt(payload.length).put(payload);
+        return frame.flip();
+    }
+
+    //only the header, so a stored value can follow it as a separate buffer of a gathering write
+    public static ByteBuffer encodeResponseHeader(byte status, int payloadLength) {
+        ByteBuffer header = ByteBuffer.allocate(RESPONSE_HEADER_SIZE);
+        header.put(status).putInt(payloadLength);
+        return header.flip();
+    }
+
+    public static ByteBuffer encodeResponse(byte status, String payload) {
+        return encodeResponse(status, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static byte[] encodeKey(String key) {
+        byte[] raw = key.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("key too large");
+        }
+
+        byte[] padded = new byte[MAX_KEY_SIZE];
+        System.arraycopy(raw, 0, padded, 0, raw.length);
+        return padded;
+    }
+
+    public static String decodeKey(ByteBuffer buffer) {
+        byte[] raw = new byte[MAX_KEY_SIZE];
+        buffer.get(raw);
+
+        int length = MAX_KEY_SIZE;
+        while (length > 0 && raw[length - 1] == 0) {
+            length--;
+        }
+        return new String(raw, 0, length, StandardCharsets.UTF_8);
+    }
+
+    //translates an interactive text command into a binary request frame, values may contain spaces
+    public static ByteBuffer encodeCommand(String command) {
+        String[] parts = command.trim().split(" ", 3);
+        String name = parts[0].toUpperCase();
+
+        return switch (name) {
+            case "ADD" -> {
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Invalid ADD format");
+                }
+                yield encodeRequest(OP_ADD, parts[1], parts[2].getBytes(StandardCharsets.UTF_8));
+            }
+            case "GET" -> {
+                String[] args = command.trim().split(" ");
+                if (args.length > 2 && args[1].equalsIgnoreCase("ALL")) {
+                    yield encodeScanCommand(args);
+                }
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid GET format");
+                }
+                yield parts[1].trim().equalsIgnoreCase("ALL")
+                        ? encodeRequest(OP_GET_ALL, null, null)
+                        : encodeRequest(OP_GET, parts[1].trim(), null);
+            }
+            case "DELETE" -> {
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid DELETE format");
+                }
+                yield encodeRequest(OP_DELETE, parts[1].trim(), null);
+            }
+            case "MGET", "MDELETE" -> {
+                String[] args = command.trim().split(" ");
+                if (args.length < 2) {
+                    throw new IllegalArgumentException("Invalid " + name + " format");
+                }
+                yield encodeBatchRequest(name.equals("MGET") ? OP_MGET : OP_MDELETE, List.of(args).subList(1, args.length));
+            }
+            case "MADD" -> {
+                String[] args = command.trim().split(" ");
+                if (args.length < 3 || args.length % 2 == 0) {
+                    throw new IllegalArgumentException("Invalid MADD format");
+                }
+                Map<String, byte[]> entries = new LinkedHashMap<>();
+                for (int i = 1; i < args.length; i += 2) {
+                    entries.put(args[i], args[i + 1].getBytes(StandardCharsets.UTF_8));
+                }
+                yield encodeBatchAddRequest(entries);
+            }
+            case "HEARTBEAT" -> encodeRequest(OP_HEARTBEAT, null, null);
+            case "STATS" -> encodeRequest(OP_STATS, null, null);
+            default -> throw new IllegalArgumentException("Unknown command");
+        };
+    }
+
+    //GET ALL pageSize [cursor]
+    private static ByteBuffer encodeScanCommand(String[] args) {
+        if (args.length > 4) {
+            throw new IllegalArgumentException("Invalid GET ALL format");
+        }
+
+        try {
+            return encodeScanRequest(args.length == 4 ? Long.parseLong(args[3]) : 0, Integer.parseInt(args[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid GET ALL format");
+        }
+    }
+
+    public static byte[] encodeKeyPage(KeyPage page) {
+        ByteBuffer payload = ByteBuffer.allocate(Long.BYTES + page.keys().size() * MAX_KEY_SIZE);
+        payload.putLong(page.cursor());
+        page.keys().forEach(k -> payload.put(encodeKey(k)));
+        return payload.array();
+    }
+
+    public static KeyPage decodeKeyPage(byte[] payload) {
+        if (payload.length < Long.BYTES) {
+            throw new IllegalArgumentException("Truncated key page");
+        }
+        long cursor = ByteBuffer.wrap(payload).getLong();
+        return new KeyPage(decodeKeys(Arrays.copyOfRange(payload, Long.BYTES, payload.length)), cursor);
+    }
+
+    public static List<String> decodeKeys(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        List<String> keys = new ArrayList<>(payload.length / MAX_KEY_SIZE);
+        try {
+            while (buffer.hasRemaining()) {
+                keys.add(decodeKey(buffer));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated key list", e);
+        }
+        return keys;
+    }
+
+    //renders a binary response the same way the text protocol would have answered the request
+    public static String formatResponse(byte opcode, byte status, byte[] payload) {
+        return switch (status) {
+            case STATUS_OK -> switch (opcode) {
+                case OP_GET -> new String(payload, StandardCharsets.UTF_8);
+                case OP_GET_ALL -> String.join(",", decodeKeys(payload));
+                case OP_SCAN -> ProtocolUtils.formatKeyPage(decodeKeyPage(payload));
+                case OP_MGET -> decodeValues(payload).stream()
+                        .map(value -> value == null ? "" : new String(value, StandardCharsets.UTF_8))
+                        .collect(Collectors.joining(" "));
+                case OP_MDELETE -> String.valueOf(ByteBuffer.wrap(payload).getInt());
+                case OP_STATS -> new String(payload, StandardCharsets.UTF_8);
+                default -> "OK";
+            };
+            case STATUS_NOT_FOUND -> opcode == OP_DELETE ? "ERROR Invalid key" : "";
+            case STATUS_BUSY -> "BUSY";
+            default -> "ERROR " + new String(payload, StandardCharsets.UTF_8);
+        };
+    }
+}
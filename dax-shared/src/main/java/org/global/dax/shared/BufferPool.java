@@ -0,0 +1,115 @@
+package org.global.dax.shared;
+
+import java.nio.ByteBuffer;
+
+import static org.global.dax.shared.Constants.BUFFER_SIZE;
+import static org.global.dax.shared.Constants.MAX_FRAME_SIZE;
+
+/*
+ * Size-class pool of direct ByteBuffers for socket I/O. Classes double from BUFFER_SIZE up to twice MAX_FRAME_SIZE,
+ * so a buffer is at most twice what was asked for. Released buffers are kept per class and handed out again, which
+ * spares connections the cost of allocating and freeing native memory as they come and go.
+ *
+ * The bytes of every buffer the pool has created, idle or in use, stay within its capacity: when a new buffer would
+ * exceed it, idle buffers of other classes are dropped to make room, and only when that is not enough is the request
+ * refused. Safe for concurrent use.
+ */
+public final class BufferPool {
+    static final int MIN_BUFFER_SIZE = BUFFER_SIZE;
+    static final int MAX_BUFFER_SIZE = 2 * MAX_FRAME_SIZE;
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1;
+
+    private final long capacity;
+    //idle buffers per class, used as stacks so the most recently used (and likely still cached) buffer goes first
+    private final ByteBuffer[][] idle = new ByteBuffer[CLASSES][16];
+    private final int[] idleCount = new int[CLASSES];
+    private long allocatedBytes;
+    private long inUseBytes;
+    private long exhausted;
+
+    public BufferPool(long capacity) {
+        if (capacity < MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException("capacity must hold at least one buffer of " + MAX_BUFFER_SIZE + " bytes");
+        }
+        this.capacity = capacity;
+    }
+
+    static int sizeClass(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        else if (size > MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException("buffer too large");
+        }
+        return Integer.SIZE - Integer.numberOfLeadingZeros((size - 1) / MIN_BUFFER_SIZE);
+    }
+
+    //a cleared buffer of at least size bytes, or null when creating one would exceed the capacity
+    public synchronized ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        int classSize = MIN_BUFFER_SIZE << sizeClass;
+        ByteBuffer buffer;
+        if (idleCount[sizeClass] > 0) {
+            buffer = idle[sizeClass][--idleCount[sizeClass]];
+            idle[sizeClass][idleCount[sizeClass]] = null;
+        }
+        else {
+            if (allocatedBytes + classSize > capacity && !dropIdle(allocatedBytes + classSize - capacity)) {
+                exhausted++;
+                return null;
+            }
+            buffer = ByteBuffer.allocateDirect(classSize);
+            allocatedBytes += classSize;
+        }
+        inUseBytes += classSize;
+        return buffer;
+    }
+
+    //the buffer must come from acquire and must not be used by the caller afterwards
+    public synchronized void release(ByteBuffer buffer) {
+        int sizeClass = sizeClass(buffer.capacity());
+        if (idleCount[sizeClass] == idle[sizeClass].length) {
+            ByteBuffer[] grown = new ByteBuffer[idle[sizeClass].length * 2];
+            System.arraycopy(idle[sizeClass], 0, grown, 0, idleCount[sizeClass]);
+            idle[sizeClass] = grown;
+        }
+        idle[sizeClass][idleCount[sizeClass]++] = buffer.clear();
+        inUseBytes -= buffer.capacity();
+    }
+
+    //drops idle buffers, largest first, until at least bytes are freed, the garbage collector frees their memory
+    private boolean dropIdle(long bytes) {
+        long idleBytes = allocatedBytes - inUseBytes;
+        if (idleBytes < bytes) {
+            return false;
+        }
+
+        long dropped = 0;
+        for (int sizeClass = CLASSES - 1; sizeClass >= 0 && dropped < bytes; sizeClass--) {
+            while (idleCount[sizeClass] > 0 && dropped < bytes) {
+                idle[sizeClass][--idleCount[sizeClass]] = null;
+                dropped += MIN_BUFFER_SIZE << sizeClass;
+            }
+        }
+        allocatedBytes -= dropped;
+        return true;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    //bytes of the buffers created and not dropped, idle or in use
+    public synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long inUseBytes() {
+        return inUseBytes;
+    }
+
+    //requests refused because the pool was at its capacity
+    public synchronized long exhaustedCount() {
+        return exhausted;
+    }
+}
@@ -0,0 +1,66 @@
+package org.global.dax.shared;
+
+import static org.global.dax.shared.Constants.NUM_SHARDS;
+import static org.global.dax.shared.Constants.SHARD_CAPACITY_BYTES;
+
+/*
+ * ShardedCache settings, read from -Ddax.* system properties when the server is started from the command line.
+ */
+public final class CacheConfig {
+    private StorageEngine storageEngine = StorageEngine.HEAP;
+    private int shardCount = NUM_SHARDS;
+    private long shardCapacityBytes = SHARD_CAPACITY_BYTES;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.CLOCK;
+
+    public static CacheConfig fromSystemProperties() {
+        return new CacheConfig()
+                .storageEngine(StorageEngine.valueOf(System.getProperty("dax.storage", "HEAP").toUpperCase()))
+                .shardCount(Integer.getInteger("dax.shards", NUM_SHARDS))
+                .shardCapacityBytes(Long.getLong("dax.shard.capacity", SHARD_CAPACITY_BYTES))
+                .evictionPolicy(EvictionPolicy.valueOf(System.getProperty("dax.eviction", "CLOCK").toUpperCase()));
+    }
+
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
+    public CacheConfig storageEngine(StorageEngine storageEngine) {
+        this.storageEngine = storageEngine;
+        return this;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public CacheConfig shardCount(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    //the byte budget of a single shard at start, entries are evicted beyond it; off-heap it bounds the reserved slabs.
+    //A resize splits the total, this times the shard count, evenly over the new count
+    public long getShardCapacityBytes() {
+        return shardCapacityBytes;
+    }
+
+    public CacheConfig shardCapacityBytes(long shardCapacityBytes) {
+        if (shardCapacityBytes <= 0) {
+            throw new IllegalArgumentException("shardCapacityBytes must be positive");
+        }
+        this.shardCapacityBytes = shardCapacityBytes;
+        return this;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public CacheConfig evictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+}
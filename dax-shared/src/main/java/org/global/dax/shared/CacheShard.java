@@ -0,0 +1,88 @@
+package org.global.dax.shared;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+//one partition of a ShardedCache keyed on packed keys (see Keys), every implementation is safe for concurrent use
+interface CacheShard {
+    @FunctionalInterface
+    interface EntryConsumer {
+        //expiresAt is a deadline on the ExpiryReaper clock, 0 never expires
+        void accept(int key, ByteBuffer value, long expiresAt);
+    }
+
+    //a read-only view of the stored bytes, or null
+    ByteBuffer get(int key);
+
+    //takes ownership of the array, the caller must not modify it afterwards
+    default void put(int key, byte[] value) {
+        put(key, value, 0);
+    }
+
+    //expiresAt is a deadline on the ExpiryReaper clock, 0 never expires
+    void put(int key, byte[] value, long expiresAt);
+
+    //false for a key that is absent or already expired
+    boolean remove(int key);
+
+    //batches visit the shard once, an engine guarded by a lock takes it once for the whole batch
+    //values[i] is the value of keys[i], or null
+    default void get(int[] keys, ByteBuffer[] values) {
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = get(keys[i]);
+        }
+    }
+
+    //not atomic, a failing put leaves the entries before it stored
+    default void put(int[] keys, byte[][] values) {
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    //the number of live keys removed
+    default int remove(int[] keys) {
+        int removed = 0;
+        for (int key : keys) {
+            if (remove(key)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    //called by the reaper, removes the entry only if it still carries this deadline
+    void expire(int key, long deadline);
+
+    //visits every live key once, entries changed while the shard is visited may or may not be seen
+    void forEachKey(IntConsumer consumer);
+
+    //the same for the entries, the consumer runs under the shard's locks and must not call back into the shard
+    void forEachEntry(EntryConsumer consumer);
+
+    //only the entries whose keys lie between from and to in unsigned order, both included
+    void forEachEntry(long from, long to, EntryConsumer consumer);
+
+    default Set<String> keys() {
+        Set<String> keys = new HashSet<>(size() * 2);
+        forEachKey(packed -> keys.add(Keys.unpack(packed)));
+        return keys;
+    }
+
+    //lowers the byte budget when a resize splits the cache's budget over more shards, evicting what no longer fits
+    void shrink(long capacity);
+
+    //may include expired entries that have not been reclaimed yet
+    int size();
+
+    //bytes counted against the shard's budget
+    long memoryUsed();
+
+    //entries dropped to stay within the budget since the shard was created
+    long evictions();
+
+    //expired entries reclaimed since the shard was created
+    long expirations();
+}
@@ -0,0 +1,339 @@
+package org.global.dax.shared;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+import static org.global.dax.shared.Constants.MAX_VALUE_SIZE;
+
+/*
+ * Point in time copy of a ShardedCache on disk, one file per shard written and read through memory mapped windows.
+ *
+ * file  = [magic:4][version:4][entry count:4][written at epoch millis:8] entry*
+ * entry = [packed key:4][expires at epoch millis:8, 0 for never][value length:4][value bytes]
+ *
+ * A shard is copied out a batch of entries at a time and each batch is written once the shard's locks are released,
+ * so writes carry on throughout. An entry present for the whole snapshot is in it once, one written meanwhile may or
+ * may not be; a resize while the snapshot is written makes it start over. The files of a snapshot are written to a
+ * directory of their own that replaces the previous snapshot once all of them are complete, a crash midway leaves
+ * the previous snapshot in place.
+ * Expiry deadlines are stored as wall clock times, an entry that expired while the server was down is not loaded.
+ *
+ * A snapshot may record the sequence of a write-ahead log it covers, in a file of its own next to the shard files:
+ * sequence = [magic:4][version:4][log sequence:8]
+ */
+public final class CacheSnapshot {
+    private static final int MAGIC = 0x44415853; //DAXS
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+    private static final int ENTRY_HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    //files are read this much at a time, a mapping cannot exceed 2 GB and a window keeps the address space small;
+    //a writer maps one batch of entries at a time instead
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+    //entries copied out of a shard at a time
+    private static final int BATCH_ENTRIES = 4096;
+    private static final String CURRENT = "snapshot";
+    private static final String PENDING = "snapshot.tmp";
+    private static final String PREVIOUS = "snapshot.old";
+    private static final String SEQUENCE = "log.sequence";
+
+    //an entry of a batch, written to the file once the shard's locks are released
+    private record Entry(String key, ByteBuffer value, long ttlMillis) {
+    }
+
+    private CacheSnapshot() {
+    }
+
+    //entries written, shard by shard
+    public static long write(ShardedCache cache, Path directory) throws IOException {
+        return write(cache, directory, 0);
+    }
+
+    //logSequence is the last log record whose mutation was applied to the cache before the snapshot started,
+    //every mutation up to it is in the snapshot, later ones may or may not be
+    public static long write(ShardedCache cache, Path directory, long logSequence) throws IOException {
+        Files.createDirectories(directory);
+        Path pending = directory.resolve(PENDING);
+
+        long entries;
+        do {
+            deleteRecursively(pending);
+            Files.createDirectories(pending);
+            entries = writeShards(cache, pending);
+        } while (entries < 0);
+        writeSequence(pending.resolve(SEQUENCE), logSequence);
+
+        //the old snapshot is only removed once the new one is complete, load falls back to it in between
+        Path current = directory.resolve(CURRENT);
+        Path previous = directory.resolve(PREVIOUS);
+        deleteRecursively(previous);
+        if (Files.exists(current)) {
+            Files.move(current, previous, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(pending, current, StandardCopyOption.ATOMIC_MOVE);
+        //the rename must be on disk before the caller relies on it, e.g. by deleting the log the snapshot covers
+        syncDirectory(current);
+        syncDirectory(directory);
+        deleteRecursively(previous);
+        return entries;
+    }
+
+    //entries loaded, the shard files are read in parallel, -1 when the directory holds no snapshot
+    public static long load(ShardedCache cache, Path directory) throws IOException {
+        Path snapshot = locate(directory);
+        if (snapshot == null) {
+            return -1;
+        }
+
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(snapshot)) {
+            files = listed.filter(file -> file.getFileName().toString().endsWith(".dax")).sorted().toList();
+        }
+
+        //the cache's shard count may have changed, every entry is put to wherever its key belongs now
+        ExecutorService loaders = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Long>> loaded = new ArrayList<>();
+            for (Path file : files) {
+                loaded.add(loaders.submit(() -> loadShard(cache, file)));
+            }
+            long entries = 0;
+            for (Future<Long> shard : loaded) {
+                entries += shard.get();
+            }
+            return entries;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the snapshot", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Failed to load the snapshot", e.getCause());
+        } finally {
+            loaders.shutdownNow();
+        }
+    }
+
+    //the log sequence the snapshot load would read covers, 0 when there is no snapshot or it recorded none
+    public static long logSequence(Path directory) throws IOException {
+        Path snapshot = locate(directory);
+        if (snapshot == null || !Files.exists(snapshot.resolve(SEQUENCE))) {
+            return 0;
+        }
+        ByteBuffer sequence = ByteBuffer.wrap(Files.readAllBytes(snapshot.resolve(SEQUENCE)));
+        if (sequence.remaining() != 2 * Integer.BYTES + Long.BYTES || sequence.getInt() != MAGIC
+                || sequence.getInt() != VERSION) {
+            throw new IOException("Corrupt log sequence in the snapshot " + snapshot);
+        }
+        return sequence.getLong();
+    }
+
+    private static Path locate(Path directory) {
+        Path snapshot = directory.resolve(CURRENT);
+        if (!Files.isDirectory(snapshot)) {
+            //a crash between swapping the directories
+            snapshot = directory.resolve(PREVIOUS);
+            if (!Files.isDirectory(snapshot)) {
+                return null;
+            }
+        }
+        return snapshot;
+    }
+
+    private static void writeSequence(Path file, long logSequence) throws IOException {
+        ByteBuffer sequence = ByteBuffer.allocate(2 * Integer.BYTES + Long.BYTES)
+                .putInt(MAGIC).putInt(VERSION).putLong(logSequence).flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (sequence.hasRemaining()) {
+                channel.write(sequence);
+            }
+            channel.force(true);
+        }
+    }
+
+    //entries written, -1 when the shard count changed meanwhile
+    private static long writeShards(ShardedCache cache, Path pending) throws IOException {
+        int shardCount = cache.getShardCount();
+        long entries = 0;
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            long written = writeShard(cache, shardCount, shardIndex, pending.resolve("shard-" + shardIndex + ".dax"));
+            if (written < 0) {
+                return -1;
+            }
+            entries += written;
+        }
+        return entries;
+    }
+
+    private static long writeShard(ShardedCache cache, int shardCount, int shardIndex, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC).putInt(VERSION).putInt(0).putLong(System.currentTimeMillis()).flip();
+            writeFully(channel, header, 0);
+            MappedWindow out = new MappedWindow(channel, FileChannel.MapMode.READ_WRITE, HEADER_SIZE);
+
+            long now = System.currentTimeMillis();
+            int entries = 0;
+            List<Entry> batch = new ArrayList<>(BATCH_ENTRIES);
+            Lock shardCountLock = cache.shardCountLock();
+            for (long position = 0; position >= 0; ) {
+                //a resize moving entries between shards already written and shards still to write waits for the
+                //batch, and one that got in between batches is noticed here
+                shardCountLock.lock();
+                try {
+                    if (cache.getShardCount() != shardCount) {
+                        return -1;
+                    }
+                    position = cache.forEachEntry(shardIndex, position, BATCH_ENTRIES,
+                            (key, value, ttlMillis) -> batch.add(new Entry(key, value, ttlMillis)));
+                } finally {
+                    shardCountLock.unlock();
+                }
+
+                long bytes = 0;
+                for (Entry entry : batch) {
+                    bytes += ENTRY_HEADER_SIZE + entry.value().remaining();
+                }
+                out.ensure(bytes);
+                for (Entry entry : batch) {
+                    ByteBuffer value = entry.value().duplicate();
+                    out.buffer.putInt(Keys.pack(entry.key()))
+                            .putLong(entry.ttlMillis() > 0 ? now + entry.ttlMillis() : 0)
+                            .putInt(value.remaining())
+                            .put(value);
+                    entries++;
+                }
+                batch.clear();
+            }
+
+            out.force();
+            //the count is only known at the end, a file without it reads as empty
+            writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt(0, entries), 2 * Integer.BYTES);
+            channel.force(true);
+            return entries;
+        }
+    }
+
+    private static long loadShard(ShardedCache cache, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedWindow in = new MappedWindow(channel, FileChannel.MapMode.READ_ONLY, 0);
+            in.ensure(Math.min(size, HEADER_SIZE));
+            if (size < HEADER_SIZE || in.buffer.getInt() != MAGIC || in.buffer.getInt() != VERSION) {
+                throw new IOException("Not a snapshot file " + file);
+            }
+            int count = in.buffer.getInt();
+            in.buffer.getLong();
+
+            long now = System.currentTimeMillis();
+            long loaded = 0;
+            for (int i = 0; i < count; i++) {
+                in.ensure(Math.min(size - in.position(), ENTRY_HEADER_SIZE));
+                int packed = in.buffer.getInt();
+                long expiresAt = in.buffer.getLong();
+                int length = in.buffer.getInt();
+                if (length < 0 || length > MAX_VALUE_SIZE || in.position() + length > size) {
+                    throw new IOException("Corrupt entry " + i + " in the snapshot file " + file);
+                }
+                in.ensure(length);
+                byte[] value = new byte[length];
+                in.buffer.get(value);
+
+                if (expiresAt == 0) {
+                    cache.put(Keys.unpack(packed), value);
+                    loaded++;
+                } else if (expiresAt > now) {
+                    cache.put(Keys.unpack(packed), value, expiresAt - now);
+                    loaded++;
+                }
+            }
+            return loaded;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot file " + file, e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    //makes the entries of a directory survive a crash, on file systems that support syncing a directory
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path file : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    //a window of the file mapped at a time, moved forward whenever the next read or write would not fit in it
+    private static final class MappedWindow {
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private long windowStart;
+        private MappedByteBuffer buffer;
+
+        MappedWindow(FileChannel channel, FileChannel.MapMode mode, long start) {
+            this.channel = channel;
+            this.mode = mode;
+            this.windowStart = start;
+        }
+
+        long position() {
+            return buffer == null ? windowStart : windowStart + buffer.position();
+        }
+
+        //mapping past the end of a file opened for writing grows it, so a writer maps exactly what it is about to
+        //write and the file never needs truncating, which fails while a mapping of it is live on some platforms
+        void ensure(long bytes) throws IOException {
+            if (buffer != null && buffer.remaining() >= bytes) {
+                return;
+            }
+            long start = position();
+            if (buffer != null && mode == FileChannel.MapMode.READ_WRITE) {
+                buffer.force();
+            }
+            long length = mode == FileChannel.MapMode.READ_ONLY
+                    ? Math.min(WINDOW_BYTES, channel.size() - start)
+                    : bytes;
+            windowStart = start;
+            buffer = channel.map(mode, start, Math.max(length, bytes));
+        }
+
+        void force() {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+    }
+}
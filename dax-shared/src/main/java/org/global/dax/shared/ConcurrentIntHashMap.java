@@ -0,0 +1,453 @@
+package org.global.dax.shared;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/*
+ * Concurrent open-addressing int -> V map for packed keys. The table is split into independently locked segments;
+ * writers take the segment's write lock, readers probe under an optimistic stamp and only fall back to the read
+ * lock when a write raced with them, so a get neither blocks nor allocates. Each entry costs an int key, an int
+ * of eviction policy metadata, a long expiry deadline and a reference, there are no nodes or boxed keys.
+ * Null values are not allowed.
+ *
+ * Entries past their deadline (see ExpiryReaper.now(), 0 never expires) are invisible to get and forEach but stay
+ * in the table until expire reclaims them.
+ */
+final class ConcurrentIntHashMap<V> {
+    private static final int SEGMENTS = 16;
+    private static final int SEGMENT_SHIFT = 32 - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final int INITIAL_CAPACITY = 16;
+
+    @FunctionalInterface
+    interface EntryConsumer<V> {
+        void accept(int key, V value, long expiresAt);
+    }
+
+    //arrays and mask are replaced together on resize, so a reader always sees a matching set
+    private static final class Table {
+        private final int[] keys;
+        private final Object[] values;
+        private final int[] meta;
+        private final long[] expiries;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+            this.meta = new int[capacity];
+            this.expiries = new long[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    private static final class Segment implements EvictionSlots {
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table = new Table(INITIAL_CAPACITY);
+        //0 marks a free slot, so the key 0 (the empty key) is kept aside and never evicted
+        private volatile Object zeroValue;
+        private volatile long zeroExpiresAt;
+        private volatile int size;
+        private int hand;
+
+        @Override
+        public int slotCount() {
+            return table.keys.length;
+        }
+
+        @Override
+        public boolean isCandidate(int slot) {
+            return table.keys[slot] != 0;
+        }
+
+        @Override
+        public int meta(int slot) {
+            return table.meta[slot];
+        }
+
+        @Override
+        public void setMeta(int slot, int meta) {
+            table.meta[slot] = meta;
+        }
+
+        @Override
+        public int hand() {
+            return hand;
+        }
+
+        @Override
+        public void setHand(int hand) {
+            this.hand = hand;
+        }
+    }
+
+    private final EvictionPolicy policy;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    ConcurrentIntHashMap() {
+        this(EvictionPolicy.CLOCK);
+    }
+
+    ConcurrentIntHashMap(EvictionPolicy policy) {
+        this.policy = policy;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int hash = hash(key);
+        Segment segment = segments[hash >>> SEGMENT_SHIFT];
+        if (key == 0) {
+            Object value = segment.zeroValue;
+            return isExpired(segment.zeroExpiresAt) ? null : (V) value;
+        }
+
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Table table = segment.table;
+            int slot = find(table, key, hash);
+            Object value = slot < 0 ? null : table.values[slot];
+            if (segment.lock.validate(stamp)) {
+                if (slot >= 0) {
+                    recordAccess(segment, table, slot, key);
+                }
+                return (V) value;
+            }
+        }
+
+        stamp = segment.lock.readLock();
+        try {
+            Table table = segment.table;
+            int slot = find(table, key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            recordAccess(table, slot);
+            return (V) table.values[slot];
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    //after an optimistic read the slot may already hold another key, so the access is recorded under the read lock
+    //and only if the key is still there; skipped rather than waited for while a writer holds the segment
+    private void recordAccess(Segment segment, Table table, int slot, int key) {
+        if (policy.recordAccess(table.meta[slot]) == table.meta[slot]) {
+            return;
+        }
+        long stamp = segment.lock.tryReadLock();
+        if (stamp == 0) {
+            return;
+        }
+        try {
+            if (segment.table == table && table.keys[slot] == key) {
+                recordAccess(table, slot);
+            }
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    //a plain store, and only when it changes anything, so reads stay cheap; callers hold a lock of the segment
+    private void recordAccess(Table table, int slot) {
+        int accessed = policy.recordAccess(table.meta[slot]);
+        if (accessed != table.meta[slot]) {
+            table.meta[slot] = accessed;
+        }
+    }
+
+    //returns the previous value, expired or not, or null
+    V put(int key, V value) {
+        return put(key, value, 0);
+    }
+
+    //expiresAt is a deadline on the ExpiryReaper clock, 0 never expires; overwriting replaces the deadline
+    @SuppressWarnings("unchecked")
+    V put(int key, V value, long expiresAt) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int hash = hash(key);
+        Segment segment = segments[hash >>> SEGMENT_SHIFT];
+
+        long stamp = segment.lock.writeLock();
+        try {
+            if (key == 0) {
+                Object previous = segment.zeroValue;
+                segment.zeroExpiresAt = expiresAt;
+                segment.zeroValue = value;
+                if (previous == null) {
+                    segment.size++;
+                }
+                return (V) previous;
+            }
+
+            Table table = segment.table;
+            for (int i = hash & table.mask; ; i = (i + 1) & table.mask) {
+                int candidate = table.keys[i];
+                if (candidate == key) {
+                    Object previous = table.values[i];
+                    table.values[i] = value;
+                    table.expiries[i] = expiresAt;
+                    table.meta[i] = policy.recordAccess(table.meta[i]);
+                    return (V) previous;
+                }
+                if (candidate == 0) {
+                    table.values[i] = value;
+                    table.expiries[i] = expiresAt;
+                    table.meta[i] = policy.initialMeta();
+                    table.keys[i] = key;
+                    //keep the load factor at or below one half so probe sequences stay short
+                    if (++segment.size * 2 > table.keys.length) {
+                        segment.table = rehash(table, table.keys.length * 2);
+                    }
+                    return null;
+                }
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    //returns the removed value, expired or not, or null
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int hash = hash(key);
+        Segment segment = segments[hash >>> SEGMENT_SHIFT];
+
+        long stamp = segment.lock.writeLock();
+        try {
+            if (key == 0) {
+                Object previous = segment.zeroValue;
+                segment.zeroValue = null;
+                if (previous != null) {
+                    segment.size--;
+                }
+                return (V) previous;
+            }
+
+            Table table = segment.table;
+            for (int i = hash & table.mask; ; i = (i + 1) & table.mask) {
+                int candidate = table.keys[i];
+                if (candidate == 0) {
+                    return null;
+                }
+                if (candidate == key) {
+                    return (V) removeAt(segment, table, i);
+                }
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    //removes the entry, expired or not, and hands its value to removed under the segment's write lock; returns
+    //whether the removed entry was live, decided by its own deadline so a racing put cannot be mistaken for it
+    @SuppressWarnings("unchecked")
+    boolean remove(int key, Consumer<V> removed) {
+        int hash = hash(key);
+        Segment segment = segments[hash >>> SEGMENT_SHIFT];
+
+        long stamp = segment.lock.writeLock();
+        try {
+            if (key == 0) {
+                Object previous = segment.zeroValue;
+                if (previous == null) {
+                    return false;
+                }
+                segment.zeroValue = null;
+                segment.size--;
+                removed.accept((V) previous);
+                return !isExpired(segment.zeroExpiresAt);
+            }
+
+            Table table = segment.table;
+            for (int i = hash & table.mask; ; i = (i + 1) & table.mask) {
+                int candidate = table.keys[i];
+                if (candidate == 0) {
+                    return false;
+                }
+                if (candidate == key) {
+                    boolean live = !isExpired(table.expiries[i]);
+                    removed.accept((V) removeAt(segment, table, i));
+                    return live;
+                }
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    //removes the entry only if it still carries the deadline it was scheduled with, returns its value or null
+    @SuppressWarnings("unchecked")
+    V expire(int key, long deadline) {
+        int hash = hash(key);
+        Segment segment = segments[hash >>> SEGMENT_SHIFT];
+
+        long stamp = segment.lock.writeLock();
+        try {
+            if (key == 0) {
+                Object previous = segment.zeroValue;
+                if (previous == null || segment.zeroExpiresAt != deadline) {
+                    return null;
+                }
+                segment.zeroValue = null;
+                segment.size--;
+                return (V) previous;
+            }
+
+            Table table = segment.table;
+            for (int i = hash & table.mask; ; i = (i + 1) & table.mask) {
+                int candidate = table.keys[i];
+                if (candidate == 0) {
+                    return null;
+                }
+                if (candidate == key) {
+                    //overwritten since, with another deadline or none
+                    return table.expiries[i] == deadline ? (V) removeAt(segment, table, i) : null;
+                }
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    //removes the entry the policy picks, returns its value or null when empty; the segment is chosen in proportion
+    //to its size so no segment is drained faster than the others
+    @SuppressWarnings("unchecked")
+    V evict() {
+        int total = size();
+        int start = 0;
+        if (total > 0) {
+            int target = ThreadLocalRandom.current().nextInt(total);
+            while (start < SEGMENTS - 1 && target >= segments[start].size) {
+                target -= segments[start].size;
+                start++;
+            }
+        }
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            Segment segment = segments[(start + i) & (SEGMENTS - 1)];
+            if (segment.size == 0) {
+                continue;
+            }
+
+            long stamp = segment.lock.writeLock();
+            try {
+                int victim = policy.victim(segment);
+                if (victim >= 0) {
+                    return (V) removeAt(segment, segment.table, victim);
+                }
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    //weakly consistent, every segment is visited under its read lock, expired entries are skipped
+    @SuppressWarnings("unchecked")
+    void forEach(EntryConsumer<V> consumer) {
+        long now = ExpiryReaper.now();
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Object zeroValue = segment.zeroValue;
+                if (zeroValue != null && !isExpired(segment.zeroExpiresAt, now)) {
+                    consumer.accept(0, (V) zeroValue, segment.zeroExpiresAt);
+                }
+                Table table = segment.table;
+                for (int i = 0; i < table.keys.length; i++) {
+                    if (table.keys[i] != 0 && !isExpired(table.expiries[i], now)) {
+                        consumer.accept(table.keys[i], (V) table.values[i], table.expiries[i]);
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    //the slot of the live entry, or -1; a racing writer may show the reader a torn table, so the probe is bounded
+    //and nothing is written, validation rejects the result
+    private static int find(Table table, int key, int hash) {
+        int[] keys = table.keys;
+        for (int i = hash & table.mask, probes = 0; probes < keys.length; i = (i + 1) & table.mask, probes++) {
+            int candidate = keys[i];
+            if (candidate == key) {
+                return isExpired(table.expiries[i]) ? -1 : i;
+            }
+            if (candidate == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isExpired(long expiresAt) {
+        return expiresAt != 0 && expiresAt <= ExpiryReaper.now();
+    }
+
+    private static boolean isExpired(long expiresAt, long now) {
+        return expiresAt != 0 && expiresAt <= now;
+    }
+
+    private static Object removeAt(Segment segment, Table table, int slot) {
+        Object previous = table.values[slot];
+        shiftBack(table, slot);
+        segment.size--;
+        return previous;
+    }
+
+    //moves later members of the probe run into the freed slot so lookups never stop early
+    private static void shiftBack(Table table, int free) {
+        int mask = table.mask;
+        for (int i = (free + 1) & mask; table.keys[i] != 0; i = (i + 1) & mask) {
+            int home = hash(table.keys[i]) & mask;
+            //the entry may move back only if its home slot is not between the free slot and its current slot
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                table.keys[free] = table.keys[i];
+                table.values[free] = table.values[i];
+                table.meta[free] = table.meta[i];
+                table.expiries[free] = table.expiries[i];
+                free = i;
+            }
+        }
+        table.keys[free] = 0;
+        table.values[free] = null;
+    }
+
+    private static Table rehash(Table old, int capacity) {
+        Table table = new Table(capacity);
+        for (int i = 0; i < old.keys.length; i++) {
+            int key = old.keys[i];
+            if (key != 0) {
+                int j = hash(key) & table.mask;
+                while (table.keys[j] != 0) {
+                    j = (j + 1) & table.mask;
+                }
+                table.keys[j] = key;
+                table.values[j] = old.values[i];
+                table.meta[j] = old.meta[i];
+                table.expiries[j] = old.expiries[i];
+            }
+        }
+        return table;
+    }
+
+    //packed keys are ASCII heavy, the top bits pick the segment and the mixed low bits the slot
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -8,9 +8,49 @@ public class Constants {
     public static final int MAX_RETRIES = 3;
 
     public static final int MAX_WRITE_QUEUE_SIZE = 100;
+    //a client never has more responses outstanding than the server is willing to queue for it
+    public static final int MAX_IN_FLIGHT_REQUESTS = MAX_WRITE_QUEUE_SIZE;
+    //a connection is no longer read once this many buffers wait to be written to it, and read again at the low mark
+    public static final int WRITE_QUEUE_HIGH_WATERMARK = MAX_WRITE_QUEUE_SIZE * 3 / 4;
+    public static final int WRITE_QUEUE_LOW_WATERMARK = MAX_WRITE_QUEUE_SIZE / 4;
+    //tasks waiting for a worker thread, requests beyond it are answered BUSY
+    public static final int MAX_PENDING_TASKS = 1024;
     public static final int BUFFER_SIZE = 1024;
     public static final int MAX_KEY_SIZE = 4;
     public static final int MAX_VALUE_SIZE = 2096;
+    public static final int MAX_FRAME_SIZE = 64 * 1024;
+    //largest binary response payload a client accepts. Requests are bounded by MAX_FRAME_SIZE but an MGET answers
+    //up to MAX_BATCH_KEYS values and a GET ALL every key, so responses get this much more room
+    public static final int MAX_RESPONSE_SIZE = 256 * 1024 * 1024;
+    //keys, or key-value pairs, per MGET, MADD or MDELETE
+    public static final int MAX_BATCH_KEYS = 1024;
+    //a GET ALL page never holds more keys, larger page sizes are capped
+    public static final int MAX_SCAN_PAGE_SIZE = 10_000;
+    //keys per buffer of a streamed GET ALL response
+    public static final int GET_ALL_CHUNK_KEYS = 1024;
+
+    //byte budget per shard, entries are evicted beyond it
+    public static final long SHARD_CAPACITY_BYTES = 64L * 1024 * 1024;
+    //resolution of entry expiry, expired entries are reclaimed on the next tick after their deadline
+    public static final long EXPIRY_TICK_MS = 10L;
+    //off-heap storage engine, slabs are carved into equal slots of one size class each
+    public static final int SLAB_SIZE = 256 * 1024;
+    //pooled read buffers of all connections together, see BufferPool
+    public static final long MAX_IO_MEMORY_BYTES = 256L * 1024 * 1024;
+    //mutations a replica may fall behind by before the primary drops it, the replica then bootstraps again
+    public static final int REPLICATION_QUEUE_SIZE = 64 * 1024;
+    //mutation frames per batch sent to a replica, snapshot batches included
+    public static final int REPLICATION_BATCH_BYTES = 64 * 1024;
+    //an idle primary still sends an empty batch this often, so replicas can tell they are caught up
+    public static final long REPLICATION_HEARTBEAT_MS = 1000L;
+    //write-ahead log segments are rolled at this size, a segment is deleted whole once a snapshot covers it
+    public static final long WAL_SEGMENT_BYTES = 64L * 1024 * 1024;
+    //the log is compacted by taking a snapshot once its segments add up to more than this
+    public static final long WAL_COMPACT_BYTES = 4 * WAL_SEGMENT_BYTES;
+    //with RELAXED acknowledgements the log is synced this often
+    public static final long WAL_SYNC_INTERVAL_MS = 100L;
+    //records appended and not written yet, writes are answered BUSY beyond it
+    public static final int WAL_MAX_PENDING_BYTES = 16 * 1024 * 1024;
 
     public static final int READ_TIMEOUT_MS = 1000;
     public static final long TIMEOUT_MS = 1000L;
@@ -0,0 +1,141 @@
+package org.global.dax.shared;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * How a shard picks an entry to drop once it is over its byte budget.
+ *
+ * Every table slot carries an int of policy metadata next to its key. A read only records the access with a plain
+ * store into that int, skipped when it would not change and made under the table's read lock, which is tried rather
+ * than waited for, so bookkeeping never blocks a read; the victim is chosen by the writer that ran over the budget,
+ * under the table's write lock.
+ */
+public enum EvictionPolicy {
+    //second chance: a reference bit per slot and a hand that sweeps the table, clearing bits until it finds a clear one
+    CLOCK {
+        @Override
+        int initialMeta() {
+            return 1;
+        }
+
+        @Override
+        int recordAccess(int meta) {
+            return 1;
+        }
+
+        @Override
+        int victim(EvictionSlots slots) {
+            int count = slots.slotCount();
+            int slot = slots.hand() % count;
+            //two full turns always find a victim if there is any candidate
+            for (int step = 0; step < 2 * count; step++, slot = (slot + 1) % count) {
+                if (!slots.isCandidate(slot)) {
+                    continue;
+                }
+                if (slots.meta(slot) == 0) {
+                    slots.setHand((slot + 1) % count);
+                    return slot;
+                }
+                slots.setMeta(slot, 0);
+            }
+            return -1;
+        }
+    },
+    //approximate LRU: the least recently read of a few sampled entries, with a millisecond access clock per slot
+    LRU {
+        @Override
+        int initialMeta() {
+            return now();
+        }
+
+        @Override
+        int recordAccess(int meta) {
+            return now();
+        }
+
+        @Override
+        int victim(EvictionSlots slots) {
+            int now = now();
+            return sample(slots, (slot) -> now - slots.meta(slot));
+        }
+    },
+    //approximate LFU: a logarithmic 8 bit access counter that decays every minute the entry is not read, the least
+    //frequently read of a few sampled entries goes, so a burst of one-off keys cannot flush the popular ones
+    LFU {
+        private static final int INITIAL_COUNT = 5;
+        private static final int LOG_FACTOR = 10;
+
+        @Override
+        int initialMeta() {
+            return (minutes() << 8) | INITIAL_COUNT;
+        }
+
+        @Override
+        int recordAccess(int meta) {
+            int count = decayed(meta);
+            if (count < 255) {
+                //the more often an entry was read, the less likely another read moves the counter
+                double threshold = 1.0 / (Math.max(count - INITIAL_COUNT, 0) * LOG_FACTOR + 1);
+                if (ThreadLocalRandom.current().nextDouble() < threshold) {
+                    count++;
+                }
+            }
+            return (minutes() << 8) | count;
+        }
+
+        @Override
+        int victim(EvictionSlots slots) {
+            return sample(slots, (slot) -> 255 - decayed(slots.meta(slot)));
+        }
+
+        private int decayed(int meta) {
+            int idle = (minutes() - (meta >>> 8)) & 0xFFFF;
+            return Math.max((meta & 0xFF) - idle, 0);
+        }
+    };
+
+    private static final int SAMPLES = 5;
+
+    @FunctionalInterface
+    private interface Score {
+        int of(int slot);
+    }
+
+    //metadata for a newly inserted entry
+    abstract int initialMeta();
+
+    //metadata after a read, must be cheap and must not block
+    abstract int recordAccess(int meta);
+
+    //the slot to evict, or -1 when there is no candidate
+    abstract int victim(EvictionSlots slots);
+
+    //the highest scoring of a few distinct candidates, the ones following a random slot
+    private static int sample(EvictionSlots slots, Score score) {
+        int count = slots.slotCount();
+        int slot = ThreadLocalRandom.current().nextInt(count);
+        int victim = -1;
+        int best = Integer.MIN_VALUE;
+
+        for (int probes = 0, sampled = 0; probes < count && sampled < SAMPLES; probes++, slot = (slot + 1) % count) {
+            if (!slots.isCandidate(slot)) {
+                continue;
+            }
+            sampled++;
+            int candidate = score.of(slot);
+            if (candidate > best) {
+                best = candidate;
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    private static int now() {
+        return (int) (System.nanoTime() / 1_000_000);
+    }
+
+    private static int minutes() {
+        return (int) (System.nanoTime() / 60_000_000_000L) & 0xFFFF;
+    }
+}
@@ -0,0 +1,18 @@
+package org.global.dax.shared;
+
+//the slots of one hash table as seen by an eviction policy, only used while the table's write lock is held
+interface EvictionSlots {
+    int slotCount();
+
+    //occupied, and acceptable to the caller as a victim
+    boolean isCandidate(int slot);
+
+    int meta(int slot);
+
+    void setMeta(int slot, int meta);
+
+    //CLOCK only, where the last sweep stopped
+    int hand();
+
+    void setHand(int hand);
+}
@@ -0,0 +1,75 @@
+package org.global.dax.shared;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static org.global.dax.shared.Constants.EXPIRY_TICK_MS;
+
+/*
+ * Reclaims expired entries on a single housekeeping thread, started with the first entry that has a TTL.
+ *
+ * Writers only append the deadline to a lock-free queue; the reaper moves queued deadlines into a timing wheel and
+ * advances it every tick, handing each due (shard, key, deadline) back to the cache, which removes the entry only
+ * if it still carries that deadline. Overwritten or deleted entries therefore need no cancellation. Until it is
+ * reclaimed an expired entry is already invisible to reads, the reaper only gives its memory back.
+ */
+final class ExpiryReaper implements Runnable {
+    private static final long ORIGIN = System.nanoTime();
+
+    private final Queue<TimingWheel.Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final TimingWheel wheel = new TimingWheel(EXPIRY_TICK_MS, now());
+    private final Consumer<TimingWheel.Timeout> expire;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    ExpiryReaper(Consumer<TimingWheel.Timeout> expire) {
+        this.expire = expire;
+    }
+
+    //monotonic milliseconds, always positive so 0 can mean no deadline
+    static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ORIGIN) + 1;
+    }
+
+    static long deadline(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("TTL must be positive");
+        }
+        return now() + ttlMillis;
+    }
+
+    void schedule(int shard, int key, long deadline) {
+        scheduled.add(new TimingWheel.Timeout(shard, key, deadline));
+        if (started.compareAndSet(false, true)) {
+            Thread reaper = new Thread(this, "dax-expiry");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+    }
+
+    void stop() {
+        running = false;
+        Thread reaper = thread;
+        if (reaper != null) {
+            LockSupport.unpark(reaper);
+        }
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        while (running) {
+            TimingWheel.Timeout timeout;
+            while ((timeout = scheduled.poll()) != null) {
+                wheel.schedule(timeout);
+            }
+            wheel.advance(now(), expire);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(EXPIRY_TICK_MS));
+        }
+    }
+}
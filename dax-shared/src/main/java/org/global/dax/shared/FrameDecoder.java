@@ -0,0 +1,171 @@
+package org.global.dax.shared;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.global.dax.shared.BinaryProtocol.REQUEST_HEADER_SIZE;
+import static org.global.dax.shared.Constants.BUFFER_SIZE;
+import static org.global.dax.shared.Constants.MAX_FRAME_SIZE;
+import static org.global.dax.shared.Constants.MAX_KEY_SIZE;
+
+/*
+ * Incremental, per-connection request framing. Bytes are appended as they arrive from the socket and complete
+ * frames are pulled out one at a time, so a partial frame is kept until the rest of it arrives and several
+ * pipelined frames that arrive in a single read are returned in order.
+ *
+ * Text frames are terminated by '\n' (the terminator is not part of the returned frame), binary frames carry
+ * their value length in the request header.
+ *
+ * The buffer holding pending bytes comes from a BufferPool and goes back as soon as every byte has been decoded,
+ * so a connection with no partial frame holds no buffer at all. Not thread-safe.
+ */
+public final class FrameDecoder {
+    //for decoders used on their own, large enough to never refuse a buffer
+    private static final long STANDALONE_CAPACITY = 64L * BufferPool.MAX_BUFFER_SIZE;
+
+    private final BufferPool pool;
+    //pending bytes live in [start, buffer.position()), null while nothing is pending
+    private ByteBuffer buffer;
+    private int start;
+    //text mode only, how far the pending bytes have already been searched for a newline
+    private int scanned;
+    private boolean binary;
+
+    public FrameDecoder() {
+        this(new BufferPool(STANDALONE_CAPACITY));
+    }
+
+    public FrameDecoder(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    //takes effect from the next frame, so a handshake pipelined together with binary frames is decoded correctly
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public int pendingBytes() {
+        return buffer == null ? 0 : buffer.position() - start;
+    }
+
+    public void append(ByteBuffer src) {
+        if (!ensureSpace(src.remaining())) {
+            throw new IllegalStateException("I/O buffer memory exhausted");
+        }
+        buffer.put(src);
+    }
+
+    //the buffer to read the next bytes into, positioned after the pending ones and with room left,
+    //or null when the pool cannot provide one
+    public ByteBuffer readBuffer() {
+        return ensureSpace(1) ? buffer : null;
+    }
+
+    //returns the next complete frame, or null if more bytes are needed
+    public ByteBuffer nextFrame() throws IOException {
+        if (buffer == null) {
+            return null;
+        }
+
+        ByteBuffer frame = binary ? nextBinaryFrame() : nextTextFrame();
+        if (start == buffer.position()) {
+            //everything consumed, the buffer goes back to the pool until more bytes arrive
+            release();
+        }
+        return frame;
+    }
+
+    //gives the buffer back, dropping any partial frame, for a connection that is closing
+    public void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+        start = 0;
+        scanned = 0;
+    }
+
+    //makes room for bytes more after the pending ones, moving to a larger buffer when compacting is not enough
+    private boolean ensureSpace(int bytes) {
+        if (buffer == null) {
+            buffer = pool.acquire(Math.max(bytes, BUFFER_SIZE));
+            return buffer != null;
+        }
+        if (bytes <= buffer.remaining()) {
+            return true;
+        }
+
+        compact();
+        if (bytes <= buffer.remaining()) {
+            return true;
+        }
+        ByteBuffer larger = pool.acquire(Math.min(Math.max(buffer.capacity() * 2, buffer.position() + bytes),
+                BufferPool.MAX_BUFFER_SIZE));
+        if (larger == null || larger.capacity() < buffer.position() + bytes) {
+            if (larger != null) {
+                pool.release(larger);
+            }
+            return false;
+        }
+        larger.put(buffer.flip());
+        pool.release(buffer);
+        buffer = larger;
+        return true;
+    }
+
+    private ByteBuffer nextTextFrame() throws IOException {
+        int end = buffer.position();
+        for (int i = start + scanned; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                ByteBuffer frame = copy(start, i - start);
+                start = i + 1;
+                scanned = 0;
+                return frame;
+            }
+        }
+
+        scanned = end - start;
+        if (scanned > MAX_FRAME_SIZE) {
+            throw new IOException("Text frame exceeds " + MAX_FRAME_SIZE + " bytes");
+        }
+        return null;
+    }
+
+    private ByteBuffer nextBinaryFrame() throws IOException {
+        if (pendingBytes() < REQUEST_HEADER_SIZE) {
+            return null;
+        }
+
+        int valueLength = buffer.getInt(start + 1 + MAX_KEY_SIZE);
+        if (valueLength < 0 || valueLength > MAX_FRAME_SIZE - REQUEST_HEADER_SIZE) {
+            throw new IOException("Invalid binary frame length [" + valueLength + "]");
+        }
+
+        int frameLength = REQUEST_HEADER_SIZE + valueLength;
+        if (pendingBytes() < frameLength) {
+            return null;
+        }
+
+        ByteBuffer frame = copy(start, frameLength);
+        start += frameLength;
+        return frame;
+    }
+
+    private ByteBuffer copy(int from, int length) {
+        ByteBuffer frame = ByteBuffer.allocate(length);
+        frame.put(0, buffer, from, length);
+        return frame;
+    }
+
+    private void compact() {
+        if (start > 0) {
+            buffer.flip().position(start);
+            buffer.compact();
+            start = 0;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.global.dax.shared;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+final class HeapShard implements CacheShard {
+    //approximate cost of an entry beside its value: key, metadata and reference slots at half load, array header
+    static final int ENTRY_OVERHEAD = 40;
+
+    //arrays are never modified once stored, a put replaces the whole array
+    private final ConcurrentIntHashMap<byte[]> entries;
+    //lowered by shrink, read by every put
+    private volatile long capacity;
+    private final AtomicLong memoryUsed = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    HeapShard(long capacity, EvictionPolicy policy) {
+        this.capacity = capacity;
+        this.entries = new ConcurrentIntHashMap<>(policy);
+    }
+
+    //no copy, the view shares the stored array
+    @Override
+    public ByteBuffer get(int key) {
+        byte[] value = entries.get(key);
+        return value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void put(int key, byte[] value, long expiresAt) {
+        byte[] previous = entries.put(key, value, expiresAt);
+        //the writer that ran over the budget pays for the eviction, readers never do
+        evictOverBudget(memoryUsed.addAndGet(cost(value) - cost(previous)));
+    }
+
+    @Override
+    public void shrink(long capacity) {
+        this.capacity = capacity;
+        evictOverBudget(memoryUsed.get());
+    }
+
+    private void evictOverBudget(long used) {
+        while (used > capacity) {
+            byte[] evicted = entries.evict();
+            if (evicted == null) {
+                break;
+            }
+            evictions.increment();
+            used = memoryUsed.addAndGet(-cost(evicted));
+        }
+    }
+
+    @Override
+    public boolean remove(int key) {
+        //an expired entry is removed all the same, but was already gone as far as clients can tell
+        return entries.remove(key, previous -> memoryUsed.addAndGet(-cost(previous)));
+    }
+
+    @Override
+    public void expire(int key, long deadline) {
+        byte[] expired = entries.expire(key, deadline);
+        if (expired != null) {
+            memoryUsed.addAndGet(-cost(expired));
+            expirations.increment();
+        }
+    }
+
+    //sees the keys present while the segments were visited
+    @Override
+    public void forEachKey(IntConsumer consumer) {
+        entries.forEach((packed, value, expiresAt) -> consumer.accept(packed));
+    }
+
+    //views of the stored arrays, visited segment by segment under its read lock
+    @Override
+    public void forEachEntry(EntryConsumer consumer) {
+        entries.forEach((packed, value, expiresAt) ->
+                consumer.accept(packed, ByteBuffer.wrap(value).asReadOnlyBuffer(), expiresAt));
+    }
+
+    @Override
+    public void forEachEntry(long from, long to, EntryConsumer consumer) {
+        entries.forEach((packed, value, expiresAt) -> {
+            long position = Integer.toUnsignedLong(packed);
+            if (position >= from && position <= to) {
+                consumer.accept(packed, ByteBuffer.wrap(value).asReadOnlyBuffer(), expiresAt);
+            }
+        });
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public long memoryUsed() {
+        return memoryUsed.get();
+    }
+
+    @Override
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    private static long cost(byte[] value) {
+        return value == null ? 0 : value.length + ENTRY_OVERHEAD;
+    }
+}
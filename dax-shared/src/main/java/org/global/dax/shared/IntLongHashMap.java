@@ -0,0 +1,352 @@
+package org.global.dax.shared;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/*
+ * Open-addressing int -> long map with linear probing and backward-shift deletion, so there are no tombstones and
+ * no per-entry objects. Each slot also carries an int of eviction policy metadata and a long expiry deadline on the
+ * ExpiryReaper clock (0 never expires); get and forEach skip expired entries until expire reclaims them.
+ * Not thread-safe, callers guard it; find may race with writers, it then returns garbage the caller has to discard.
+ * Values must not be NO_VALUE.
+ */
+final class IntLongHashMap {
+    static final long NO_VALUE = -1L;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final EvictionPolicy policy;
+    //0 marks a free slot, so the key 0 (the empty key) is kept aside and never evicted
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private int[] meta = new int[INITIAL_CAPACITY];
+    private long[] expiries = new long[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private int size;
+    private long zeroValue = NO_VALUE;
+    private long zeroExpiresAt;
+    private int hand;
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(int key, long value, long expiresAt);
+    }
+
+    IntLongHashMap() {
+        this(EvictionPolicy.CLOCK);
+    }
+
+    IntLongHashMap(EvictionPolicy policy) {
+        this.policy = policy;
+    }
+
+    int size() {
+        return size + (zeroValue == NO_VALUE ? 0 : 1);
+    }
+
+    //records the access for the eviction policy, callers hold a lock
+    long get(int key) {
+        if (key == 0) {
+            return find(key);
+        }
+        int slot = liveSlot(key);
+        if (slot < 0) {
+            return NO_VALUE;
+        }
+        int accessed = policy.recordAccess(meta[slot]);
+        if (accessed != meta[slot]) {
+            meta[slot] = accessed;
+        }
+        return values[slot];
+    }
+
+    //the live value without recording an access, nothing is written so an optimistic reader racing a writer can
+    //only read garbage it discards on validation
+    long find(int key) {
+        if (key == 0) {
+            return isExpired(zeroExpiresAt) ? NO_VALUE : zeroValue;
+        }
+        long[] values = this.values;
+        int slot = liveSlot(key);
+        return slot < 0 || slot >= values.length ? NO_VALUE : values[slot];
+    }
+
+    //the slot of the live entry, or -1; bounded, so an optimistic reader racing a writer cannot probe forever
+    private int liveSlot(int key) {
+        int[] keys = this.keys;
+        long[] expiries = this.expiries;
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask, probes = 0; probes < keys.length; i = (i + 1) & mask, probes++) {
+            int candidate = keys[i];
+            if (candidate == key) {
+                return i < expiries.length && isExpired(expiries[i]) ? -1 : i;
+            }
+            if (candidate == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    //the stored value, expired or not, without recording an access
+    long peek(int key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int candidate = keys[i];
+            if (candidate == key) {
+                return values[i];
+            }
+            if (candidate == 0) {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    //returns the previous value, expired or not, or NO_VALUE
+    long put(int key, long value) {
+        return put(key, value, 0);
+    }
+
+    //overwriting replaces the deadline
+    long put(int key, long value, long expiresAt) {
+        if (key == 0) {
+            long previous = zeroValue;
+            zeroValue = value;
+            zeroExpiresAt = expiresAt;
+            return previous;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int candidate = keys[i];
+            if (candidate == key) {
+                long previous = values[i];
+                values[i] = value;
+                expiries[i] = expiresAt;
+                meta[i] = policy.recordAccess(meta[i]);
+                return previous;
+            }
+            if (candidate == 0) {
+                keys[i] = key;
+                values[i] = value;
+                expiries[i] = expiresAt;
+                meta[i] = policy.initialMeta();
+                //keep the load factor at or below one half so probe sequences stay short
+                if (++size * 2 > keys.length) {
+                    rehash(keys.length * 2);
+                }
+                return NO_VALUE;
+            }
+        }
+    }
+
+    //returns the removed value, expired or not, or NO_VALUE
+    long remove(int key) {
+        if (key == 0) {
+            long previous = zeroValue;
+            zeroValue = NO_VALUE;
+            return previous;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int candidate = keys[i];
+            if (candidate == 0) {
+                return NO_VALUE;
+            }
+            if (candidate == key) {
+                return removeAt(i);
+            }
+        }
+    }
+
+    //removes the entry, expired or not, and hands its value to removed; returns whether the removed entry was live
+    boolean remove(int key, LongConsumer removed) {
+        if (key == 0) {
+            if (zeroValue == NO_VALUE) {
+                return false;
+            }
+            removed.accept(remove(0));
+            return !isExpired(zeroExpiresAt);
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int candidate = keys[i];
+            if (candidate == 0) {
+                return false;
+            }
+            if (candidate == key) {
+                boolean live = !isExpired(expiries[i]);
+                removed.accept(removeAt(i));
+                return live;
+            }
+        }
+    }
+
+    //removes the entry only if it still carries the deadline it was scheduled with, returns its value or NO_VALUE
+    long expire(int key, long deadline) {
+        if (key == 0) {
+            if (zeroValue == NO_VALUE || zeroExpiresAt != deadline) {
+                return NO_VALUE;
+            }
+            return remove(0);
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            int candidate = keys[i];
+            if (candidate == 0) {
+                return NO_VALUE;
+            }
+            if (candidate == key) {
+                //overwritten since, with another deadline or none
+                return expiries[i] == deadline ? removeAt(i) : NO_VALUE;
+            }
+        }
+    }
+
+    //removes the entry the policy picks among those whose value passes the filter, returns its value or NO_VALUE
+    long evict(LongPredicate filter) {
+        int victim = policy.victim(new EvictionSlots() {
+            @Override
+            public int slotCount() {
+                return keys.length;
+            }
+
+            @Override
+            public boolean isCandidate(int slot) {
+                return keys[slot] != 0 && filter.test(values[slot]);
+            }
+
+            @Override
+            public int meta(int slot) {
+                return meta[slot];
+            }
+
+            @Override
+            public void setMeta(int slot, int value) {
+                meta[slot] = value;
+            }
+
+            @Override
+            public int hand() {
+                return hand;
+            }
+
+            @Override
+            public void setHand(int value) {
+                hand = value;
+            }
+        });
+        return victim < 0 ? NO_VALUE : removeAt(victim);
+    }
+
+    //removes every entry, expired or not, whose value passes the filter and hands its value to removed, returns how
+    //many were removed
+    int removeIf(LongPredicate filter, LongConsumer removed) {
+        int count = 0;
+        if (zeroValue != NO_VALUE && filter.test(zeroValue)) {
+            removed.accept(remove(0));
+            count++;
+        }
+        //a removal shifts later entries back into the freed slot, so the slot is looked at again
+        for (int i = 0; i < keys.length; ) {
+            if (keys[i] != 0 && filter.test(values[i])) {
+                removed.accept(removeAt(i));
+                count++;
+            } else {
+                i++;
+            }
+        }
+        return count;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        long now = ExpiryReaper.now();
+        if (zeroValue != NO_VALUE && !isExpired(zeroExpiresAt, now)) {
+            consumer.accept(0, zeroValue, zeroExpiresAt);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0 && !isExpired(expiries[i], now)) {
+                consumer.accept(keys[i], values[i], expiries[i]);
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        zeroValue = NO_VALUE;
+    }
+
+    private static boolean isExpired(long expiresAt) {
+        return expiresAt != 0 && expiresAt <= ExpiryReaper.now();
+    }
+
+    private static boolean isExpired(long expiresAt, long now) {
+        return expiresAt != 0 && expiresAt <= now;
+    }
+
+    private long removeAt(int slot) {
+        long previous = values[slot];
+        shiftBack(slot);
+        size--;
+        return previous;
+    }
+
+    //moves later members of the probe run into the freed slot so lookups never stop early
+    private void shiftBack(int free) {
+        for (int i = (free + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = slot(keys[i]);
+            //the entry may move back only if its home slot is not between the free slot and its current slot
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                meta[free] = meta[i];
+                expiries[free] = expiries[i];
+                free = i;
+            }
+        }
+        keys[free] = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        int[] oldMeta = meta;
+        long[] oldExpiries = expiries;
+        int[] newKeys = new int[capacity];
+        long[] newValues = new long[capacity];
+        int[] newMeta = new int[capacity];
+        long[] newExpiries = new long[capacity];
+        int newMask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != 0) {
+                int j = mix(key) & newMask;
+                while (newKeys[j] != 0) {
+                    j = (j + 1) & newMask;
+                }
+                newKeys[j] = key;
+                newValues[j] = oldValues[i];
+                newMeta[j] = oldMeta[i];
+                newExpiries[j] = oldExpiries[i];
+            }
+        }
+
+        //an optimistic reader may see a mix of old and new arrays, its result fails validation and is discarded
+        values = newValues;
+        meta = newMeta;
+        expiries = newExpiries;
+        mask = newMask;
+        keys = newKeys;
+        hand = 0;
+    }
+
+    private int slot(int key) {
+        return mix(key) & mask;
+    }
+
+    //packed keys are ASCII heavy, mix the bits before masking
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,7 @@
+package org.global.dax.shared;
+
+import java.util.List;
+
+//one page of a key scan, pass cursor to the next call, a cursor of 0 means the scan is complete
+public record KeyPage(List<String> keys, long cursor) {
+}
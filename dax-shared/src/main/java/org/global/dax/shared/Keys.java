@@ -0,0 +1,63 @@
+package org.global.dax.shared;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.global.dax.shared.Constants.MAX_KEY_SIZE;
+
+/*
+ * Keys are at most MAX_KEY_SIZE (4) bytes, so they pack into a single int: the UTF-8 bytes big-endian,
+ * padded with trailing NUL bytes exactly like the binary protocol pads them on the wire.
+ */
+public final class Keys {
+    private Keys() {
+    }
+
+    public static boolean fits(String key) {
+        //a char is at least one UTF-8 byte, so longer strings can never fit
+        return key.length() <= MAX_KEY_SIZE && (isAscii(key) || key.getBytes(StandardCharsets.UTF_8).length <= MAX_KEY_SIZE);
+    }
+
+    public static int pack(String key) {
+        if (key.length() <= MAX_KEY_SIZE && isAscii(key)) {
+            //the common case packs the chars directly without encoding the key
+            int packed = 0;
+            for (int i = 0; i < MAX_KEY_SIZE; i++) {
+                packed = (packed << 8) | (i < key.length() ? key.charAt(i) : 0);
+            }
+            return packed;
+        }
+
+        byte[] raw = key.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("key too large");
+        }
+
+        int packed = 0;
+        for (int i = 0; i < MAX_KEY_SIZE; i++) {
+            packed = (packed << 8) | (i < raw.length ? raw[i] & 0xFF : 0);
+        }
+        return packed;
+    }
+
+    public static String unpack(int packed) {
+        byte[] raw = new byte[MAX_KEY_SIZE];
+        int length = 0;
+        for (int i = 0; i < MAX_KEY_SIZE; i++) {
+            raw[i] = (byte) (packed >>> (8 * (MAX_KEY_SIZE - 1 - i)));
+            if (raw[i] != 0) {
+                length = i + 1;
+            }
+        }
+        return new String(raw, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isAscii(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            //NUL is the padding byte, leave it to the encoding path so it round-trips the same way
+            if (key.charAt(i) == 0 || key.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,304 @@
+package org.global.dax.shared;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntConsumer;
+
+/*
+ * Values live in direct memory slabs, the heap only holds the primitive index of packed key -> slot handle.
+ * Writers take the write lock; readers look up the handle and copy the slot under an optimistic stamp and only
+ * fall back to the read lock when a write raced with them and may have reused the slot. A slot can be reused as
+ * soon as the lock is released, so unlike the heap engine a get hands out a copy rather than a view of the slab.
+ *
+ * The slabs are the budget: when no slot of the value's size class is free and no further slab may be reserved,
+ * the eviction policy picks a victim among the entries of that size class, as only their slots can be reused. A size
+ * class without entries to evict takes the last slab of the class holding the most slabs, whose entries are evicted,
+ * so a run of values of one size cannot lock every other size out of the shard.
+ */
+final class OffHeapShard implements CacheShard {
+    private final StampedLock lock = new StampedLock();
+    private final IntLongHashMap index;
+    private final SlabAllocator allocator;
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    OffHeapShard(long capacity) {
+        this(capacity, EvictionPolicy.CLOCK);
+    }
+
+    OffHeapShard(long capacity, EvictionPolicy policy) {
+        this.allocator = new SlabAllocator(capacity);
+        this.index = new IntLongHashMap(policy);
+    }
+
+    @Override
+    public ByteBuffer get(int key) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                long handle = index.find(key);
+                byte[] value = handle == IntLongHashMap.NO_VALUE ? null : allocator.read(handle);
+                if (lock.validate(stamp)) {
+                    if (value != null) {
+                        recordAccess(key);
+                    }
+                    return value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+                }
+            } catch (RuntimeException e) {
+                //a torn view of the index or the slab list, retry under the lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            byte[] value = read(key);
+            return value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //the whole batch under one read lock
+    @Override
+    public void get(int[] keys, ByteBuffer[] values) {
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                byte[] value = read(keys[i]);
+                values[i] = value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void put(int key, byte[] raw, long expiresAt) {
+        long stamp = lock.writeLock();
+        try {
+            store(key, raw, expiresAt);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void put(int[] keys, byte[][] values) {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                store(keys[i], values[i], 0);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(int key) {
+        long stamp = lock.writeLock();
+        try {
+            return delete(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int remove(int[] keys) {
+        long stamp = lock.writeLock();
+        try {
+            int removed = 0;
+            for (int key : keys) {
+                if (delete(key)) {
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void expire(int key, long deadline) {
+        long stamp = lock.writeLock();
+        try {
+            long handle = index.expire(key, deadline);
+            if (handle != IntLongHashMap.NO_VALUE) {
+                allocator.free(handle);
+                expirations.increment();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //a snapshot, visited under the read lock
+    @Override
+    public void forEachKey(IntConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            index.forEach((packed, handle, expiresAt) -> consumer.accept(packed));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //copies of the slots, a snapshot visited under the read lock
+    @Override
+    public void forEachEntry(EntryConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            index.forEach((packed, handle, expiresAt) ->
+                    consumer.accept(packed, ByteBuffer.wrap(allocator.read(handle)).asReadOnlyBuffer(), expiresAt));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //only the slots in the range are copied
+    @Override
+    public void forEachEntry(long from, long to, EntryConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            index.forEach((packed, handle, expiresAt) -> {
+                long position = Integer.toUnsignedLong(packed);
+                if (position >= from && position <= to) {
+                    consumer.accept(packed, ByteBuffer.wrap(allocator.read(handle)).asReadOnlyBuffer(), expiresAt);
+                }
+            });
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //slot bytes holding values
+    @Override
+    public long memoryUsed() {
+        long stamp = lock.readLock();
+        try {
+            return allocator.usedBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    long reservedBytes() {
+        long stamp = lock.readLock();
+        try {
+            return allocator.reservedBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //slabs beyond the new budget are emptied and given up, their memory goes back once they are collected
+    @Override
+    public void shrink(long capacity) {
+        long stamp = lock.writeLock();
+        try {
+            allocator.setCapacity(capacity);
+            while (allocator.reservedBytes() > capacity) {
+                if (!allocator.dropSpareSlab()) {
+                    int donor = allocator.donor(-1);
+                    evictions.add(index.removeIf(handle -> allocator.inLastSlab(donor, handle), allocator::free));
+                    allocator.releaseLastSlab(donor);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //callers hold the write lock
+    private void store(int key, byte[] raw, long expiresAt) {
+        int sizeClass = SlabAllocator.sizeClass(raw.length);
+
+        //the slot of an expired entry is reused like any other
+        long previous = index.peek(key);
+        long handle;
+        if (previous != IntLongHashMap.NO_VALUE && SlabAllocator.sizeClassOf(previous) == sizeClass) {
+            //overwrite in place, nothing to allocate or free
+            handle = SlabAllocator.resize(previous, raw.length);
+        } else {
+            handle = allocator.allocate(raw.length);
+            while (handle == IntLongHashMap.NO_VALUE) {
+                long evicted = index.evict(candidate -> SlabAllocator.sizeClassOf(candidate) == sizeClass);
+                if (evicted != IntLongHashMap.NO_VALUE) {
+                    allocator.free(evicted);
+                    evictions.increment();
+                } else if (!reassignSlab(sizeClass)) {
+                    //the capacity is smaller than a single slab
+                    throw new IllegalStateException("off-heap storage is full");
+                }
+                handle = allocator.allocate(raw.length);
+            }
+            //looked up again, the previous value may have been in a slab that was reassigned
+            previous = index.peek(key);
+            if (previous != IntLongHashMap.NO_VALUE) {
+                allocator.free(previous);
+            }
+        }
+        allocator.write(handle, raw);
+        index.put(key, handle, expiresAt);
+    }
+
+    //callers hold the write lock; evicts every entry in the last slab of the size class holding the most slabs and
+    //hands the slab to the given class, false when no other class holds a slab
+    private boolean reassignSlab(int sizeClass) {
+        int donor = allocator.donor(sizeClass);
+        if (donor < 0) {
+            return false;
+        }
+        evictions.add(index.removeIf(handle -> allocator.inLastSlab(donor, handle), allocator::free));
+        allocator.releaseLastSlab(donor);
+        return true;
+    }
+
+    //callers hold the write lock
+    private boolean delete(int key) {
+        //an expired entry is removed all the same, but was already gone as far as clients can tell
+        return index.remove(key, allocator::free);
+    }
+
+    //the access of an optimistic read, recorded under the read lock so it cannot land on a slot a writer has just
+    //given to another key; skipped rather than waited for while a writer holds the lock
+    private void recordAccess(int key) {
+        long stamp = lock.tryReadLock();
+        if (stamp != 0) {
+            try {
+                index.get(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    //callers hold a lock
+    private byte[] read(int key) {
+        long handle = index.get(key);
+        return handle == IntLongHashMap.NO_VALUE ? null : allocator.read(handle);
+    }
+}
@@ -1,9 +1,21 @@
 package org.global.dax.shared;
 
-import static org.global.dax.shared.Constants.MAX_KEY_SIZE;
-import static org.global.dax.shared.Constants.MAX_VALUE_SIZE;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.StringJoiner;
+
+import static org.global.dax.shared.BinaryProtocol.*;
+import static org.global.dax.shared.Constants.*;
 
 public class ProtocolUtils {
+    private static final ByteBuffer NEWLINE = ByteBuffer.wrap(new byte[]{'\n'}).asReadOnlyBuffer();
+
     public static String handleClientRequest(String input, ShardedCache cache) {
         try {
             String[] parts = input.trim().split(" ");
@@ -11,7 +23,8 @@ public class ProtocolUtils {
 
             return switch (command) {
                 case "ADD" -> {
-                    if (parts.length != 3) {
+                    //ADD key value [ttlMillis]
+                    if (parts.length != 3 && (parts.length != 4 || !isNumber(parts[3].trim()))) {
                         yield "ERROR Invalid ADD format";
                     }
                     else if (parts[1].trim().getBytes().length > MAX_KEY_SIZE) {
@@ -21,10 +34,22 @@ public class ProtocolUtils {
                         yield "ERROR value too large";
                     }
 
-                    cache.put(parts[1].trim(), parts[2].trim());
+                    if (parts.length == 4) {
+                        long ttl = Long.parseLong(parts[3].trim());
+                        if (ttl <= 0) {
+                            yield "ERROR Invalid TTL";
+                        }
+                        cache.put(parts[1].trim(), parts[2].trim(), ttl);
+                    }
+                    else {
+                        cache.put(parts[1].trim(), parts[2].trim());
+                    }
                     yield "OK";
                 }
                 case "GET" -> {
+                    if (parts.length > 2 && parts[1].trim().equalsIgnoreCase("ALL")) {
+                        yield scan(parts, cache);
+                    }
                     if (parts.length != 2) {
                         yield "ERROR Invalid GET format";
                     }
@@ -44,11 +69,306 @@ public class ProtocolUtils {
 
                     yield cache.remove(parts[1].trim()) ? "OK" : "ERROR Invalid key";
                 }
+                case "MGET" -> {
+                    //MGET key [key ...], answered with the values separated by spaces, empty for a missing key
+                    if (parts.length < 2 || parts.length > MAX_BATCH_KEYS + 1) {
+                        yield "ERROR Invalid MGET format";
+                    }
+
+                    ByteBuffer[] values = cache.getValues(arguments(parts));
+                    StringJoiner joined = new StringJoiner(" ");
+                    for (ByteBuffer value : values) {
+                        joined.add(value == null ? "" : StandardCharsets.UTF_8.decode(value));
+                    }
+                    yield joined.toString();
+                }
+                case "MADD" -> {
+                    //MADD key value [key value ...]
+                    if (parts.length < 3 || parts.length % 2 == 0 || parts.length > 2 * MAX_BATCH_KEYS + 1) {
+                        yield "ERROR Invalid MADD format";
+                    }
+
+                    List<String> keys = new ArrayList<>(parts.length / 2);
+                    List<byte[]> values = new ArrayList<>(parts.length / 2);
+                    for (int i = 1; i < parts.length; i += 2) {
+                        if (parts[i].trim().getBytes().length > MAX_KEY_SIZE) {
+                            yield "ERROR key too large";
+                        }
+                        else if (parts[i + 1].trim().getBytes().length > MAX_VALUE_SIZE) {
+                            yield "ERROR value too large";
+                        }
+                        keys.add(parts[i].trim());
+                        values.add(parts[i + 1].trim().getBytes(StandardCharsets.UTF_8));
+                    }
+                    cache.putAll(keys, values);
+                    yield "OK";
+                }
+                case "MDELETE" -> {
+                    //MDELETE key [key ...], answered with the number of keys removed
+                    if (parts.length < 2 || parts.length > MAX_BATCH_KEYS + 1) {
+                        yield "ERROR Invalid MDELETE format";
+                    }
+
+                    yield String.valueOf(cache.removeAll(arguments(parts)));
+                }
                 case "HEARTBEAT" -> "OK";
                 default -> "ERROR Unknown command";
             };
+        } catch (IllegalStateException e) {
+            return "ERROR " + e.getMessage();
         } catch (Exception e) {
             return "ERROR Invalid input [" + input + "]";
         }
     }
+
+    private static List<String> arguments(String[] parts) {
+        List<String> arguments = new ArrayList<>(parts.length - 1);
+        for (int i = 1; i < parts.length; i++) {
+            arguments.add(parts[i].trim());
+        }
+        return arguments;
+    }
+
+    //GET ALL pageSize [cursor], answered as the next cursor and the page of keys
+    private static String scan(String[] parts, ShardedCache cache) {
+        if (parts.length > 4 || !isNumber(parts[2].trim()) || (parts.length == 4 && !isNumber(parts[3].trim()))) {
+            return "ERROR Invalid GET ALL format";
+        }
+
+        try {
+            long pageSize = Long.parseLong(parts[2].trim());
+            long cursor = parts.length == 4 ? Long.parseLong(parts[3].trim()) : 0;
+            return formatKeyPage(cache.scan(cursor, (int) Math.max(Math.min(pageSize, MAX_SCAN_PAGE_SIZE), 0)));
+        } catch (IllegalArgumentException e) {
+            return "ERROR " + e.getMessage();
+        }
+    }
+
+    public static String formatKeyPage(KeyPage page) {
+        return page.keys().isEmpty() ? String.valueOf(page.cursor()) : page.cursor() + " " + String.join(",", page.keys());
+    }
+
+    //a plain GET ALL, the one request answered with a stream (see streamAllKeys) rather than a single response
+    public static boolean isGetAll(String input) {
+        String[] parts = input.trim().split(" ");
+        return parts.length == 2 && parts[0].equalsIgnoreCase("GET") && parts[1].trim().equalsIgnoreCase("ALL");
+    }
+
+    //the text GET ALL response produced a chunk of keys at a time and a shard at a time, so the full key list is
+    //never held at once, the last chunk ends the line
+    public static Iterator<ByteBuffer> streamAllKeys(ShardedCache cache) {
+        return new KeyStream(cache);
+    }
+
+    //the text response as buffers for a gathering write, a GET hit is a view of the stored value and a newline
+    public static ByteBuffer[] respondToClientRequest(String input, ShardedCache cache) {
+        String[] parts = input.trim().split(" ");
+        if (parts.length == 2 && parts[0].equalsIgnoreCase("GET") && !parts[1].trim().equalsIgnoreCase("ALL")) {
+            //a miss is an empty line, answered here so the lookup is not repeated (and counted twice)
+            ByteBuffer value = cache.getValue(parts[1]);
+            return value != null ? new ByteBuffer[]{value, NEWLINE.duplicate()} : new ByteBuffer[]{NEWLINE.duplicate()};
+        }
+        return new ByteBuffer[]{ByteBuffer.wrap((handleClientRequest(input, cache) + "\n").getBytes())};
+    }
+
+    public static ByteBuffer handleBinaryRequest(ByteBuffer request, ShardedCache cache) {
+        return join(respondToBinaryRequest(request, cache));
+    }
+
+    //the binary response as buffers for a gathering write, a GET hit is a header and a view of the stored value
+    public static ByteBuffer[] respondToBinaryRequest(ByteBuffer request, ShardedCache cache) {
+        try {
+            byte opcode = request.get();
+            String key = BinaryProtocol.decodeKey(request);
+            int valueLength = request.getInt();
+            if (valueLength < 0 || valueLength != request.remaining()) {
+                return single(encodeResponse(STATUS_ERROR, "Invalid frame"));
+            }
+            else if (valueLength > maxValueLength(opcode)) {
+                return single(encodeResponse(STATUS_ERROR, "value too large"));
+            }
+
+            return switch (opcode) {
+                case OP_ADD -> {
+                    byte[] value = new byte[valueLength];
+                    request.get(value);
+                    cache.put(key, value);
+                    yield single(encodeResponse(STATUS_OK));
+                }
+                case OP_ADD_TTL -> {
+                    long ttl = request.getLong();
+                    if (ttl <= 0) {
+                        yield single(encodeResponse(STATUS_ERROR, "Invalid TTL"));
+                    }
+                    byte[] value = new byte[request.remaining()];
+                    request.get(value);
+                    cache.put(key, value, ttl);
+                    yield single(encodeResponse(STATUS_OK));
+                }
+                case OP_GET -> {
+                    ByteBuffer value = cache.getValue(key);
+                    yield value != null
+                            ? new ByteBuffer[]{encodeResponseHeader(STATUS_OK, value.remaining()), value}
+                            : single(encodeResponse(STATUS_NOT_FOUND));
+                }
+                case OP_GET_ALL -> {
+                    List<String> keys = cache.getAllKeys();
+                    ByteBuffer payload = ByteBuffer.allocate(keys.size() * MAX_KEY_SIZE);
+                    keys.forEach(k -> payload.put(BinaryProtocol.encodeKey(k)));
+                    yield single(encodeResponse(STATUS_OK, payload.array()));
+                }
+                case OP_SCAN -> {
+                    int pageSize = request.getInt();
+                    long cursor = request.getLong();
+                    yield single(encodeResponse(STATUS_OK, encodeKeyPage(cache.scan(cursor, pageSize))));
+                }
+                case OP_MGET -> {
+                    List<String> keys = decodeBatchKeys(request);
+                    yield single(encodeResponse(STATUS_OK, encodeValues(cache.getValues(keys))));
+                }
+                case OP_MADD -> {
+                    int count = batchSize(request);
+                    List<String> keys = new ArrayList<>(count);
+                    List<byte[]> values = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        keys.add(BinaryProtocol.decodeKey(request));
+                        int length = request.getInt();
+                        if (length < 0 || length > MAX_VALUE_SIZE) {
+                            yield single(encodeResponse(STATUS_ERROR, "value too large"));
+                        }
+                        byte[] value = new byte[length];
+                        request.get(value);
+                        values.add(value);
+                    }
+                    if (request.hasRemaining()) {
+                        yield single(encodeResponse(STATUS_ERROR, "Invalid frame"));
+                    }
+                    cache.putAll(keys, values);
+                    yield single(encodeResponse(STATUS_OK));
+                }
+                case OP_MDELETE -> {
+                    int removed = cache.removeAll(decodeBatchKeys(request));
+                    yield single(encodeResponse(STATUS_OK, ByteBuffer.allocate(Integer.BYTES).putInt(removed).array()));
+                }
+                case OP_DELETE -> single(cache.remove(key)
+                        ? encodeResponse(STATUS_OK)
+                        : encodeResponse(STATUS_NOT_FOUND));
+                case OP_HEARTBEAT -> single(encodeResponse(STATUS_OK));
+                default -> single(encodeResponse(STATUS_ERROR, "Unknown command"));
+            };
+        } catch (BufferUnderflowException e) {
+            return single(encodeResponse(STATUS_ERROR, "Invalid frame"));
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return single(encodeResponse(STATUS_ERROR, e.getMessage()));
+        } catch (Exception e) {
+            return single(encodeResponse(STATUS_ERROR, "Invalid input"));
+        }
+    }
+
+    //batches are bounded by the frame size rather than the value size
+    private static int maxValueLength(byte opcode) {
+        return switch (opcode) {
+            case OP_ADD_TTL -> MAX_VALUE_SIZE + Long.BYTES;
+            case OP_MGET, OP_MADD, OP_MDELETE -> MAX_FRAME_SIZE;
+            default -> MAX_VALUE_SIZE;
+        };
+    }
+
+    private static int batchSize(ByteBuffer request) {
+        int count = request.getInt();
+        if (count <= 0 || count > MAX_BATCH_KEYS) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+        return count;
+    }
+
+    private static List<String> decodeBatchKeys(ByteBuffer request) {
+        int count = batchSize(request);
+        if (request.remaining() != count * MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("Invalid frame");
+        }
+
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(BinaryProtocol.decodeKey(request));
+        }
+        return keys;
+    }
+
+    private static boolean isNumber(String token) {
+        try {
+            Long.parseLong(token);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static ByteBuffer[] single(ByteBuffer buffer) {
+        return new ByteBuffer[]{buffer};
+    }
+
+    private static ByteBuffer join(ByteBuffer[] buffers) {
+        if (buffers.length == 1) {
+            return buffers[0];
+        }
+        int length = 0;
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        ByteBuffer joined = ByteBuffer.allocate(length);
+        for (ByteBuffer buffer : buffers) {
+            joined.put(buffer.duplicate());
+        }
+        return joined.flip();
+    }
+
+    private static final class KeyStream implements Iterator<ByteBuffer> {
+        private final ShardedCache cache;
+        //the shards are visited as they were when the stream started, see getKeysForShard
+        private final int shardCount;
+        private Iterator<String> keys = Collections.emptyIterator();
+        private int nextShard;
+        private boolean first = true;
+        private boolean done;
+
+        KeyStream(ShardedCache cache) {
+            this.cache = cache;
+            this.shardCount = cache.getShardCount();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !done;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (done) {
+                throw new NoSuchElementException();
+            }
+
+            StringBuilder chunk = new StringBuilder();
+            int count = 0;
+            while (count < GET_ALL_CHUNK_KEYS) {
+                if (!keys.hasNext()) {
+                    if (nextShard == shardCount) {
+                        chunk.append('\n');
+                        done = true;
+                        break;
+                    }
+                    keys = cache.getKeysForShard(nextShard++, shardCount).iterator();
+                    continue;
+                }
+
+                if (!first) {
+                    chunk.append(',');
+                }
+                chunk.append(keys.next());
+                first = false;
+                count++;
+            }
+            return ByteBuffer.wrap(chunk.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
 }
@@ -0,0 +1,5 @@
+package org.global.dax.shared;
+
+//a point in time view of one shard of a ShardedCache, hits and misses count the GETs of keys the shard owns
+public record ShardStats(int size, long memoryUsed, long hits, long misses, long evictions, long expirations) {
+}
@@ -1,52 +1,804 @@
 package org.global.dax.shared;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
-import static org.global.dax.shared.Constants.NUM_SHARDS;
+import static org.global.dax.shared.Constants.MAX_SCAN_PAGE_SIZE;
 
 public class ShardedCache {
-    private final List<ConcurrentHashMap<String, String>> shards;
+    //told about every ADD and DELETE, see addMutationListener
+    public interface MutationListener {
+        //ttlMillis is 0 for an entry that never expires, the listener must not modify the value
+        void added(String key, byte[] value, long ttlMillis);
 
-    public ShardedCache() {
-        this.shards = new ArrayList<>(NUM_SHARDS);
-        for (int i = 0; i < NUM_SHARDS; i++) {
-            shards.add(new ConcurrentHashMap<>());
+        void removed(String key);
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        //a read-only view of the value, ttlMillis is what is left of the entry's TTL or 0 when it never expires
+        void accept(String key, ByteBuffer value, long ttlMillis);
+    }
+
+    //a write to the shard that holds a key, run under the shard's write lock
+    @FunctionalInterface
+    private interface LockedWrite<T> {
+        T apply(int shardIndex, CacheShard shard, MutationListener[] listeners);
+    }
+
+    //an entry copied to the shard its key belongs to after a resize
+    private record Moved(int key, byte[] value, long expiresAt, int target) {
+    }
+
+    //an entry of a batch, held until the shard's locks are released
+    private record Copied(int key, ByteBuffer value, long expiresAt) {
+    }
+
+    /*
+     * The shards with their write locks and counters, replaced as a whole when the shard count grows. A shard keeps
+     * its index, lock and counters in every larger layout. While a resize is in progress previousCount is the count
+     * the keys are moved away from: a key that belongs to another shard under the new count stays in its previous
+     * shard until that shard is migrated, the shards below migrated are.
+     */
+    private static final class Layout {
+        private final List<CacheShard> shards;
+        private final Object[] writeLocks;
+        private final LongAdder[] hits;
+        private final LongAdder[] misses;
+        private final int previousCount;
+        private volatile int migrated;
+
+        private Layout(List<CacheShard> shards, Object[] writeLocks, LongAdder[] hits, LongAdder[] misses,
+                       int previousCount) {
+            this.shards = shards;
+            this.writeLocks = writeLocks;
+            this.hits = hits;
+            this.misses = misses;
+            this.previousCount = previousCount;
+        }
+
+        static Layout create(CacheConfig config) {
+            return new Layout(List.of(), new Object[0], new LongAdder[0], new LongAdder[0], 0)
+                    .grow(config, config.getShardCount(), 0);
+        }
+
+        //the new shards get an even share of the cache's budget, the existing ones are shrunk to it once migrated
+        Layout grow(CacheConfig config, int count, int previousCount) {
+            List<CacheShard> grown = new ArrayList<>(shards);
+            Object[] grownLocks = Arrays.copyOf(writeLocks, count);
+            LongAdder[] grownHits = Arrays.copyOf(hits, count);
+            LongAdder[] grownMisses = Arrays.copyOf(misses, count);
+            for (int i = shards.size(); i < count; i++) {
+                grown.add(config.getStorageEngine().createShard(config, shardCapacity(config, count)));
+                grownLocks[i] = new Object();
+                grownHits[i] = new LongAdder();
+                grownMisses[i] = new LongAdder();
+            }
+            return new Layout(List.copyOf(grown), grownLocks, grownHits, grownMisses, previousCount);
+        }
+
+        //the budget of the cache is what the configured shards add up to, split evenly over however many there are
+        static long shardCapacity(CacheConfig config, int count) {
+            return config.getShardCapacityBytes() * config.getShardCount() / count;
+        }
+
+        //the same shards once every key is where the count says
+        Layout settled() {
+            return new Layout(shards, writeLocks, hits, misses, 0);
         }
+
+        //the shard that holds the key now
+        int shardIndex(String key) {
+            int index = indexFor(key, shards.size());
+            if (previousCount > 0) {
+                int previous = indexFor(key, previousCount);
+                if (previous != index && previous >= migrated) {
+                    return previous;
+                }
+            }
+            return index;
+        }
+    }
+
+    private final CacheConfig config;
+    private volatile Layout layout;
+    //held by a resize for all of its migration, and shared by whoever visits every shard, see shardCountLock
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    private final LongAdder migratedEntries = new LongAdder();
+    //copied on change, the write path reads it once per write; writers take the shard's write lock while a
+    //listener is set or a resize is in progress, so the listeners see the writes to a shard in the order they
+    //were applied and the migration sees no write to the shard it is moving
+    private volatile MutationListener[] listeners = new MutationListener[0];
+    private final ExpiryReaper reaper;
+
+    public ShardedCache() {
+        this(new CacheConfig());
+    }
+
+    public ShardedCache(CacheConfig config) {
+        this.config = config;
+        this.layout = Layout.create(config);
+        //a shard keeps its index when the count grows, an entry moved away is no longer there to expire
+        this.reaper = new ExpiryReaper(timeout -> layout.shards.get(timeout.shard()).expire(timeout.key(), timeout.deadline()));
     }
 
-    private ConcurrentHashMap<String, String> getShard(String key) {
-        int index = Math.abs(key.hashCode() % NUM_SHARDS);
-        return shards.get(index);
+    //placement is unchanged from the String keyed shards, inside a shard the key is packed into an int
+    private static int indexFor(String key, int shardCount) {
+        return Math.abs(key.hashCode() % shardCount);
     }
 
     public void put(String key, String value) {
-        getShard(key).put(key, value);
+        put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //values are stored as bytes, the cache takes ownership of the array
+    public void put(String key, byte[] value) {
+        int packedKey = Keys.pack(key);
+        Layout layout = this.layout;
+        if (listeners.length == 0 && layout.previousCount == 0) {
+            int shardIndex = indexFor(key, layout.shards.size());
+            layout.shards.get(shardIndex).put(packedKey, value);
+            if (layout == this.layout) {
+                return;
+            }
+            //a resize started meanwhile and may have moved the shard before the write landed in it
+            writeLocked(key, (index, shard, listeners) -> {
+                shard.put(packedKey, value);
+                return null;
+            });
+            dropStray(key, packedKey, shardIndex);
+            return;
+        }
+        writeLocked(key, (shardIndex, shard, listeners) -> {
+            shard.put(packedKey, value);
+            added(listeners, key, value, 0);
+            return null;
+        });
+    }
+
+    //the entry is no longer returned once ttlMillis have passed, and reclaimed shortly after
+    public void put(String key, String value, long ttlMillis) {
+        put(key, value.getBytes(StandardCharsets.UTF_8), ttlMillis);
+    }
+
+    public void put(String key, byte[] value, long ttlMillis) {
+        long deadline = ExpiryReaper.deadline(ttlMillis);
+        int packedKey = Keys.pack(key);
+        Layout layout = this.layout;
+        if (listeners.length == 0 && layout.previousCount == 0) {
+            int shardIndex = indexFor(key, layout.shards.size());
+            layout.shards.get(shardIndex).put(packedKey, value, deadline);
+            if (layout == this.layout) {
+                reaper.schedule(shardIndex, packedKey, deadline);
+                return;
+            }
+            dropStray(key, packedKey, shardIndex);
+        }
+        int shardIndex = writeLocked(key, (index, shard, listeners) -> {
+            shard.put(packedKey, value, deadline);
+            added(listeners, key, value, ttlMillis);
+            return index;
+        });
+        reaper.schedule(shardIndex, packedKey, deadline);
     }
 
     public String get(String key) {
-        return getShard(key).get(key);
+        ByteBuffer value = getValue(key);
+        return value == null ? null : StandardCharsets.UTF_8.decode(value).toString();
+    }
+
+    //a read-only view of the stored bytes that can be written to a channel as is, or null
+    //keys longer than MAX_KEY_SIZE bytes can never be stored
+    public ByteBuffer getValue(String key) {
+        boolean fits = Keys.fits(key);
+        int packedKey = fits ? Keys.pack(key) : 0;
+        while (true) {
+            Layout layout = this.layout;
+            int migrated = layout.migrated;
+            int shardIndex = layout.shardIndex(key);
+            ByteBuffer value = fits ? layout.shards.get(shardIndex).get(packedKey) : null;
+            if (value == null && fits && (layout != this.layout || migrated != layout.migrated)) {
+                //the key may have moved to another shard while it was looked up
+                continue;
+            }
+            (value != null ? layout.hits : layout.misses)[shardIndex].increment();
+            return value;
+        }
     }
 
     public boolean remove(String key) {
-        return getShard(key).remove(key) != null;
+        if (!Keys.fits(key)) {
+            return false;
+        }
+        int packedKey = Keys.pack(key);
+        Layout layout = this.layout;
+        if (listeners.length == 0 && layout.previousCount == 0) {
+            int shardIndex = indexFor(key, layout.shards.size());
+            boolean removed = layout.shards.get(shardIndex).remove(packedKey);
+            if (layout == this.layout) {
+                return removed;
+            }
+            //a resize started meanwhile, the key may have been moved before it was removed
+            dropStray(key, packedKey, shardIndex);
+            return writeLocked(key, (index, shard, listeners) -> shard.remove(packedKey)) || removed;
+        }
+        return writeLocked(key, (shardIndex, shard, listeners) -> {
+            boolean removed = shard.remove(packedKey);
+            if (removed) {
+                removed(listeners, key);
+            }
+            return removed;
+        });
+    }
+
+    //runs the write under the write lock of the shard that holds the key, looked up again when a resize moved the
+    //key while the writer waited for the lock
+    private <T> T writeLocked(String key, LockedWrite<T> write) {
+        while (true) {
+            Layout layout = this.layout;
+            int shardIndex = layout.shardIndex(key);
+            synchronized (layout.writeLocks[shardIndex]) {
+                if (layout == this.layout && shardIndex == layout.shardIndex(key)) {
+                    return write.apply(shardIndex, layout.shards.get(shardIndex), listeners);
+                }
+            }
+        }
+    }
+
+    //removes what a write without the lock left in a shard that no longer holds the key, under that shard's own
+    //write lock so a migration of it cannot run meanwhile
+    private void dropStray(String key, int packedKey, int shardIndex) {
+        while (true) {
+            Layout layout = this.layout;
+            synchronized (layout.writeLocks[shardIndex]) {
+                if (layout == this.layout) {
+                    if (layout.shardIndex(key) != shardIndex) {
+                        layout.shards.get(shardIndex).remove(packedKey);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    //MGET, the values in the order of the keys and null for missing ones, every shard is visited once
+    public ByteBuffer[] getValues(List<String> keys) {
+        ByteBuffer[] values = new ByteBuffer[keys.size()];
+        Layout layout = this.layout;
+        if (layout.previousCount > 0) {
+            //keys are being moved, each one is looked up on its own
+            for (int i = 0; i < values.length; i++) {
+                values[i] = getValue(keys.get(i));
+            }
+            return values;
+        }
+
+        int[][] positions = groupByShard(layout, keys);
+        for (int shardIndex = 0; shardIndex < positions.length; shardIndex++) {
+            int[] shardPositions = positions[shardIndex];
+            if (shardPositions.length == 0) {
+                continue;
+            }
+
+            ByteBuffer[] found = new ByteBuffer[shardPositions.length];
+            layout.shards.get(shardIndex).get(pack(keys, shardPositions), found);
+            int hit = 0;
+            for (int i = 0; i < shardPositions.length; i++) {
+                values[shardPositions[i]] = found[i];
+                if (found[i] != null) {
+                    hit++;
+                }
+            }
+            layout.hits[shardIndex].add(hit);
+            layout.misses[shardIndex].add(shardPositions.length - hit);
+        }
+
+        if (layout != this.layout) {
+            //a resize started meanwhile, the keys not found may have moved
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    values[i] = getValue(keys.get(i));
+                }
+            }
+        }
+        return values;
+    }
+
+    //MADD, every key is checked before anything is stored, the cache takes ownership of the arrays
+    public void putAll(List<String> keys, List<byte[]> values) {
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("keys and values differ in number");
+        }
+        for (String key : keys) {
+            if (!Keys.fits(key)) {
+                throw new IllegalArgumentException("key too large");
+            }
+        }
+
+        Layout layout = this.layout;
+        if (layout.previousCount > 0) {
+            //keys are being moved, each one finds its shard on its own
+            for (int i = 0; i < keys.size(); i++) {
+                put(keys.get(i), values.get(i));
+            }
+            return;
+        }
+
+        int[][] positions = groupByShard(layout, keys);
+        for (int shardIndex = 0; shardIndex < positions.length; shardIndex++) {
+            int[] shardPositions = positions[shardIndex];
+            if (shardPositions.length == 0) {
+                continue;
+            }
+
+            byte[][] shardValues = new byte[shardPositions.length][];
+            for (int i = 0; i < shardPositions.length; i++) {
+                shardValues[i] = values.get(shardPositions[i]);
+            }
+            MutationListener[] listeners = this.listeners;
+            if (listeners.length == 0) {
+                layout.shards.get(shardIndex).put(pack(keys, shardPositions), shardValues);
+                continue;
+            }
+            synchronized (layout.writeLocks[shardIndex]) {
+                if (layout == this.layout) {
+                    layout.shards.get(shardIndex).put(pack(keys, shardPositions), shardValues);
+                    for (int i = 0; i < shardPositions.length; i++) {
+                        added(listeners, keys.get(shardPositions[i]), shardValues[i], 0);
+                    }
+                    continue;
+                }
+            }
+            for (int i = 0; i < shardPositions.length; i++) {
+                put(keys.get(shardPositions[i]), shardValues[i]);
+            }
+        }
+
+        if (layout != this.layout) {
+            //a resize started meanwhile, the writes made without the lock are made again the safe way
+            for (int i = 0; i < keys.size(); i++) {
+                put(keys.get(i), values.get(i));
+                dropStray(keys.get(i), Keys.pack(keys.get(i)), indexFor(keys.get(i), layout.shards.size()));
+            }
+        }
+    }
+
+    //MDELETE, the number of keys that were present
+    public int removeAll(List<String> keys) {
+        Layout layout = this.layout;
+        if (layout.previousCount > 0) {
+            int removed = 0;
+            for (String key : keys) {
+                if (remove(key)) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        int removed = 0;
+        int[][] positions = groupByShard(layout, keys);
+        for (int shardIndex = 0; shardIndex < positions.length; shardIndex++) {
+            if (positions[shardIndex].length == 0) {
+                continue;
+            }
+            MutationListener[] listeners = this.listeners;
+            if (listeners.length == 0) {
+                removed += layout.shards.get(shardIndex).remove(pack(keys, positions[shardIndex]));
+                continue;
+            }
+            synchronized (layout.writeLocks[shardIndex]) {
+                if (layout == this.layout) {
+                    removed += layout.shards.get(shardIndex).remove(pack(keys, positions[shardIndex]));
+                    //a key that was not there is removed all the same wherever the listeners apply it
+                    for (int position : positions[shardIndex]) {
+                        removed(listeners, keys.get(position));
+                    }
+                    continue;
+                }
+            }
+            for (int position : positions[shardIndex]) {
+                if (remove(keys.get(position))) {
+                    removed++;
+                }
+            }
+        }
+
+        if (layout != this.layout) {
+            //a resize started meanwhile, a key moved before it was removed is removed where it went
+            for (String key : keys) {
+                if (Keys.fits(key)) {
+                    dropStray(key, Keys.pack(key), indexFor(key, layout.shards.size()));
+                    if (remove(key)) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    //writes to a shard are applied and passed on in the same order, to the listeners in the order they were added,
+    //writes to different shards are not ordered against each other. Entries that expire or are evicted are not
+    //passed on, and neither are entries moved between shards by a resize.
+    public synchronized void addMutationListener(MutationListener listener) {
+        MutationListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[listeners.length] = listener;
+        listeners = grown;
+    }
+
+    public synchronized void removeMutationListener(MutationListener listener) {
+        listeners = Arrays.stream(listeners).filter(current -> current != listener).toArray(MutationListener[]::new);
+    }
+
+    private static void added(MutationListener[] listeners, String key, byte[] value, long ttlMillis) {
+        for (MutationListener listener : listeners) {
+            listener.added(key, value, ttlMillis);
+        }
     }
 
+    private static void removed(MutationListener[] listeners, String key) {
+        for (MutationListener listener : listeners) {
+            listener.removed(key);
+        }
+    }
+
+    //grows the shard count online: every key that belongs to another shard under the new count is moved, one
+    //shard after the other. Reads carry on throughout, writes to the shard being moved wait for it. The cache's
+    //budget stays the same, split evenly over the new count. The count only grows, a resize to the current count
+    //does nothing.
+    public void resize(int shardCount) {
+        Lock lock = resizeLock.writeLock();
+        lock.lock();
+        try {
+            Layout current = layout;
+            int previousCount = current.shards.size();
+            if (shardCount < previousCount) {
+                throw new IllegalArgumentException("The shard count can only grow");
+            }
+            if (shardCount == previousCount) {
+                return;
+            }
+
+            Layout migrating = current.grow(config, shardCount, previousCount);
+            layout = migrating;
+            for (int shardIndex = 0; shardIndex < previousCount; shardIndex++) {
+                migrate(migrating, shardIndex);
+            }
+            layout = migrating.settled();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void migrate(Layout layout, int shardIndex) {
+        synchronized (layout.writeLocks[shardIndex]) {
+            CacheShard source = layout.shards.get(shardIndex);
+            long now = ExpiryReaper.now();
+            List<Moved> moved = new ArrayList<>();
+            source.forEachEntry((packed, value, expiresAt) -> {
+                int target = indexFor(Keys.unpack(packed), layout.shards.size());
+                if (target != shardIndex && (expiresAt == 0 || expiresAt > now)) {
+                    byte[] bytes = new byte[value.remaining()];
+                    value.duplicate().get(bytes);
+                    moved.add(new Moved(packed, bytes, expiresAt, target));
+                }
+            });
+
+            //copied first and removed last, so a reader finds the key in one of the shards all along
+            int[] keys = new int[moved.size()];
+            for (int i = 0; i < keys.length; i++) {
+                Moved entry = moved.get(i);
+                layout.shards.get(entry.target()).put(entry.key(), entry.value(), entry.expiresAt());
+                if (entry.expiresAt() != 0) {
+                    reaper.schedule(entry.target(), entry.key(), entry.expiresAt());
+                }
+                keys[i] = entry.key();
+            }
+            layout.migrated = shardIndex + 1;
+            source.remove(keys);
+            migratedEntries.add(keys.length);
+            source.shrink(Layout.shardCapacity(config, layout.shards.size()));
+        }
+    }
+
+    //held by a caller that visits every shard, so the shard count and the keys of each shard stay put meanwhile;
+    //it waits for a resize in progress, and a resize waits for it. A long visit holds it a batch at a time and
+    //checks the shard count again each time it takes it.
+    public Lock shardCountLock() {
+        return resizeLock.readLock();
+    }
+
+    public boolean isResizing() {
+        return layout.previousCount > 0;
+    }
+
+    //entries moved between shards by resizes since the cache was created
+    public long getMigratedCount() {
+        return migratedEntries.sum();
+    }
+
+    //every live entry of the shard, entries changed while the shard is visited may or may not be seen; the consumer
+    //runs under the shard's locks and must not call back into the cache
+    public void forEachEntry(int shardIndex, EntryConsumer consumer) {
+        List<CacheShard> shards = layout.shards;
+        if (shardIndex < 0 || shardIndex >= shards.size()) {
+            throw new IndexOutOfBoundsException("Invalid shard index");
+        }
+        shards.get(shardIndex).forEachEntry((packed, value, expiresAt) -> {
+            long ttlMillis = expiresAt == 0 ? 0 : expiresAt - ExpiryReaper.now();
+            if (expiresAt == 0 || ttlMillis > 0) {
+                consumer.accept(Keys.unpack(packed), value, ttlMillis);
+            }
+        });
+    }
+
+    //a batch of about count live entries of the shard in packed key order, from a position on; a walk over the shard
+    //starts at position 0 and carries on from the position returned, -1 after the last batch. The consumer runs once
+    //the shard's locks are released, so it may take its time. What a walk sees of concurrent writes is what a scan
+    //sees of them.
+    public long forEachEntry(int shardIndex, long position, int count, EntryConsumer consumer) {
+        List<CacheShard> shards = layout.shards;
+        if (shardIndex < 0 || shardIndex >= shards.size()) {
+            throw new IndexOutOfBoundsException("Invalid shard index");
+        }
+        else if (position < 0 || position > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Invalid position");
+        }
+        else if (count <= 0) {
+            throw new IllegalArgumentException("Invalid batch size");
+        }
+
+        //the keys of the batch first, then only their entries are copied
+        CacheShard shard = shards.get(shardIndex);
+        SmallestKeys smallest = new SmallestKeys(position, count);
+        shard.forEachKey(smallest);
+        int[] keys = smallest.sorted();
+        if (keys.length == 0) {
+            return -1;
+        }
+        long last = Integer.toUnsignedLong(keys[keys.length - 1]);
+        List<Copied> batch = new ArrayList<>(keys.length);
+        shard.forEachEntry(position, last, (packed, value, expiresAt) -> batch.add(new Copied(packed, value, expiresAt)));
+
+        //views of arrays the cache never modifies, or copies of off-heap slots, they stay valid without the locks
+        long now = ExpiryReaper.now();
+        for (Copied entry : batch) {
+            long ttlMillis = entry.expiresAt() == 0 ? 0 : entry.expiresAt() - now;
+            if (entry.expiresAt() == 0 || ttlMillis > 0) {
+                consumer.accept(Keys.unpack(entry.key()), entry.value(), ttlMillis);
+            }
+        }
+        return keys.length < count || last == 0xFFFFFFFFL ? -1 : last + 1;
+    }
+
+    //the positions of the keys owned by each shard, keys that can never be stored are left out
+    private static int[][] groupByShard(Layout layout, List<String> keys) {
+        int shardCount = layout.shards.size();
+        int[] shardOf = new int[keys.size()];
+        int[] counts = new int[shardCount];
+        for (int i = 0; i < shardOf.length; i++) {
+            String key = keys.get(i);
+            shardOf[i] = Keys.fits(key) ? indexFor(key, shardCount) : -1;
+            if (shardOf[i] >= 0) {
+                counts[shardOf[i]]++;
+            }
+        }
+
+        int[][] positions = new int[shardCount][];
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            positions[shardIndex] = new int[counts[shardIndex]];
+            counts[shardIndex] = 0;
+        }
+        for (int i = 0; i < shardOf.length; i++) {
+            if (shardOf[i] >= 0) {
+                positions[shardOf[i]][counts[shardOf[i]]++] = i;
+            }
+        }
+        return positions;
+    }
+
+    private static int[] pack(List<String> keys, int[] positions) {
+        int[] packed = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            packed[i] = Keys.pack(keys.get(positions[i]));
+        }
+        return packed;
+    }
+
+    //a key being moved by a resize is listed once
     public List<String> getAllKeys() {
-        return shards.stream()
-                .flatMap(shard -> shard.keySet().stream())
+        Layout layout = this.layout;
+        return layout.shards.stream()
+                .flatMap(shard -> shard.keys().stream())
+                .distinct()
                 .collect(Collectors.toList());
     }
 
+    //a page of at most count keys, shard by shard and in packed key order inside a shard, a scan starts at cursor 0
+    //keys present for the whole scan are returned exactly once, keys added or removed meanwhile may be missed, and
+    //so may keys moved by a resize during the scan
+    public KeyPage scan(long cursor, int count) {
+        List<CacheShard> shards = layout.shards;
+        if (cursor < 0 || (cursor >>> 32) >= shards.size()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        else if (count <= 0) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+
+        //the cursor is the shard index in the high half and the lowest packed key still to return in the low half
+        int limit = Math.min(count, MAX_SCAN_PAGE_SIZE);
+        List<String> keys = new ArrayList<>();
+        int shardIndex = (int) (cursor >>> 32);
+        long position = cursor & 0xFFFFFFFFL;
+        for (; shardIndex < shards.size(); shardIndex++, position = 0) {
+            SmallestKeys smallest = new SmallestKeys(position, limit - keys.size());
+            shards.get(shardIndex).forEachKey(smallest);
+            int[] page = smallest.sorted();
+            for (int packed : page) {
+                keys.add(Keys.unpack(packed));
+            }
+
+            if (keys.size() == limit) {
+                //resume after the last key, past the largest possible key this carries over into the next shard
+                long next = ((long) shardIndex << 32) + Integer.toUnsignedLong(page[page.length - 1]) + 1;
+                return new KeyPage(keys, (next >>> 32) < shards.size() ? next : 0);
+            }
+        }
+        return new KeyPage(keys, 0);
+    }
+
     public int size() {
-        return shards.stream().mapToInt(ConcurrentHashMap::size).sum();
+        return layout.shards.stream().mapToInt(CacheShard::size).sum();
+    }
+
+    public long getMemoryUsed() {
+        return layout.shards.stream().mapToLong(CacheShard::memoryUsed).sum();
+    }
+
+    public long getEvictionCount() {
+        return layout.shards.stream().mapToLong(CacheShard::evictions).sum();
+    }
+
+    public long getExpiredCount() {
+        return layout.shards.stream().mapToLong(CacheShard::expirations).sum();
+    }
+
+    //stops reclaiming expired entries, they stay invisible to reads
+    public void close() {
+        reaper.stop();
+    }
+
+    public int getShardCount() {
+        return layout.shards.size();
+    }
+
+    public ShardStats getShardStats(int shardIndex) {
+        Layout layout = this.layout;
+        if (shardIndex < 0 || shardIndex >= layout.shards.size()) {
+            throw new IndexOutOfBoundsException("Invalid shard index");
+        }
+        CacheShard shard = layout.shards.get(shardIndex);
+        return new ShardStats(shard.size(), shard.memoryUsed(), layout.hits[shardIndex].sum(),
+                layout.misses[shardIndex].sum(), shard.evictions(), shard.expirations());
     }
 
     public Set<String> getKeysForShard(int shardIndex) {
-        if (shardIndex < 0 || shardIndex >= NUM_SHARDS) {
+        List<CacheShard> shards = layout.shards;
+        if (shardIndex < 0 || shardIndex >= shards.size()) {
             throw new IndexOutOfBoundsException("Invalid shard index");
         }
-        return shards.get(shardIndex).keySet();
+        return shards.get(shardIndex).keys();
+    }
+
+    //the keys that belong to the shard under shardCount, a count the cache had earlier. A caller that visits the
+    //shards of one count sees every key present for the whole visit exactly once, even when a resize grows the
+    //count in between: once it has, every shard is searched for the keys of the one asked for.
+    public Set<String> getKeysForShard(int shardIndex, int shardCount) {
+        Lock lock = shardCountLock();
+        lock.lock();
+        try {
+            List<CacheShard> shards = layout.shards;
+            if (shardCount > shards.size() || shardIndex < 0 || shardIndex >= shardCount) {
+                throw new IndexOutOfBoundsException("Invalid shard index");
+            }
+            if (shardCount == shards.size()) {
+                return shards.get(shardIndex).keys();
+            }
+            Set<String> keys = new HashSet<>();
+            for (CacheShard shard : shards) {
+                shard.forEachKey(packed -> {
+                    String key = Keys.unpack(packed);
+                    if (indexFor(key, shardCount) == shardIndex) {
+                        keys.add(key);
+                    }
+                });
+            }
+            return keys;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //the count smallest keys at or above a position in unsigned order, kept in a bounded max-heap
+    private static final class SmallestKeys implements IntConsumer {
+        private final long from;
+        //keys with the sign bit flipped, so signed comparisons order them unsigned
+        private final int[] heap;
+        private int size;
+
+        SmallestKeys(long from, int count) {
+            this.from = from;
+            this.heap = new int[count];
+        }
+
+        @Override
+        public void accept(int packed) {
+            if (Integer.toUnsignedLong(packed) < from) {
+                return;
+            }
+
+            int biased = packed ^ Integer.MIN_VALUE;
+            if (size < heap.length) {
+                heap[size] = biased;
+                siftUp(size++);
+            }
+            else if (biased < heap[0]) {
+                heap[0] = biased;
+                siftDown(0);
+            }
+        }
+
+        int[] sorted() {
+            int[] keys = Arrays.copyOf(heap, size);
+            Arrays.sort(keys);
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] ^= Integer.MIN_VALUE;
+            }
+            return keys;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] >= heap[i]) {
+                    return;
+                }
+                swap(parent, i);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && heap[left] > heap[largest]) {
+                    largest = left;
+                }
+                if (right < size && heap[right] > heap[largest]) {
+                    largest = right;
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(largest, i);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int tmp = heap[a];
+            heap[a] = heap[b];
+            heap[b] = tmp;
+        }
     }
 }
@@ -0,0 +1,191 @@
+package org.global.dax.shared;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.global.dax.shared.Constants.MAX_VALUE_SIZE;
+import static org.global.dax.shared.Constants.SLAB_SIZE;
+
+/*
+ * Size-class slab allocator over direct ByteBuffers. Each slab belongs to one size class and is cut into equal
+ * slots; a value goes into the smallest class it fits, so at most half of a slot is wasted and freed slots are
+ * reused without fragmenting the slab. Slabs are reserved lazily up to the capacity, a size class can give up its last
+ * slab once its slots are freed, and the next class that needs a slab takes it. A slab is only dropped, for the
+ * garbage collector to return its memory, when the capacity is lowered.
+ *
+ * A slot is addressed by a handle packing [size class:8][slot:32][length:16], which is what the index stores.
+ * Not thread-safe for allocate/free, reads and writes of distinct slots use absolute operations only.
+ */
+final class SlabAllocator {
+    static final int[] SIZE_CLASSES = {32, 64, 128, 256, 512, 1024, MAX_VALUE_SIZE};
+
+    private static final class SizeClass {
+        private final int slotSize;
+        private final int slotsPerSlab;
+        private final List<ByteBuffer> slabs = new ArrayList<>();
+        private int[] freeSlots = new int[16];
+        private int freeCount;
+        //slots below this index have been handed out at least once
+        private int carved;
+
+        private SizeClass(int slotSize) {
+            this.slotSize = slotSize;
+            this.slotsPerSlab = SLAB_SIZE / slotSize;
+        }
+    }
+
+    private final SizeClass[] classes = new SizeClass[SIZE_CLASSES.length];
+    //slabs given up by their size class, handed to the next class that runs out of slots
+    private final List<ByteBuffer> spareSlabs = new ArrayList<>();
+    private long capacity;
+    private long reservedBytes;
+    private long usedBytes;
+
+    SlabAllocator(long capacity) {
+        this.capacity = capacity;
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            classes[i] = new SizeClass(SIZE_CLASSES[i]);
+        }
+    }
+
+    static int sizeClass(int length) {
+        if (length > MAX_VALUE_SIZE) {
+            throw new IllegalArgumentException("value too large");
+        }
+        int i = 0;
+        while (SIZE_CLASSES[i] < length) {
+            i++;
+        }
+        return i;
+    }
+
+    static int sizeClassOf(long handle) {
+        return (int) (handle >>> 48);
+    }
+
+    static int length(long handle) {
+        return (int) (handle & 0xFFFF);
+    }
+
+    //returns the handle of a free slot for length bytes, or IntLongHashMap.NO_VALUE if the capacity is exhausted
+    long allocate(int length) {
+        int classIndex = sizeClass(length);
+        SizeClass sizeClass = classes[classIndex];
+
+        int slot;
+        if (sizeClass.freeCount > 0) {
+            slot = sizeClass.freeSlots[--sizeClass.freeCount];
+        } else {
+            if (sizeClass.carved == sizeClass.slabs.size() * sizeClass.slotsPerSlab) {
+                if (!spareSlabs.isEmpty()) {
+                    sizeClass.slabs.add(spareSlabs.remove(spareSlabs.size() - 1));
+                } else if (reservedBytes + SLAB_SIZE > capacity) {
+                    return IntLongHashMap.NO_VALUE;
+                } else {
+                    sizeClass.slabs.add(ByteBuffer.allocateDirect(SLAB_SIZE));
+                    reservedBytes += SLAB_SIZE;
+                }
+            }
+            slot = sizeClass.carved++;
+        }
+
+        usedBytes += sizeClass.slotSize;
+        return handle(classIndex, slot, length);
+    }
+
+    //same slot, new length; only valid when the new length belongs to the same size class
+    static long resize(long handle, int length) {
+        return handle(sizeClassOf(handle), (int) (handle >>> 16), length);
+    }
+
+    void free(long handle) {
+        SizeClass sizeClass = classes[sizeClassOf(handle)];
+        if (sizeClass.freeCount == sizeClass.freeSlots.length) {
+            int[] larger = new int[sizeClass.freeCount * 2];
+            System.arraycopy(sizeClass.freeSlots, 0, larger, 0, sizeClass.freeCount);
+            sizeClass.freeSlots = larger;
+        }
+        sizeClass.freeSlots[sizeClass.freeCount++] = (int) (handle >>> 16);
+        usedBytes -= sizeClass.slotSize;
+    }
+
+    //the size class other than the given one (-1 for none) that holds the most slabs, or -1 when no other class holds any
+    int donor(int classIndex) {
+        int donor = -1;
+        for (int i = 0; i < classes.length; i++) {
+            if (i != classIndex && !classes[i].slabs.isEmpty()
+                    && (donor < 0 || classes[i].slabs.size() > classes[donor].slabs.size())) {
+                donor = i;
+            }
+        }
+        return donor;
+    }
+
+    //whether the handle is a slot of the last slab of the size class, the one releaseLastSlab gives up
+    boolean inLastSlab(int classIndex, long handle) {
+        SizeClass sizeClass = classes[classIndex];
+        return sizeClassOf(handle) == classIndex
+                && (int) (handle >>> 16) >= (sizeClass.slabs.size() - 1) * sizeClass.slotsPerSlab;
+    }
+
+    //gives up the last slab of the size class, every slot of it must have been freed
+    void releaseLastSlab(int classIndex) {
+        SizeClass sizeClass = classes[classIndex];
+        int first = (sizeClass.slabs.size() - 1) * sizeClass.slotsPerSlab;
+        int kept = 0;
+        for (int i = 0; i < sizeClass.freeCount; i++) {
+            if (sizeClass.freeSlots[i] < first) {
+                sizeClass.freeSlots[kept++] = sizeClass.freeSlots[i];
+            }
+        }
+        sizeClass.freeCount = kept;
+        sizeClass.carved = Math.min(sizeClass.carved, first);
+        spareSlabs.add(sizeClass.slabs.remove(sizeClass.slabs.size() - 1));
+    }
+
+    //slabs already reserved beyond it stay until they are given up and dropped, see dropSpareSlab
+    void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    //drops a slab given up by its size class, false when there is none
+    boolean dropSpareSlab() {
+        if (spareSlabs.isEmpty()) {
+            return false;
+        }
+        spareSlabs.remove(spareSlabs.size() - 1);
+        reservedBytes -= SLAB_SIZE;
+        return true;
+    }
+
+    void write(long handle, byte[] value) {
+        SizeClass sizeClass = classes[sizeClassOf(handle)];
+        int slot = (int) (handle >>> 16);
+        sizeClass.slabs.get(slot / sizeClass.slotsPerSlab)
+                .put((slot % sizeClass.slotsPerSlab) * sizeClass.slotSize, value, 0, value.length);
+    }
+
+    byte[] read(long handle) {
+        SizeClass sizeClass = classes[sizeClassOf(handle)];
+        int slot = (int) (handle >>> 16);
+        byte[] value = new byte[length(handle)];
+        sizeClass.slabs.get(slot / sizeClass.slotsPerSlab)
+                .get((slot % sizeClass.slotsPerSlab) * sizeClass.slotSize, value, 0, value.length);
+        return value;
+    }
+
+    //direct memory reserved for slabs
+    long reservedBytes() {
+        return reservedBytes;
+    }
+
+    //slot bytes currently holding values
+    long usedBytes() {
+        return usedBytes;
+    }
+
+    private static long handle(int classIndex, int slot, int length) {
+        return ((long) classIndex << 48) | ((slot & 0xFFFFFFFFL) << 16) | length;
+    }
+}
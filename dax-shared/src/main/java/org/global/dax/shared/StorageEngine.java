@@ -0,0 +1,21 @@
+package org.global.dax.shared;
+
+//how a ShardedCache stores its entries, chosen once when the cache is created
+public enum StorageEngine {
+    //values as byte arrays in a concurrent primitive int-keyed map per shard
+    HEAP {
+        @Override
+        CacheShard createShard(CacheConfig config, long capacityBytes) {
+            return new HeapShard(capacityBytes, config.getEvictionPolicy());
+        }
+    },
+    //values in direct memory slabs, the heap only holds the primitive index
+    OFF_HEAP {
+        @Override
+        CacheShard createShard(CacheConfig config, long capacityBytes) {
+            return new OffHeapShard(capacityBytes, config.getEvictionPolicy());
+        }
+    };
+
+    abstract CacheShard createShard(CacheConfig config, long capacityBytes);
+}
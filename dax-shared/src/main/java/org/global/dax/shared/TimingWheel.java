@@ -0,0 +1,97 @@
+package org.global.dax.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Hierarchical timing wheel: LEVELS wheels of SLOTS slots, level n slots span SLOTS^n ticks. A deadline goes into
+ * the coarsest level it fits, and each time a finer level wraps the next coarser slot is cascaded down, so
+ * scheduling is O(1) and every deadline is moved at most LEVELS times before it fires. Deadlines further out
+ * than the wheel spans wait in the top level and are re-placed on every cascade.
+ *
+ * Not thread-safe, owned by one thread.
+ */
+final class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 5;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    record Timeout(int shard, int key, long deadline) {
+    }
+
+    private final long tickMillis;
+    private final List<List<List<Timeout>>> levels = new ArrayList<>(LEVELS);
+    //every tick up to and including this one has fired
+    private long currentTick;
+    private int pending;
+
+    TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+        for (int level = 0; level < LEVELS; level++) {
+            List<List<Timeout>> slots = new ArrayList<>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots.add(new ArrayList<>());
+            }
+            levels.add(slots);
+        }
+    }
+
+    int pending() {
+        return pending;
+    }
+
+    void schedule(Timeout timeout) {
+        pending++;
+        place(timeout);
+    }
+
+    //fires every timeout whose deadline is at or before now, in tick order
+    void advance(long now, Consumer<Timeout> expired) {
+        long targetTick = now / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+
+            List<Timeout> slot = levels.get(0).get((int) (currentTick & (SLOTS - 1)));
+            if (!slot.isEmpty()) {
+                List<Timeout> due = new ArrayList<>(slot);
+                slot.clear();
+                pending -= due.size();
+                due.forEach(expired);
+            }
+        }
+    }
+
+    //when level n wraps, the matching slot of level n + 1 is redistributed over the finer levels
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return;
+            }
+            List<Timeout> slot = levels.get(level).get((int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1)));
+            if (!slot.isEmpty()) {
+                List<Timeout> moved = new ArrayList<>(slot);
+                slot.clear();
+                moved.forEach(this::place);
+            }
+        }
+    }
+
+    private void place(Timeout timeout) {
+        //round up, a timeout never fires before its deadline
+        long tick = Math.max((timeout.deadline() + tickMillis - 1) / tickMillis, currentTick + 1);
+        if (tick - currentTick >= SPAN) {
+            tick = currentTick + SPAN - 1;
+        }
+
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        levels.get(level).get((int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1))).add(timeout);
+    }
+}
@@ -0,0 +1,123 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.global.dax.shared.BinaryProtocol.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryProtocolTest {
+    @Test
+    void testEncodeRequestLayout() {
+        ByteBuffer frame = encodeRequest(OP_ADD, "abcd", "hello".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(REQUEST_HEADER_SIZE + 5, frame.remaining());
+        assertEquals(OP_ADD, frame.get());
+        assertEquals("abcd", decodeKey(frame));
+        assertEquals(5, frame.getInt());
+        assertEquals(5, frame.remaining());
+    }
+
+    @Test
+    void testShortKeysArePadded() {
+        byte[] key = encodeKey("ab");
+
+        assertArrayEquals(new byte[]{'a', 'b', 0, 0}, key);
+        assertEquals("ab", decodeKey(ByteBuffer.wrap(key)));
+    }
+
+    @Test
+    void testKeyTooLarge() {
+        assertThrows(IllegalArgumentException.class, () -> encodeKey("abcde"));
+    }
+
+    @Test
+    void testEncodeCommandKeepsSpacesInValues() {
+        ByteBuffer frame = encodeCommand("ADD abcd hello world");
+
+        assertEquals(OP_ADD, frame.get());
+        assertEquals("abcd", decodeKey(frame));
+        byte[] value = new byte[frame.getInt()];
+        frame.get(value);
+        assertEquals("hello world", new String(value, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testEncodeCommandGetAll() {
+        assertEquals(OP_GET_ALL, encodeCommand("GET ALL").get(0));
+        assertEquals(OP_GET, encodeCommand("get abcd").get(0));
+        assertEquals(OP_HEARTBEAT, encodeCommand("HEARTBEAT").get(0));
+    }
+
+    @Test
+    void testEncodeCommandGetAllPage() {
+        ByteBuffer frame = encodeCommand("GET ALL 10 42");
+        assertEquals(OP_SCAN, frame.get());
+        frame.position(REQUEST_HEADER_SIZE);
+        assertEquals(10, frame.getInt());
+        assertEquals(42, frame.getLong());
+        assertEquals(0, encodeCommand("GET ALL 10").getLong(REQUEST_HEADER_SIZE + Integer.BYTES));
+        assertThrows(IllegalArgumentException.class, () -> encodeCommand("GET ALL ten"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ADD abcd", "GET", "DELETE", "PUT abcd test"})
+    void testEncodeInvalidCommand(String command) {
+        assertThrows(IllegalArgumentException.class, () -> encodeCommand(command));
+    }
+
+    @Test
+    void testFormatResponse() {
+        assertEquals("OK", formatResponse(OP_ADD, STATUS_OK, new byte[0]));
+        assertEquals("test", formatResponse(OP_GET, STATUS_OK, "test".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("", formatResponse(OP_GET, STATUS_NOT_FOUND, new byte[0]));
+        assertEquals("ERROR Invalid key", formatResponse(OP_DELETE, STATUS_NOT_FOUND, new byte[0]));
+        assertEquals("ERROR value too large", formatResponse(OP_ADD, STATUS_ERROR, "value too large".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("BUSY", formatResponse(OP_GET, STATUS_BUSY, new byte[0]));
+    }
+
+    @Test
+    void testDecodeKeys() {
+        byte[] payload = ByteBuffer.allocate(8).put(encodeKey("abcd")).put(encodeKey("ef")).array();
+
+        assertEquals(List.of("abcd", "ef"), decodeKeys(payload));
+        assertEquals("abcd,ef", formatResponse(OP_GET_ALL, STATUS_OK, payload));
+    }
+
+    @Test
+    void testEncodeBatchCommands() {
+        ByteBuffer frame = encodeCommand("MGET abcd ef");
+        assertEquals(OP_MGET, frame.get());
+        frame.position(REQUEST_HEADER_SIZE);
+        assertEquals(2, frame.getInt());
+        assertEquals(OP_MDELETE, encodeCommand("mdelete abcd").get(0));
+        assertEquals(OP_MADD, encodeCommand("MADD abcd 1 ef 2").get(0));
+        assertThrows(IllegalArgumentException.class, () -> encodeCommand("MADD abcd"));
+        assertThrows(IllegalArgumentException.class, () -> encodeBatchRequest(OP_MGET, List.of()));
+    }
+
+    @Test
+    void testValuesRoundTrip() {
+        byte[] payload = encodeValues(new ByteBuffer[]{ByteBuffer.wrap("one".getBytes()), null, ByteBuffer.allocate(0)});
+        List<byte[]> values = decodeValues(payload);
+
+        assertArrayEquals("one".getBytes(), values.get(0));
+        assertNull(values.get(1));
+        assertArrayEquals(new byte[0], values.get(2));
+        assertEquals("one  ", formatResponse(OP_MGET, STATUS_OK, payload));
+    }
+
+    @Test
+    void testKeyPageRoundTrip() {
+        KeyPage page = new KeyPage(List.of("abcd", "ef"), 7);
+
+        assertEquals(page, decodeKeyPage(encodeKeyPage(page)));
+        assertEquals("7 abcd,ef", formatResponse(OP_SCAN, STATUS_OK, encodeKeyPage(page)));
+        assertEquals("0", formatResponse(OP_SCAN, STATUS_OK, encodeKeyPage(new KeyPage(List.of(), 0))));
+    }
+}
@@ -0,0 +1,63 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+    private static final int MIN = BufferPool.MIN_BUFFER_SIZE;
+    private static final int MAX = BufferPool.MAX_BUFFER_SIZE;
+
+    @Test
+    void testSizeClasses() {
+        assertEquals(0, BufferPool.sizeClass(1));
+        assertEquals(0, BufferPool.sizeClass(MIN));
+        assertEquals(1, BufferPool.sizeClass(MIN + 1));
+        assertEquals(1, BufferPool.sizeClass(2 * MIN));
+        assertEquals(2, BufferPool.sizeClass(2 * MIN + 1));
+        assertEquals(BufferPool.sizeClass(MAX), Integer.numberOfTrailingZeros(MAX / MIN));
+        assertThrows(IllegalArgumentException.class, () -> BufferPool.sizeClass(MAX + 1));
+    }
+
+    @Test
+    void testReleasedBuffersAreReused() {
+        BufferPool pool = new BufferPool(4L * MAX);
+        ByteBuffer buffer = pool.acquire(100);
+        assertTrue(buffer.isDirect());
+        assertEquals(MIN, buffer.capacity());
+        assertEquals(MIN, pool.inUseBytes());
+
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(0, pool.inUseBytes());
+
+        ByteBuffer reused = pool.acquire(MIN);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(MIN, pool.allocatedBytes());
+    }
+
+    @Test
+    void testCapacityIsEnforced() {
+        BufferPool pool = new BufferPool(MAX);
+        ByteBuffer large = pool.acquire(MAX);
+        assertNotNull(large);
+
+        assertNull(pool.acquire(MIN));
+        assertEquals(1, pool.exhaustedCount());
+
+        //an idle buffer of another class is dropped to make room
+        pool.release(large);
+        ByteBuffer small = pool.acquire(MIN);
+        assertNotNull(small);
+        assertEquals(MIN, pool.allocatedBytes());
+        assertEquals(MIN, pool.inUseBytes());
+    }
+
+    @Test
+    void testCapacityMustHoldTheLargestBuffer() {
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(MAX - 1));
+    }
+}
@@ -0,0 +1,116 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(StorageEngine.class)
+    void testSnapshotRoundTrip(StorageEngine engine) throws IOException {
+        ShardedCache cache = new ShardedCache(new CacheConfig().storageEngine(engine));
+        ShardedCache restored = new ShardedCache(new CacheConfig().storageEngine(engine));
+        try {
+            for (int i = 0; i < 5000; i++) {
+                cache.put(Integer.toString(i, 36), ("value" + i).getBytes());
+            }
+            cache.put("big", "A".repeat(2096).getBytes());
+            cache.put("ttl", "value".getBytes(), 60_000);
+
+            assertEquals(5002, CacheSnapshot.write(cache, directory));
+            assertEquals(5002, CacheSnapshot.load(restored, directory));
+
+            assertEquals(5002, restored.size());
+            assertEquals("value4999", restored.get(Integer.toString(4999, 36)));
+            assertEquals(2096, restored.get("big").length());
+            assertEquals("value", restored.get("ttl"));
+        } finally {
+            cache.close();
+            restored.close();
+        }
+    }
+
+    @Test
+    void testEntriesExpiredWhileDownAreNotLoaded() throws IOException, InterruptedException {
+        ShardedCache cache = new ShardedCache();
+        ShardedCache restored = new ShardedCache();
+        try {
+            cache.put("keep", "value");
+            cache.put("tmp", "value".getBytes(), 300);
+            assertEquals(2, CacheSnapshot.write(cache, directory));
+
+            Thread.sleep(400);
+            assertEquals(1, CacheSnapshot.load(restored, directory));
+            assertEquals(List.of("keep"), restored.getAllKeys());
+        } finally {
+            cache.close();
+            restored.close();
+        }
+    }
+
+    @Test
+    void testNewSnapshotReplacesTheOldOneWhole() throws IOException {
+        ShardedCache wide = new ShardedCache(new CacheConfig().shardCount(16));
+        ShardedCache narrow = new ShardedCache(new CacheConfig().shardCount(2));
+        ShardedCache restored = new ShardedCache(new CacheConfig().shardCount(4));
+        try {
+            for (int i = 0; i < 100; i++) {
+                wide.put("w" + i, "value");
+            }
+            CacheSnapshot.write(wide, directory);
+            narrow.put("n", "value");
+            CacheSnapshot.write(narrow, directory);
+
+            //no shard file of the wider snapshot is left behind, and the shard count may differ on load
+            assertEquals(1, CacheSnapshot.load(restored, directory));
+            assertEquals(List.of("n"), restored.getAllKeys());
+            try (var files = Files.list(directory)) {
+                assertEquals(List.of("snapshot"), files.map(file -> file.getFileName().toString()).toList());
+            }
+        } finally {
+            wide.close();
+            narrow.close();
+            restored.close();
+        }
+    }
+
+    @Test
+    void testSnapshotRecordsTheLogSequenceItCovers() throws IOException {
+        ShardedCache cache = new ShardedCache();
+        try {
+            assertEquals(0, CacheSnapshot.logSequence(directory));
+            cache.put("abcd", "value");
+            CacheSnapshot.write(cache, directory, 42);
+            assertEquals(42, CacheSnapshot.logSequence(directory));
+            CacheSnapshot.write(cache, directory);
+            assertEquals(0, CacheSnapshot.logSequence(directory));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void testMissingAndCorruptSnapshots() throws IOException {
+        ShardedCache cache = new ShardedCache();
+        try {
+            assertEquals(-1, CacheSnapshot.load(cache, directory));
+
+            Files.createDirectories(directory.resolve("snapshot"));
+            Files.write(directory.resolve("snapshot").resolve("shard-0.dax"), new byte[]{1, 2, 3});
+            assertThrows(IOException.class, () -> CacheSnapshot.load(cache, directory));
+        } finally {
+            cache.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentIntHashMapTest {
+
+    @Test
+    void testMatchesHashMapUnderRandomOperations() {
+        ConcurrentIntHashMap<String> map = new ConcurrentIntHashMap<>();
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(1);
+
+        //a small key space forces collisions, growth and backward shifts in every segment
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(5_000);
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+                case 1 -> assertEquals(expected.remove(key), map.remove(key));
+                default -> assertEquals(expected.get(key), map.get(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+
+        Map<Integer, String> visited = new HashMap<>();
+        map.forEach((key, value, expiresAt) -> visited.put(key, value));
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void testReadersNeverSeeForeignValuesWhileWritersChurn() throws Exception {
+        ConcurrentIntHashMap<String> map = new ConcurrentIntHashMap<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        try {
+            Future<?> writer = pool.submit(() -> {
+                Random random = new Random(2);
+                while (!stop.get()) {
+                    int key = random.nextInt(10_000);
+                    if (random.nextBoolean()) {
+                        map.put(key, Integer.toString(key));
+                    } else {
+                        map.remove(key);
+                    }
+                }
+            });
+
+            Future<?>[] readers = new Future<?>[3];
+            for (int r = 0; r < readers.length; r++) {
+                readers[r] = pool.submit(() -> {
+                    for (int i = 0; i < 1_000_000; i++) {
+                        int key = i % 10_000;
+                        String value = map.get(key);
+                        //either absent or the value written for exactly this key
+                        assertTrue(value == null || value.equals(Integer.toString(key)));
+                    }
+                });
+            }
+
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+            stop.set(true);
+            writer.get(30, TimeUnit.SECONDS);
+        } finally {
+            stop.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testZeroKey() {
+        ConcurrentIntHashMap<String> map = new ConcurrentIntHashMap<>();
+
+        assertNull(map.put(0, "empty"));
+        assertEquals("empty", map.get(0));
+        assertEquals(1, map.size());
+        assertEquals("empty", map.remove(0));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void testRemoveTellsWhetherTheRemovedEntryWasLive() {
+        ConcurrentIntHashMap<String> map = new ConcurrentIntHashMap<>();
+        List<String> removed = new ArrayList<>();
+
+        map.put(1, "live", ExpiryReaper.now() + 60_000);
+        map.put(2, "expired", ExpiryReaper.now());
+        map.put(0, "empty", ExpiryReaper.now());
+        assertTrue(map.remove(1, removed::add));
+        assertFalse(map.remove(2, removed::add));
+        assertFalse(map.remove(0, removed::add));
+        assertFalse(map.remove(3, removed::add));
+        assertEquals(List.of("live", "expired", "empty"), removed);
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,69 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.global.dax.shared.Constants.SLAB_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvictionPolicyTest {
+    private static final int VALUE_SIZE = 100;
+    private static final int ENTRIES_IN_BUDGET = 2_000;
+
+    private static byte[] value() {
+        return "v".repeat(VALUE_SIZE).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @ParameterizedTest
+    @EnumSource(EvictionPolicy.class)
+    void testHeapShardStaysWithinItsBudget(EvictionPolicy policy) {
+        long capacity = ENTRIES_IN_BUDGET * (VALUE_SIZE + HeapShard.ENTRY_OVERHEAD);
+        HeapShard shard = new HeapShard(capacity, policy);
+
+        for (int key = 1; key <= 20_000; key++) {
+            shard.put(key, value());
+            assertTrue(shard.memoryUsed() <= capacity);
+        }
+
+        assertEquals(ENTRIES_IN_BUDGET, shard.size());
+        assertEquals(20_000 - ENTRIES_IN_BUDGET, shard.evictions());
+    }
+
+    @ParameterizedTest
+    @EnumSource(EvictionPolicy.class)
+    void testOffHeapShardEvictsWithinTheSizeClass(EvictionPolicy policy) {
+        //a single slab of 128 byte slots
+        OffHeapShard shard = new OffHeapShard(SLAB_SIZE, policy);
+        int slots = SLAB_SIZE / 128;
+
+        for (int key = 1; key <= slots * 2; key++) {
+            shard.put(key, value());
+        }
+
+        assertEquals(slots, shard.size());
+        assertEquals(slots, shard.evictions());
+        assertEquals(SLAB_SIZE, shard.reservedBytes());
+
+        //another size class with nothing of its own to evict takes the slab over
+        shard.put(0x7FFF, new byte[10]);
+        assertEquals(1, shard.size());
+        assertEquals(2 * slots, shard.evictions());
+        assertEquals(SLAB_SIZE, shard.reservedBytes());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = EvictionPolicy.class, names = {"CLOCK", "LFU"})
+    void testFrequentlyReadEntrySurvives(EvictionPolicy policy) {
+        long capacity = ENTRIES_IN_BUDGET * (VALUE_SIZE + HeapShard.ENTRY_OVERHEAD);
+        HeapShard shard = new HeapShard(capacity, policy);
+        int hot = Keys.pack("hot");
+        shard.put(hot, value());
+
+        for (int key = 1; key <= 20_000; key++) {
+            assertNotNull(shard.get(hot), "evicted after " + key + " inserts");
+            shard.put(key, value());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.global.dax.shared.BinaryProtocol.*;
+import static org.global.dax.shared.Constants.MAX_FRAME_SIZE;
+import static org.global.dax.shared.Constants.MAX_VALUE_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameDecoderTest {
+    private FrameDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        decoder = new FrameDecoder();
+    }
+
+    private static ByteBuffer text(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String asText(ByteBuffer frame) {
+        return new String(frame.array(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testPipelinedTextFramesInOneRead() throws IOException {
+        decoder.append(text("ADD abcd test\nGET abcd\nHEARTBEAT\n"));
+
+        assertEquals("ADD abcd test", asText(decoder.nextFrame()));
+        assertEquals("GET abcd", asText(decoder.nextFrame()));
+        assertEquals("HEARTBEAT", asText(decoder.nextFrame()));
+        assertNull(decoder.nextFrame());
+        assertEquals(0, decoder.pendingBytes());
+    }
+
+    @Test
+    void testPartialTextFrameIsKeptAcrossReads() throws IOException {
+        decoder.append(text("GET ab"));
+        assertNull(decoder.nextFrame());
+
+        decoder.append(text("cd\nDEL"));
+        assertEquals("GET abcd", asText(decoder.nextFrame()));
+        assertNull(decoder.nextFrame());
+        assertEquals(3, decoder.pendingBytes());
+    }
+
+    @Test
+    void testLargeValueSpanningManyReads() throws IOException {
+        String command = "ADD abcd " + "A".repeat(MAX_VALUE_SIZE);
+        ByteBuffer bytes = text(command + "\n");
+
+        ByteBuffer frame = null;
+        while (bytes.hasRemaining()) {
+            ByteBuffer chunk = bytes.slice(bytes.position(), Math.min(100, bytes.remaining()));
+            bytes.position(bytes.position() + chunk.remaining());
+            decoder.append(chunk);
+            frame = decoder.nextFrame();
+        }
+
+        assertNotNull(frame);
+        assertEquals(command, asText(frame));
+    }
+
+    @Test
+    void testBinaryFramesSplitAndPipelined() throws IOException {
+        decoder.setBinary(true);
+        ByteBuffer add = encodeRequest(OP_ADD, "abcd", "A".repeat(MAX_VALUE_SIZE).getBytes(StandardCharsets.UTF_8));
+        ByteBuffer get = encodeRequest(OP_GET, "abcd", null);
+        ByteBuffer stream = ByteBuffer.allocate(add.remaining() + get.remaining()).put(add).put(get).flip();
+
+        decoder.append(stream.slice(0, 7));
+        assertNull(decoder.nextFrame());
+
+        decoder.append(stream.slice(7, stream.remaining() - 7));
+        ByteBuffer first = decoder.nextFrame();
+        assertEquals(REQUEST_HEADER_SIZE + MAX_VALUE_SIZE, first.remaining());
+        assertEquals(OP_ADD, first.get(0));
+
+        ByteBuffer second = decoder.nextFrame();
+        assertEquals(REQUEST_HEADER_SIZE, second.remaining());
+        assertEquals(OP_GET, second.get(0));
+        assertNull(decoder.nextFrame());
+    }
+
+    @Test
+    void testSwitchToBinaryAfterHandshakeInSameRead() throws IOException {
+        ByteBuffer heartbeat = encodeRequest(OP_HEARTBEAT, null, null);
+        ByteBuffer handshake = text(NEGOTIATE_COMMAND + "\n");
+        decoder.append(ByteBuffer.allocate(handshake.remaining() + heartbeat.remaining()).put(handshake).put(heartbeat).flip());
+
+        assertEquals(NEGOTIATE_COMMAND, asText(decoder.nextFrame()));
+        decoder.setBinary(true);
+        assertEquals(OP_HEARTBEAT, decoder.nextFrame().get(0));
+    }
+
+    @Test
+    void testOversizedFramesAreRejected() {
+        decoder.append(ByteBuffer.allocate(MAX_FRAME_SIZE + 1));
+        assertThrows(IOException.class, () -> decoder.nextFrame());
+
+        FrameDecoder binaryDecoder = new FrameDecoder();
+        binaryDecoder.setBinary(true);
+        binaryDecoder.append(ByteBuffer.allocate(REQUEST_HEADER_SIZE).put(OP_ADD).put(encodeKey("abcd")).putInt(-1).flip());
+        assertThrows(IOException.class, binaryDecoder::nextFrame);
+    }
+
+    @Test
+    void testBufferGoesBackToThePoolOnceDrained() throws IOException {
+        BufferPool pool = new BufferPool(4L * BufferPool.MAX_BUFFER_SIZE);
+        FrameDecoder pooled = new FrameDecoder(pool);
+        assertEquals(0, pool.inUseBytes());
+
+        pooled.readBuffer().put("GET abcd\nGET ef".getBytes(StandardCharsets.UTF_8));
+        assertEquals("GET abcd", asText(pooled.nextFrame()));
+        assertNull(pooled.nextFrame());
+        assertTrue(pool.inUseBytes() > 0);
+
+        pooled.readBuffer().put("gh\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("GET efgh", asText(pooled.nextFrame()));
+        assertEquals(0, pool.inUseBytes());
+        assertEquals(0, pooled.pendingBytes());
+    }
+
+    @Test
+    void testReadBufferGrowsForLargeFrames() throws IOException {
+        BufferPool pool = new BufferPool(4L * BufferPool.MAX_BUFFER_SIZE);
+        FrameDecoder pooled = new FrameDecoder(pool);
+        byte[] command = ("ADD abcd " + "A".repeat(MAX_VALUE_SIZE) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        int offset = 0;
+        ByteBuffer frame = null;
+        while (frame == null) {
+            ByteBuffer buffer = pooled.readBuffer();
+            int length = Math.min(buffer.remaining(), command.length - offset);
+            buffer.put(command, offset, length);
+            offset += length;
+            frame = pooled.nextFrame();
+        }
+        assertEquals(command.length - 1, frame.remaining());
+        assertEquals(0, pool.inUseBytes());
+    }
+
+    @Test
+    void testReleaseDropsAPartialFrame() throws IOException {
+        BufferPool pool = new BufferPool(4L * BufferPool.MAX_BUFFER_SIZE);
+        FrameDecoder pooled = new FrameDecoder(pool);
+        pooled.append(text("GET ab"));
+        assertNull(pooled.nextFrame());
+
+        pooled.release();
+        assertEquals(0, pool.inUseBytes());
+        assertEquals(0, pooled.pendingBytes());
+    }
+}
@@ -0,0 +1,64 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntLongHashMapTest {
+
+    @Test
+    void testPutGetRemove() {
+        IntLongHashMap map = new IntLongHashMap();
+
+        assertEquals(IntLongHashMap.NO_VALUE, map.put(42, 1L));
+        assertEquals(1L, map.put(42, 2L));
+        assertEquals(2L, map.get(42));
+        assertEquals(1, map.size());
+
+        assertEquals(2L, map.remove(42));
+        assertEquals(IntLongHashMap.NO_VALUE, map.get(42));
+        assertEquals(IntLongHashMap.NO_VALUE, map.remove(42));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void testZeroKey() {
+        IntLongHashMap map = new IntLongHashMap();
+
+        map.put(0, 7L);
+        assertEquals(7L, map.get(0));
+        assertEquals(1, map.size());
+
+        assertEquals(7L, map.remove(0));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void testMatchesHashMapUnderRandomOperations() {
+        IntLongHashMap map = new IntLongHashMap();
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(1);
+
+        //a small key space forces collisions, growth and backward shifts across long probe runs
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(5_000);
+            long previous = expected.getOrDefault(key, IntLongHashMap.NO_VALUE);
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    assertEquals(previous, map.put(key, i));
+                    expected.put(key, (long) i);
+                }
+                case 1 -> {
+                    assertEquals(previous, map.remove(key));
+                    expected.remove(key);
+                }
+                default -> assertEquals(previous, map.get(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+    }
+}
@@ -0,0 +1,30 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeysTest {
+
+    @Test
+    void testPackMatchesTheBinaryKeyEncoding() {
+        assertEquals(0x61626364, Keys.pack("abcd"));
+        assertEquals(0x61620000, Keys.pack("ab"));
+        assertEquals(0, Keys.pack(""));
+    }
+
+    @Test
+    void testRoundTrip() {
+        for (String key : new String[]{"", "a", "ab", "abc", "abcd", "\u00e9", "\u00e9\u00e9"}) {
+            assertTrue(Keys.fits(key));
+            assertEquals(key, Keys.unpack(Keys.pack(key)));
+        }
+    }
+
+    @Test
+    void testKeysThatDoNotFit() {
+        assertFalse(Keys.fits("abcde"));
+        assertFalse(Keys.fits("\u00e9\u00e9\u00e9"));
+        assertThrows(IllegalArgumentException.class, () -> Keys.pack("abcde"));
+    }
+}
@@ -0,0 +1,116 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.global.dax.shared.Constants.MAX_VALUE_SIZE;
+import static org.global.dax.shared.Constants.SLAB_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapShardTest {
+
+    private static void put(OffHeapShard shard, int key, String value) {
+        shard.put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String get(OffHeapShard shard, int key) {
+        ByteBuffer value = shard.get(key);
+        return value == null ? null : StandardCharsets.UTF_8.decode(value).toString();
+    }
+
+    @Test
+    void testValuesOfEverySizeClassRoundTrip() {
+        OffHeapShard shard = new OffHeapShard(SLAB_SIZE * SlabAllocator.SIZE_CLASSES.length);
+
+        for (int length : new int[]{0, 1, 32, 33, 500, 1024, 1025, MAX_VALUE_SIZE}) {
+            String value = "v".repeat(length);
+            put(shard, Keys.pack("k"), value);
+            assertEquals(value, get(shard, Keys.pack("k")));
+        }
+        assertEquals(1, shard.size());
+    }
+
+    @Test
+    void testMultiByteValues() {
+        OffHeapShard shard = new OffHeapShard(SLAB_SIZE);
+
+        put(shard, Keys.pack("\u00e9"), "h\u00e9llo w\u00f6rld");
+        assertEquals("h\u00e9llo w\u00f6rld", get(shard, Keys.pack("\u00e9")));
+        assertTrue(shard.keys().contains("\u00e9"));
+    }
+
+    @Test
+    void testFreedSlotsAreReused() {
+        //room for exactly one slab
+        OffHeapShard shard = new OffHeapShard(SLAB_SIZE);
+        int slots = SLAB_SIZE / 32;
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < slots; i++) {
+                put(shard, i, "value");
+            }
+            assertEquals(slots, shard.size());
+            for (int i = 0; i < slots; i++) {
+                assertTrue(shard.remove(i));
+            }
+        }
+        assertEquals(SLAB_SIZE, shard.reservedBytes());
+    }
+
+    @Test
+    void testShardSmallerThanASlabKeepsThePreviousValue() {
+        OffHeapShard shard = new OffHeapShard(SLAB_SIZE);
+        put(shard, Keys.pack("k"), "small");
+
+        //the only slab went to the smallest class, the largest size class takes it over
+        put(shard, Keys.pack("k"), "x".repeat(MAX_VALUE_SIZE));
+        assertEquals("x".repeat(MAX_VALUE_SIZE), get(shard, Keys.pack("k")));
+
+        OffHeapShard tiny = new OffHeapShard(SLAB_SIZE - 1);
+        assertThrows(IllegalStateException.class, () -> put(tiny, Keys.pack("k"), "small"));
+        assertNull(get(tiny, Keys.pack("k")));
+    }
+
+    @Test
+    void testSizeClassTakesASlabFromAnotherOnceFull() {
+        OffHeapShard shard = new OffHeapShard(2L * SLAB_SIZE);
+        int slots = SLAB_SIZE / 32;
+        for (int i = 1; i <= 2 * slots; i++) {
+            put(shard, i, "small");
+        }
+        assertEquals(2 * slots, shard.size());
+
+        //every slab belongs to the smallest class, larger values evict a slab's worth of it rather than fail
+        String large = "x".repeat(500);
+        for (int i = 1; i <= 100; i++) {
+            put(shard, -i, large);
+        }
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(large, get(shard, -i));
+        }
+        assertEquals(slots + 100, shard.size());
+        assertEquals(slots, shard.evictions());
+        assertEquals(2L * SLAB_SIZE, shard.reservedBytes());
+
+        //the smallest class is down to one slab and evicts within it
+        for (int i = 1; i <= 2 * slots; i++) {
+            put(shard, i, "again");
+        }
+        assertEquals("again", get(shard, 2 * slots));
+    }
+
+    @Test
+    void testReturnedValuesAreReadOnlyCopies() {
+        OffHeapShard shard = new OffHeapShard(SLAB_SIZE);
+        put(shard, Keys.pack("k"), "first");
+
+        ByteBuffer value = shard.get(Keys.pack("k"));
+        assertTrue(value.isReadOnly());
+
+        //the slot is overwritten in place, the returned buffer must not change with it
+        put(shard, Keys.pack("k"), "other");
+        assertEquals("first", StandardCharsets.UTF_8.decode(value).toString());
+    }
+}
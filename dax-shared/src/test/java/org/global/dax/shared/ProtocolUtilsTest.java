@@ -4,8 +4,23 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.global.dax.shared.BinaryProtocol.*;
+import static org.global.dax.shared.ProtocolUtils.handleBinaryRequest;
 import static org.global.dax.shared.ProtocolUtils.handleClientRequest;
+import static org.global.dax.shared.ProtocolUtils.respondToBinaryRequest;
+import static org.global.dax.shared.ProtocolUtils.respondToClientRequest;
+import static org.global.dax.shared.ProtocolUtils.streamAllKeys;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ProtocolUtilsTest {
     @Test
@@ -49,6 +64,37 @@ public class ProtocolUtilsTest {
         assertEquals("ERROR Invalid ADD format", handleClientRequest(input, cache));
     }
 
+    @Test
+    void testAddWithTtl() throws InterruptedException {
+        ShardedCache cache = new ShardedCache();
+        assertEquals("OK", handleClientRequest("ADD abcd test 50", cache));
+        assertEquals("test", handleClientRequest("GET abcd", cache));
+
+        Thread.sleep(100);
+        assertEquals("", handleClientRequest("GET abcd", cache));
+        assertEquals("", handleClientRequest("GET ALL", cache));
+        assertEquals("ERROR Invalid key", handleClientRequest("DELETE abcd", cache));
+        cache.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ADD abcd test 0", "ADD abcd test -5"})
+    void testInvalidTtl(String input) {
+        ShardedCache cache = new ShardedCache();
+        assertEquals("ERROR Invalid TTL", handleClientRequest(input, cache));
+    }
+
+    @Test
+    void testBinaryAddWithTtl() {
+        ShardedCache cache = new ShardedCache();
+        byte[] value = "x".repeat(Constants.MAX_VALUE_SIZE).getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(STATUS_OK, handleBinaryRequest(encodeAddRequest("abcd", value, 60_000), cache).get());
+        assertEquals(STATUS_OK, handleBinaryRequest(encodeRequest(OP_GET, "abcd", null), cache).get());
+        assertEquals(STATUS_ERROR, handleBinaryRequest(encodeAddRequest("abcd", value, 0), cache).get());
+        cache.close();
+    }
+
     @Test
     void testInvalidAddKey() {
         ShardedCache cache = new ShardedCache();
@@ -86,4 +132,220 @@ public class ProtocolUtilsTest {
         ShardedCache cache = new ShardedCache();
         assertEquals("ERROR Invalid input [null]", handleClientRequest(null, cache));
     }
+
+    @Test
+    void testBinaryAddAndGet() {
+        ShardedCache cache = new ShardedCache();
+        ByteBuffer added = handleBinaryRequest(encodeRequest(OP_ADD, "abcd", "hello world".getBytes(StandardCharsets.UTF_8)), cache);
+        assertEquals(STATUS_OK, added.get());
+        assertEquals(0, added.getInt());
+
+        ByteBuffer response = handleBinaryRequest(encodeRequest(OP_GET, "abcd", null), cache);
+        assertEquals(STATUS_OK, response.get());
+        byte[] value = new byte[response.getInt()];
+        response.get(value);
+        assertEquals("hello world", new String(value, StandardCharsets.UTF_8));
+        assertEquals("hello world", handleClientRequest("GET abcd", cache));
+    }
+
+    @Test
+    void testBinaryGetMissing() {
+        ShardedCache cache = new ShardedCache();
+        assertEquals(STATUS_NOT_FOUND, handleBinaryRequest(encodeRequest(OP_GET, "abcd", null), cache).get());
+        assertEquals(STATUS_NOT_FOUND, handleBinaryRequest(encodeRequest(OP_DELETE, "abcd", null), cache).get());
+    }
+
+    @Test
+    void testBinaryGetAll() {
+        ShardedCache cache = new ShardedCache();
+        cache.put("abcd", "test1");
+        cache.put("pq", "test2");
+
+        ByteBuffer response = handleBinaryRequest(encodeRequest(OP_GET_ALL, null, null), cache);
+        assertEquals(STATUS_OK, response.get());
+        byte[] payload = new byte[response.getInt()];
+        response.get(payload);
+        assertEquals(String.join(",", cache.getAllKeys()), formatResponse(OP_GET_ALL, STATUS_OK, payload));
+    }
+
+    @Test
+    void testGetAllPages() {
+        ShardedCache cache = new ShardedCache();
+        cache.put("abcd", "test1");
+        cache.put("pq", "test2");
+        cache.put("xy", "test3");
+
+        String first = handleClientRequest("GET ALL 2", cache);
+        String[] parts = first.split(" ");
+        assertEquals(2, parts[1].split(",").length);
+
+        String second = handleClientRequest("GET ALL 2 " + parts[0], cache);
+        assertTrue(second.startsWith("0 "));
+        assertEquals(String.join(",", cache.getAllKeys()).length(), parts[1].length() + 1 + second.length() - 2);
+        assertEquals("0", handleClientRequest("GET ALL 5 0", new ShardedCache()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"GET ALL x", "GET ALL 1 x", "GET ALL 1 2 3", "GET ALL 0", "GET ALL 1 -1"})
+    void testInvalidGetAllPage(String input) {
+        ShardedCache cache = new ShardedCache();
+        assertTrue(handleClientRequest(input, cache).startsWith("ERROR Invalid"));
+    }
+
+    @Test
+    void testStreamedGetAllMatchesTheSingleResponse() {
+        ShardedCache cache = new ShardedCache();
+        for (int i = 0; i < 3000; i++) {
+            cache.put(Integer.toString(i, 36), "value");
+        }
+
+        StringBuilder streamed = new StringBuilder();
+        int chunks = 0;
+        Iterator<ByteBuffer> stream = streamAllKeys(cache);
+        while (stream.hasNext()) {
+            streamed.append(StandardCharsets.UTF_8.decode(stream.next()));
+            chunks++;
+        }
+        assertEquals(handleClientRequest("GET ALL", cache) + "\n", streamed.toString());
+        assertTrue(chunks > 1);
+
+        Iterator<ByteBuffer> empty = streamAllKeys(new ShardedCache());
+        assertEquals(ByteBuffer.wrap("\n".getBytes()), empty.next());
+        assertFalse(empty.hasNext());
+    }
+
+    @Test
+    void testBatches() {
+        ShardedCache cache = new ShardedCache();
+
+        assertEquals("OK", handleClientRequest("MADD a 1 b 2 c 3", cache));
+        assertEquals("1  3", handleClientRequest("MGET a zz c", cache));
+        assertEquals("2", handleClientRequest("MDELETE a b zz", cache));
+        assertEquals(" 3", handleClientRequest("MGET a c", cache));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"MGET", "MADD a", "MADD a 1 b", "MDELETE"})
+    void testInvalidBatchFormat(String input) {
+        ShardedCache cache = new ShardedCache();
+        assertTrue(handleClientRequest(input, cache).startsWith("ERROR Invalid M"));
+    }
+
+    @Test
+    void testInvalidBatchEntries() {
+        ShardedCache cache = new ShardedCache();
+
+        assertEquals("ERROR key too large", handleClientRequest("MADD a 1 toolong 2", cache));
+        assertEquals("ERROR value too large", handleClientRequest("MADD a " + "A".repeat(2097), cache));
+        assertEquals("", handleClientRequest("GET a", cache));
+    }
+
+    @Test
+    void testBinaryBatches() {
+        ShardedCache cache = new ShardedCache();
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a", "1".getBytes());
+        entries.put("b", "2 two".getBytes());
+        ByteBuffer added = handleBinaryRequest(encodeBatchAddRequest(entries), cache);
+        assertEquals(STATUS_OK, added.get());
+
+        ByteBuffer got = handleBinaryRequest(encodeBatchRequest(OP_MGET, List.of("b", "zz", "a")), cache);
+        assertEquals(STATUS_OK, got.get());
+        byte[] payload = new byte[got.getInt()];
+        got.get(payload);
+        assertEquals("2 two  1", formatResponse(OP_MGET, STATUS_OK, payload));
+        assertNull(decodeValues(payload).get(1));
+
+        ByteBuffer deleted = handleBinaryRequest(encodeBatchRequest(OP_MDELETE, List.of("a", "zz")), cache);
+        assertEquals(STATUS_OK, deleted.get());
+        assertEquals(Integer.BYTES, deleted.getInt());
+        assertEquals(1, deleted.getInt());
+    }
+
+    @Test
+    void testBinaryBatchWithTrailingBytes() {
+        ShardedCache cache = new ShardedCache();
+        ByteBuffer frame = encodeBatchRequest(OP_MGET, List.of("a"));
+        int valueLengthOffset = REQUEST_HEADER_SIZE - Integer.BYTES;
+        ByteBuffer longer = ByteBuffer.allocate(frame.remaining() + 1).put(frame).put((byte) 0).flip();
+        longer.putInt(valueLengthOffset, longer.getInt(valueLengthOffset) + 1);
+
+        ByteBuffer response = handleBinaryRequest(longer, cache);
+        assertEquals(STATUS_ERROR, response.get());
+        byte[] payload = new byte[response.getInt()];
+        response.get(payload);
+        assertEquals("Invalid frame", new String(payload, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testBinaryScan() {
+        ShardedCache cache = new ShardedCache();
+        cache.put("abcd", "test1");
+        cache.put("pq", "test2");
+
+        ByteBuffer response = handleBinaryRequest(encodeScanRequest(0, 10), cache);
+        assertEquals(STATUS_OK, response.get());
+        byte[] payload = new byte[response.getInt()];
+        response.get(payload);
+        KeyPage page = decodeKeyPage(payload);
+        assertEquals(0, page.cursor());
+        assertEquals(cache.scan(0, 10), page);
+
+        ByteBuffer invalid = handleBinaryRequest(encodeScanRequest(-1, 10), cache);
+        assertEquals(STATUS_ERROR, invalid.get());
+    }
+
+    @Test
+    void testBinaryDeleteAndHeartbeat() {
+        ShardedCache cache = new ShardedCache();
+        cache.put("efgh", "deleteMe");
+
+        assertEquals(STATUS_OK, handleBinaryRequest(encodeRequest(OP_DELETE, "efgh", null), cache).get());
+        assertEquals(STATUS_OK, handleBinaryRequest(encodeRequest(OP_HEARTBEAT, null, null), cache).get());
+    }
+
+    @Test
+    void testBinaryInvalidFrames() {
+        ShardedCache cache = new ShardedCache();
+        ByteBuffer truncated = ByteBuffer.allocate(3).put(OP_GET).put((byte) 'a').put((byte) 'b').flip();
+        assertEquals(STATUS_ERROR, handleBinaryRequest(truncated, cache).get());
+
+        ByteBuffer badLength = ByteBuffer.allocate(REQUEST_HEADER_SIZE).put(OP_ADD).put(encodeKey("abcd")).putInt(10).flip();
+        assertEquals(STATUS_ERROR, handleBinaryRequest(badLength, cache).get());
+
+        ByteBuffer unknown = encodeRequest((byte) 42, "abcd", null);
+        assertEquals(STATUS_ERROR, handleBinaryRequest(unknown, cache).get());
+    }
+
+    @Test
+    void testGatheredGetResponsesShareTheStoredValue() {
+        ShardedCache cache = new ShardedCache();
+        byte[] stored = "hello".getBytes(StandardCharsets.UTF_8);
+        cache.put("abcd", stored);
+
+        ByteBuffer[] text = respondToClientRequest("GET abcd", cache);
+        assertEquals(2, text.length);
+        assertTrue(text[0].isReadOnly());
+        assertEquals(ByteBuffer.wrap(stored), text[0]);
+        assertEquals(ByteBuffer.wrap(new byte[]{'\n'}), text[1]);
+
+        ByteBuffer[] binary = respondToBinaryRequest(encodeRequest(OP_GET, "abcd", null), cache);
+        assertEquals(2, binary.length);
+        assertEquals(encodeResponseHeader(STATUS_OK, stored.length), binary[0]);
+        assertEquals(ByteBuffer.wrap(stored), binary[1]);
+    }
+
+    @Test
+    void testGatheredResponsesForEverythingElseAreOneBuffer() {
+        ShardedCache cache = new ShardedCache();
+
+        ByteBuffer[] missing = respondToClientRequest("GET abcd", cache);
+        assertEquals(1, missing.length);
+        assertEquals(ByteBuffer.wrap("\n".getBytes()), missing[0]);
+
+        ByteBuffer[] added = respondToClientRequest("ADD abcd value", cache);
+        assertEquals(ByteBuffer.wrap("OK\n".getBytes()), added[0]);
+        assertEquals(1, respondToBinaryRequest(encodeRequest(OP_HEARTBEAT, null, null), cache).length);
+    }
 }
@@ -2,9 +2,21 @@ package org.global.dax.shared;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ShardedCacheTest {
@@ -40,6 +52,13 @@ public class ShardedCacheTest {
         assertFalse(cache.remove("nonexistent"));
     }
 
+    @Test
+    void testKeysLongerThanMaxKeySize() {
+        assertNull(cache.get("toolong"));
+        assertThrows(IllegalArgumentException.class, () -> cache.put("toolong", "value"));
+        assertEquals(0, cache.size());
+    }
+
     @Test
     void testGetAllKeys() {
         cache.put("key1", "value1");
@@ -53,4 +72,383 @@ public class ShardedCacheTest {
         assertTrue(keys.contains("key3"));
         assertEquals(3, keys.size());
     }
+
+    @ParameterizedTest
+    @EnumSource(StorageEngine.class)
+    void testScanReturnsEveryKeyOnce(StorageEngine engine) {
+        ShardedCache scanned = new ShardedCache(new CacheConfig().storageEngine(engine));
+        for (int i = 0; i < 1000; i++) {
+            scanned.put(Integer.toString(i, 36), "value");
+        }
+
+        List<String> keys = new ArrayList<>();
+        long cursor = 0;
+        int pages = 0;
+        do {
+            KeyPage page = scanned.scan(cursor, 64);
+            assertTrue(page.keys().size() <= 64);
+            keys.addAll(page.keys());
+            cursor = page.cursor();
+            pages++;
+        } while (cursor != 0);
+
+        assertEquals(1000, keys.size());
+        assertEquals(new HashSet<>(scanned.getAllKeys()), new HashSet<>(keys));
+        assertTrue(pages >= 1000 / 64);
+        scanned.close();
+    }
+
+    @Test
+    void testScanKeepsItsPlaceWhileKeysChange() {
+        cache.put("a", "value");
+        cache.put("b", "value");
+        cache.put("c", "value");
+
+        KeyPage first = cache.scan(0, 1);
+        List<String> rest = new ArrayList<>(cache.getAllKeys());
+        rest.removeAll(first.keys());
+        //keys already returned can go away without the scan returning a key twice or skipping one
+        cache.remove(first.keys().get(0));
+
+        KeyPage second = cache.scan(first.cursor(), 10);
+        assertEquals(new HashSet<>(rest), new HashSet<>(second.keys()));
+        assertEquals(0, second.cursor());
+    }
+
+    @Test
+    void testScanRejectsInvalidArguments() {
+        assertEquals(new KeyPage(List.of(), 0), cache.scan(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> cache.scan(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> cache.scan(Long.MAX_VALUE, 10));
+        assertThrows(IllegalArgumentException.class, () -> cache.scan(0, 0));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageEngine.class)
+    void testBatchesSpanShards(StorageEngine engine) {
+        ShardedCache batched = new ShardedCache(new CacheConfig().storageEngine(engine));
+        List<String> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(Integer.toString(i, 36));
+            values.add(("v" + i).getBytes());
+        }
+
+        batched.putAll(keys, values);
+        assertEquals(100, batched.size());
+        assertEquals("v42", batched.get(Integer.toString(42, 36)));
+
+        ByteBuffer[] found = batched.getValues(List.of("1", "none", "toolong", "2"));
+        assertEquals(ByteBuffer.wrap("v1".getBytes()), found[0]);
+        assertNull(found[1]);
+        assertNull(found[2]);
+        assertEquals(ByteBuffer.wrap("v2".getBytes()), found[3]);
+
+        assertEquals(50, batched.removeAll(keys.subList(0, 50)));
+        assertEquals(0, batched.removeAll(keys.subList(0, 50)));
+        assertEquals(50, batched.size());
+        batched.close();
+    }
+
+    @Test
+    void testBatchWithAnInvalidKeyStoresNothing() {
+        assertThrows(IllegalArgumentException.class,
+                () -> cache.putAll(List.of("ok", "toolong"), List.of("a".getBytes(), "b".getBytes())));
+        assertNull(cache.get("ok"));
+    }
+
+    @Test
+    void testShardStatsCountHitsAndMisses() {
+        ShardedCache single = new ShardedCache(new CacheConfig().shardCount(1));
+        single.put("a", "1");
+        single.put("b", "2");
+        single.get("a");
+        single.getValue("c");
+        single.getValues(List.of("a", "b", "c", "d"));
+
+        ShardStats stats = single.getShardStats(0);
+        assertEquals(2, stats.size());
+        assertEquals(3, stats.hits());
+        assertEquals(3, stats.misses());
+        assertTrue(stats.memoryUsed() > 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> single.getShardStats(1));
+        single.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 64})
+    void testShardCount(int shardCount) {
+        ShardedCache sized = new ShardedCache(new CacheConfig().shardCount(shardCount));
+        for (int i = 0; i < 200; i++) {
+            sized.put(Integer.toString(i, 36), "value");
+        }
+
+        assertEquals(shardCount, sized.getShardCount());
+        assertEquals(200, sized.getAllKeys().size());
+        assertEquals(200, sized.scan(0, 500).keys().size());
+        assertThrows(IllegalArgumentException.class, () -> new CacheConfig().shardCount(0));
+        sized.close();
+    }
+
+    @Test
+    void testOffHeapEngine() {
+        ShardedCache offHeap = new ShardedCache(new CacheConfig().storageEngine(StorageEngine.OFF_HEAP));
+
+        offHeap.put("key1", "value1");
+        offHeap.put("key2", "value2");
+        offHeap.put("key1", "value3");
+
+        assertEquals("value3", offHeap.get("key1"));
+        assertTrue(offHeap.remove("key2"));
+        assertFalse(offHeap.remove("key2"));
+        assertEquals(List.of("key1"), offHeap.getAllKeys());
+        assertEquals(1, offHeap.size());
+    }
+
+    @Test
+    void testValuesAreStoredAsBytes() {
+        byte[] value = {0, 1, 2, (byte) 0xFF};
+        cache.put("bin", value);
+
+        ByteBuffer view = cache.getValue("bin");
+        assertTrue(view.isReadOnly());
+        assertEquals(ByteBuffer.wrap(value), view);
+        assertNull(cache.getValue("none"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageEngine.class)
+    void testExpiredEntriesAreHiddenAndReclaimed(StorageEngine engine) {
+        ShardedCache expiring = new ShardedCache(new CacheConfig().storageEngine(engine));
+        try {
+            expiring.put("tmp", "value", 50);
+            expiring.put("keep", "value");
+            //overwritten without a TTL before its deadline, the scheduled expiry must not remove it
+            expiring.put("over", "value", 50);
+            expiring.put("over", "value");
+            assertEquals("value", expiring.get("tmp"));
+
+            await().atMost(Duration.ofSeconds(5)).until(() -> expiring.getExpiredCount() == 1);
+            assertNull(expiring.get("tmp"));
+            assertEquals("value", expiring.get("over"));
+            assertEquals(List.of("keep", "over"), expiring.getAllKeys().stream().sorted().toList());
+            assertEquals(2, expiring.size());
+        } finally {
+            expiring.close();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageEngine.class)
+    void testForEachEntryVisitsEveryShard(StorageEngine engine) {
+        ShardedCache visited = new ShardedCache(new CacheConfig().storageEngine(engine));
+        try {
+            visited.put("k1", "v1");
+            visited.put("k2", "v2".getBytes(), 60_000);
+            visited.put("k3", "v3");
+            visited.remove("k3");
+
+            List<String> entries = new ArrayList<>();
+            for (int i = 0; i < visited.getShardCount(); i++) {
+                visited.forEachEntry(i, (key, value, ttlMillis) -> {
+                    byte[] bytes = new byte[value.remaining()];
+                    value.get(bytes);
+                    entries.add(key + "=" + new String(bytes) + (ttlMillis > 0 && ttlMillis <= 60_000 ? " ttl" : ""));
+                });
+            }
+            assertEquals(List.of("k1=v1", "k2=v2 ttl"), entries.stream().sorted().toList());
+            assertThrows(IndexOutOfBoundsException.class, () -> visited.forEachEntry(-1, (key, value, ttl) -> {}));
+        } finally {
+            visited.close();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageEngine.class)
+    void testForEachEntryInBatchesVisitsEveryEntryOnce(StorageEngine engine) {
+        ShardedCache visited = new ShardedCache(new CacheConfig().storageEngine(engine));
+        try {
+            for (int i = 0; i < 1000; i++) {
+                visited.put(Integer.toString(i, 36), "v" + i);
+            }
+
+            Map<String, String> entries = new HashMap<>();
+            for (int i = 0; i < visited.getShardCount(); i++) {
+                int batches = 0;
+                for (long position = 0; position >= 0; batches++) {
+                    position = visited.forEachEntry(i, position, 16, (key, value, ttlMillis) -> {
+                        byte[] bytes = new byte[value.remaining()];
+                        value.get(bytes);
+                        assertNull(entries.put(key, new String(bytes)), key);
+                    });
+                }
+                assertTrue(batches > 1);
+            }
+            assertEquals(1000, entries.size());
+            assertEquals("v999", entries.get(Integer.toString(999, 36)));
+            assertThrows(IllegalArgumentException.class, () -> visited.forEachEntry(0, -1, 16, (key, value, ttl) -> {}));
+            assertThrows(IllegalArgumentException.class, () -> visited.forEachEntry(0, 0, 0, (key, value, ttl) -> {}));
+        } finally {
+            visited.close();
+        }
+    }
+
+    @Test
+    void testMutationListenerSeesWritesInOrder() {
+        List<String> mutations = new ArrayList<>();
+        ShardedCache.MutationListener listener = new ShardedCache.MutationListener() {
+            @Override
+            public void added(String key, byte[] value, long ttlMillis) {
+                mutations.add("added " + key + "=" + new String(value) + " " + ttlMillis);
+            }
+
+            @Override
+            public void removed(String key) {
+                mutations.add("removed " + key);
+            }
+        };
+        cache.addMutationListener(listener);
+
+        cache.put("k1", "v1");
+        cache.put("k1", "v2".getBytes(), 500);
+        assertTrue(cache.remove("k1"));
+        assertFalse(cache.remove("k1"));
+        cache.putAll(List.of("k2"), List.of("v3".getBytes()));
+        assertEquals(1, cache.removeAll(List.of("k2")));
+        cache.removeMutationListener(listener);
+        cache.put("k4", "v4");
+
+        assertEquals(List.of("added k1=v1 0", "added k1=v2 500", "removed k1", "added k2=v3 0", "removed k2"),
+                mutations);
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageEngine.class)
+    void testResizeMovesEveryEntry(StorageEngine engine) {
+        ShardedCache resized = new ShardedCache(new CacheConfig().storageEngine(engine).shardCount(4));
+        try {
+            for (int i = 0; i < 1000; i++) {
+                resized.put(Integer.toString(i, 36), ("value" + i).getBytes());
+            }
+            resized.put("tmp", "value".getBytes(), 200);
+
+            resized.resize(16);
+            assertEquals(16, resized.getShardCount());
+            assertFalse(resized.isResizing());
+            assertTrue(resized.getMigratedCount() > 0);
+            assertEquals(1001, resized.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("value" + i, resized.get(Integer.toString(i, 36)));
+            }
+            for (int i = 0; i < 16; i++) {
+                for (String key : resized.getKeysForShard(i)) {
+                    assertEquals(i, Math.abs(key.hashCode() % 16));
+                }
+            }
+
+            //moved with its deadline
+            await().atMost(Duration.ofSeconds(5)).until(() -> resized.getExpiredCount() == 1);
+            assertNull(resized.get("tmp"));
+            assertThrows(IllegalArgumentException.class, () -> resized.resize(8));
+        } finally {
+            resized.close();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(StorageEngine.class)
+    void testResizeKeepsTheTotalMemoryBudget(StorageEngine engine) {
+        ShardedCache resized = new ShardedCache(new CacheConfig().storageEngine(engine).shardCount(2)
+                .shardCapacityBytes(1 << 20));
+        try {
+            byte[] value = new byte[100];
+            for (int i = 0; i < 40_000; i++) {
+                resized.put(Integer.toString(i, 36), value);
+            }
+            assertTrue(resized.getEvictionCount() > 0);
+            assertTrue(resized.getMemoryUsed() <= 2 << 20);
+
+            resized.resize(4);
+            for (int i = 40_000; i < 80_000; i++) {
+                resized.put(Integer.toString(i, 36), value);
+            }
+            assertTrue(resized.getMemoryUsed() <= 2 << 20);
+            for (int i = 0; i < 4; i++) {
+                assertTrue(resized.getShardStats(i).memoryUsed() <= 1 << 19);
+            }
+        } finally {
+            resized.close();
+        }
+    }
+
+    @Test
+    void testKeyStreamSeesEveryKeyOnceAcrossAResize() {
+        ShardedCache resized = new ShardedCache(new CacheConfig().shardCount(8));
+        try {
+            for (int i = 0; i < 5000; i++) {
+                resized.put(Integer.toString(i, 36), "value");
+            }
+
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                keys.addAll(resized.getKeysForShard(i, 8));
+            }
+            resized.resize(12);
+            for (int i = 3; i < 8; i++) {
+                keys.addAll(resized.getKeysForShard(i, 8));
+            }
+
+            assertEquals(5000, keys.size());
+            assertEquals(5000, new HashSet<>(keys).size());
+            assertThrows(IndexOutOfBoundsException.class, () -> resized.getKeysForShard(8, 8));
+            assertThrows(IndexOutOfBoundsException.class, () -> resized.getKeysForShard(0, 16));
+        } finally {
+            resized.close();
+        }
+    }
+
+    @Test
+    void testReadsAndWritesCarryOnDuringAResize() throws InterruptedException {
+        ShardedCache resized = new ShardedCache(new CacheConfig().shardCount(2));
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                resized.put("k" + Integer.toString(i, 36), "initial");
+            }
+            resized.put("w0", "value");
+
+            List<String> failures = Collections.synchronizedList(new ArrayList<>());
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    for (int i = 0; i < 20_000; i += 7) {
+                        if (resized.get("k" + Integer.toString(i, 36)) == null) {
+                            failures.add("k" + Integer.toString(i, 36));
+                        }
+                    }
+                }
+            });
+            Thread writer = new Thread(() -> {
+                for (int round = 0; running.get(); round++) {
+                    for (int i = 1; i < 20_000; i += 7) {
+                        resized.put("k" + Integer.toString(i, 36), "round" + round);
+                    }
+                    resized.remove("w" + round);
+                    resized.put("w" + (round + 1), "value");
+                }
+            });
+            reader.start();
+            writer.start();
+            resized.resize(8);
+            resized.resize(32);
+            running.set(false);
+            reader.join();
+            writer.join();
+
+            assertEquals(List.of(), failures);
+            assertEquals(20_001, resized.size());
+            assertEquals(20_001, resized.getAllKeys().size());
+        } finally {
+            resized.close();
+        }
+    }
 }
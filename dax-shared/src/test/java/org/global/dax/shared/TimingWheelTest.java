@@ -0,0 +1,48 @@
+package org.global.dax.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    @Test
+    void testFiresEveryTimeoutOnceAndNeverEarly() {
+        TimingWheel wheel = new TimingWheel(10, 0);
+        //deadlines within the first level, across cascades, and beyond the span of the wheel
+        long[] deadlines = {1, 9, 10, 11, 639, 640, 641, 5_000, 40_960, 123_456, 2_621_440, 50_000_000_000L};
+        for (int i = 0; i < deadlines.length; i++) {
+            wheel.schedule(new TimingWheel.Timeout(0, i, deadlines[i]));
+        }
+        assertEquals(deadlines.length, wheel.pending());
+
+        List<TimingWheel.Timeout> fired = new ArrayList<>();
+        for (long now = 0; now <= 3_000_000; now += 7) {
+            long current = now;
+            wheel.advance(now, timeout -> {
+                assertTrue(timeout.deadline() <= current, "fired early: " + timeout);
+                //at most one tick late
+                assertTrue(current - timeout.deadline() < 10 + 7, "fired late: " + timeout + " at " + current);
+                fired.add(timeout);
+            });
+        }
+
+        assertEquals(deadlines.length - 1, fired.size());
+        assertEquals(1, wheel.pending());
+    }
+
+    @Test
+    void testDeadlinesInThePastFireOnTheNextTick() {
+        TimingWheel wheel = new TimingWheel(10, 1_000);
+        wheel.schedule(new TimingWheel.Timeout(0, 1, 500));
+
+        List<TimingWheel.Timeout> fired = new ArrayList<>();
+        wheel.advance(1_000, fired::add);
+        assertTrue(fired.isEmpty());
+        wheel.advance(1_010, fired::add);
+        assertEquals(1, fired.size());
+    }
+}